@@ -0,0 +1,123 @@
+package bench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Calls into the DBproject client. The client classes live in the unnamed
+ * package, which JMH benchmarks (and any other named package) cannot import,
+ * so the operations are bound once as method handles.
+ */
+final class Client {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private final Class<?> dbproject;
+	private final Object esql;
+
+	private final MethodHandle addPlane;
+	private final MethodHandle addPilot;
+	private final MethodHandle addTechnician;
+	private final MethodHandle newFlightSpec;
+	private final MethodHandle addFlights;
+	private final MethodHandle bookFlight;
+	private final MethodHandle availableSeats;
+	private final MethodHandle repairsPerPlane;
+	private final MethodHandle repairsPerYear;
+	private final MethodHandle passengersWithStatus;
+	private final MethodHandle query;
+
+	Client(String dbname, String port, String user) throws Throwable {
+		Class.forName("org.postgresql.Driver");
+		dbproject = Class.forName("DBproject");
+		esql = dbproject.getConstructor(String.class, String.class, String.class, String.class)
+			.newInstance(dbname, port, user, "");
+
+		addPlane = bind("addPlane", int.class, String.class, String.class, int.class, int.class);
+		addPilot = bind("addPilot", int.class, String.class, String.class);
+		addTechnician = bind("addTechnician", int.class, String.class);
+		addFlights = bind("addFlights", int[].class, List.class);
+		bookFlight = bind("bookFlight", Class.forName("BookingEngine$Booking"), int.class, int.class)
+			.asType(MethodType.methodType(Object.class, int.class, int.class));
+		availableSeats = bind("availableSeats", int.class, int.class, String.class);
+		repairsPerPlane = bind("repairsPerPlane", List.class);
+		repairsPerYear = bind("repairsPerYear", List.class);
+		passengersWithStatus = bind("passengersWithStatus", int.class, int.class, String.class);
+		query = bind("executeQueryAndReturnResult", List.class, String.class);
+
+		Class<?> spec = Class.forName("DBproject$FlightSpec");
+		newFlightSpec = LOOKUP.findConstructor(spec, MethodType.methodType(void.class,
+				int.class, int.class, int.class, String.class, String.class, String.class, String.class,
+				String.class, String.class, int.class, int.class))
+			.asType(MethodType.methodType(Object.class,
+				int.class, int.class, int.class, String.class, String.class, String.class, String.class,
+				String.class, String.class, int.class, int.class));
+	}
+
+	private MethodHandle bind(String name, Class<?> returnType, Class<?>... parameterTypes) throws ReflectiveOperationException {
+		return LOOKUP.findVirtual(dbproject, name, MethodType.methodType(returnType, parameterTypes)).bindTo(esql);
+	}
+
+	int addPlane(String make, String model, int age, int seats) throws Throwable {
+		return (int) addPlane.invokeExact(make, model, age, seats);
+	}
+
+	int addPilot(String fullname, String nationality) throws Throwable {
+		return (int) addPilot.invokeExact(fullname, nationality);
+	}
+
+	int addTechnician(String fullname) throws Throwable {
+		return (int) addTechnician.invokeExact(fullname);
+	}
+
+	int addFlight(int cost, int numSold, int numStops, String departureDate, String departureTime,
+			String arrivalDate, String arrivalTime, String arrivalAirport, String departureAirport,
+			int pilotID, int planeID) throws Throwable {
+		Object spec = (Object) newFlightSpec.invokeExact(cost, numSold, numStops, departureDate, departureTime,
+			arrivalDate, arrivalTime, arrivalAirport, departureAirport, pilotID, planeID);
+		List<?> flights = Collections.singletonList(spec);
+		int[] fnums = (int[]) addFlights.invokeExact(flights);
+		return fnums[0];
+	}
+
+	Object bookFlight(int customerID, int flightNumber) throws Throwable {
+		return (Object) bookFlight.invokeExact(customerID, flightNumber);
+	}
+
+	int availableSeats(int flightNumber, String departure) throws Throwable {
+		return (int) availableSeats.invokeExact(flightNumber, departure);
+	}
+
+	List<?> repairsPerPlane() throws Throwable {
+		return (List<?>) repairsPerPlane.invokeExact();
+	}
+
+	List<?> repairsPerYear() throws Throwable {
+		return (List<?>) repairsPerYear.invokeExact();
+	}
+
+	int passengersWithStatus(int flightNumber, String status) throws Throwable {
+		return (int) passengersWithStatus.invokeExact(flightNumber, status);
+	}
+
+	@SuppressWarnings("unchecked")
+	List<List<String>> query(String sql) throws Throwable {
+		return (List<List<String>>) (List<?>) query.invokeExact(sql);
+	}
+
+	/**
+	 * Reloads every table from the csv files in dataDir.
+	 */
+	void load(File dataDir, int threads) throws Throwable {
+		Class<?> loader = Class.forName("BulkLoader");
+		Object bulkLoader = loader.getConstructor(dbproject, int.class).newInstance(esql, threads);
+		loader.getMethod("load", File.class).invoke(bulkLoader, dataDir);
+	}
+
+	void close() throws Throwable {
+		dbproject.getMethod("cleanup").invoke(esql);
+	}
+}
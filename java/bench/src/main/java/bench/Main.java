@@ -0,0 +1,33 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line and adds
+ * the GC profiler unless other profilers were requested, so every run also
+ * reports the allocation rate per operation.
+ */
+public class Main {
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cli = new CommandLineOptions(args);
+		if (cli.shouldHelp()) {
+			cli.showHelp();
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+		if (cli.getProfilers().isEmpty()) {
+			options.addProfiler(GCProfiler.class);
+		}
+		Runner runner = new Runner(options.build());
+		if (cli.shouldList()) {
+			runner.list();
+		} else {
+			runner.run();
+		}
+	}
+}
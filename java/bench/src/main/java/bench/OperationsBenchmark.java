@@ -0,0 +1,133 @@
+package bench;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One benchmark per DBproject operation, run against a local Postgres that
+ * is reloaded from data/ before each trial. Each benchmark reports
+ * throughput and sampled latency (with percentiles), and Main adds the GC
+ * profiler for the allocation rate.
+ *
+ * Connection settings are read from system properties:
+ *   bench.db, bench.port, bench.user   database to run against
+ *   bench.data                         csv folder, default ../data
+ *   bench.seed                         reload the tables first, default true
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class OperationsBenchmark {
+	private static final String[] STATUSES = {"W", "R", "C"};
+
+	private Client client;
+	private int[] flights;
+	private String[] departures;
+	private int[] customers;
+	private int[] pilots;
+	private int[] planes;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		client = new Client(System.getProperty("bench.db", System.getProperty("user.name") + "_DB"),
+			System.getProperty("bench.port", "5432"),
+			System.getProperty("bench.user", System.getProperty("user.name")));
+		if (Boolean.parseBoolean(System.getProperty("bench.seed", "true"))) {
+			client.load(new File(System.getProperty("bench.data", "../data")), Runtime.getRuntime().availableProcessors());
+		}
+
+		List<List<String>> rows = client.query("SELECT fnum, actual_departure_date FROM Flight;");
+		flights = new int[rows.size()];
+		departures = new String[rows.size()];
+		for (int i = 0; i < rows.size(); i++) {
+			flights[i] = Integer.parseInt(rows.get(i).get(0));
+			departures[i] = rows.get(i).get(1);
+		}
+		customers = ids("SELECT id FROM Customer;");
+		pilots = ids("SELECT id FROM Pilot;");
+		planes = ids("SELECT id FROM Plane;");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Throwable {
+		client.close();
+	}
+
+	private int[] ids(String sql) throws Throwable {
+		List<List<String>> rows = client.query(sql);
+		int[] ids = new int[rows.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = Integer.parseInt(rows.get(i).get(0));
+		}
+		return ids;
+	}
+
+	private static int pick(int[] values) {
+		return values[ThreadLocalRandom.current().nextInt(values.length)];
+	}
+
+	@Benchmark
+	public int addPlane() throws Throwable {
+		return client.addPlane("Airbus", "AirbusA320", 3, 180);
+	}
+
+	@Benchmark
+	public int addPilot() throws Throwable {
+		return client.addPilot("Bench Pilot", "Nowhere");
+	}
+
+	@Benchmark
+	public int addTechnician() throws Throwable {
+		return client.addTechnician("Bench Technician");
+	}
+
+	@Benchmark
+	public int addFlight() throws Throwable {
+		return client.addFlight(450, 0, 1, "2014-06-01", "08:30", "2014-06-01", "11:45",
+			"JFKAP", "LAXAP", pick(pilots), pick(planes));
+	}
+
+	@Benchmark
+	public Object bookFlight() throws Throwable {
+		return client.bookFlight(pick(customers), pick(flights));
+	}
+
+	@Benchmark
+	public int listNumberOfAvailableSeats() throws Throwable {
+		int i = ThreadLocalRandom.current().nextInt(flights.length);
+		return client.availableSeats(flights[i], departures[i]);
+	}
+
+	@Benchmark
+	public List<?> listsTotalNumberOfRepairsPerPlane() throws Throwable {
+		return client.repairsPerPlane();
+	}
+
+	@Benchmark
+	public List<?> listTotalNumberOfRepairsPerYear() throws Throwable {
+		return client.repairsPerYear();
+	}
+
+	@Benchmark
+	public int findPassengersCountWithStatus() throws Throwable {
+		return client.passengersWithStatus(pick(flights), STATUSES[ThreadLocalRandom.current().nextInt(STATUSES.length)]);
+	}
+}
@@ -4,4 +4,5 @@ PORT=$2
 USER=$3
 
 # Example: source ./run.sh flightDB 5432 user
-java -cp lib/*:bin/ DBproject $DBNAME $PORT $USER
+# Extra arguments select a non-interactive mode, e.g. ./run.sh flightDB 5432 user --load ../data
+java -cp lib/*:bin/ DBproject $DBNAME $PORT $USER "${@:4}"
@@ -0,0 +1,142 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This class books seats on flights. A seat is taken with a single
+ * conditional UPDATE on the flight row, which only succeeds while num_sold
+ * is below the capacity of the plane assigned in FlightInfo. The row lock
+ * taken by that UPDATE serializes concurrent bookings of the same flight
+ * while bookings of different flights proceed in parallel, and Postgres
+ * re-checks the condition after the lock is granted, so a flight can never
+ * be sold past its capacity. When no seat is left, or passengers are
+ * already waitlisted, the reservation is waitlisted and num_sold is not
+ * touched; seats freed on a flight with a waitlist go to the waitlist first,
+ * through WaitlistPromoter. The flight is dropped from the
+ * seat cache when the booking commits or rolls back.
+ *
+ * The checks, the seat and the reservation are written by the book_flight()
+ * function of sql/create.sql, so a booking is one round trip. Databases
+ * created without that function are booked with the same statements in a
+ * client-side transaction.
+ *
+ */
+
+public class BookingEngine{
+	public static final String RESERVED = "R";
+	public static final String WAITLISTED = "W";
+
+	//takes a seat if one is left and nobody is waitlisted, returns the new count and the capacity
+	static final String RESERVE_SEAT =
+		"UPDATE Flight F SET num_sold = F.num_sold + 1 FROM FlightInfo FI, Plane P " +
+		"WHERE F.fnum = ? AND FI.flight_id = F.fnum AND FI.plane_id = P.id AND F.num_sold < P.seats " +
+		"AND NOT EXISTS (SELECT 1 FROM Reservation W WHERE W.fid = F.fnum AND W.status = 'W') " +
+		"RETURNING F.num_sold, P.seats;";
+	static final String INSERT_RESERVATION = "INSERT INTO Reservation VALUES (?, ?, ?, ?);";
+	//returns (rnum, status, seats_remaining)
+	static final String BOOK_FLIGHT = "SELECT * FROM book_flight(?, ?, ?);";
+	//SQLSTATE of undefined_function
+	private static final String UNDEFINED_FUNCTION = "42883";
+	static final String OVERBOOKED_FLIGHTS =
+		"SELECT F.fnum, F.num_sold, P.seats FROM Flight F, FlightInfo FI, Plane P " +
+		"WHERE FI.flight_id = F.fnum AND FI.plane_id = P.id AND F.num_sold > P.seats ORDER BY F.fnum;";
+
+	private final DBproject _esql;
+	//false once book_flight() turned out to be missing
+	private volatile boolean _serverSide = true;
+
+	public BookingEngine(DBproject esql) {
+		this._esql = esql;
+	}
+
+	/**
+	 * The outcome of a booking.
+	 */
+	public static class Booking{
+		public final int rnum;
+		public final String status;
+		public final int seatsRemaining;
+
+		Booking(int rnum, String status, int seatsRemaining) {
+			this.rnum = rnum;
+			this.status = status;
+			this.seatsRemaining = seatsRemaining;
+		}
+	}
+
+	/**
+	 * Method to book a flight for a customer. The seat and the reservation
+	 * are written atomically.
+	 *
+	 * @param customerID id of an existing customer
+	 * @param flightNumber fnum of an existing flight
+	 * @return the new reservation, reserved if a seat was left and waitlisted otherwise
+	 * @throws java.sql.SQLException when the booking failed, nothing is written in that case
+	 */
+	public Booking book(final int customerID, final int flightNumber) throws SQLException {
+		if (_serverSide) {
+			try{
+				return bookServerSide(customerID, flightNumber);
+			}catch(SQLException e){
+				if (!UNDEFINED_FUNCTION.equals(e.getSQLState())) throw e;
+				_serverSide = false;
+				// a failed statement aborts the caller's transaction, nothing to fall back to
+				if (_esql.inTransaction()) throw e;
+			}
+		}
+		return bookInTransaction(customerID, flightNumber);
+	}//end book
+
+	/*
+	 * One call of book_flight(), which runs as a transaction of its own
+	 * unless the caller has one open.
+	 */
+	private Booking bookServerSide(int customerID, int flightNumber) throws SQLException {
+		int rnum = _esql.nextId(IdAllocator.RESERVATION);
+		List<List<String>> result = _esql.executeQueryAndReturnResult(BOOK_FLIGHT, rnum, customerID, flightNumber);
+		_esql.getSeatCache().invalidate(flightNumber);
+		List<String> row = result.get(0);
+		return new Booking(Integer.parseInt(row.get(0)), row.get(1).trim(), Integer.parseInt(row.get(2)));
+	}
+
+	private Booking bookInTransaction(final int customerID, final int flightNumber) throws SQLException {
+		return _esql.executeInTransaction(esql -> {
+			esql.getSeatCache().invalidate(flightNumber);
+			List<List<String>> seat = esql.executeQueryAndReturnResult(RESERVE_SEAT, flightNumber);
+
+			String status = WAITLISTED;
+			int seatsRemaining = 0;
+			if (!seat.isEmpty()) {
+				status = RESERVED;
+				seatsRemaining = Integer.parseInt(seat.get(0).get(1)) - Integer.parseInt(seat.get(0).get(0));
+			}
+
+			int rnum = esql.nextId(IdAllocator.RESERVATION);
+			esql.executeUpdate(INSERT_RESERVATION, rnum, customerID, flightNumber, status);
+			return new Booking(rnum, status, seatsRemaining);
+		});
+	}//end bookInTransaction
+
+	/**
+	 * Method to check that no flight is sold past the capacity of its plane.
+	 *
+	 * @return the flights breaking the invariant as (fnum, num_sold, seats), empty when it holds
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public List<List<String>> findOverbookedFlights() throws SQLException {
+		return _esql.executeQueryAndReturnResult(OVERBOOKED_FLIGHTS);
+	}
+
+}//end BookingEngine
@@ -0,0 +1,401 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * This class reloads the tables from the csv files in the data folder. Each
+ * file is streamed from the client with COPY FROM STDIN, so neither superuser
+ * rights nor access to the database host are needed. Constraints and
+ * secondary indexes are dropped for the duration of the load and recreated
+ * afterwards. Parent tables are loaded in parallel first, then the tables
+ * referencing them. The trigger counting repairs is off during the load and
+ * the repair counters are rebuilt at the end; so are the triggers logging
+ * flights to FlightLog, whose readers are cleared after the load.
+ *
+ * The DDL undoing these changes is stored in BulkLoadRestore in the same
+ * transaction that drops them, and each statement is deleted in the
+ * transaction that runs it. Every statement is tried even when one fails.
+ * When the loaded rows break a constraint the tables are emptied, the rest
+ * is restored and the load fails. A load that did not finish, because of an
+ * error or a crash, leaves its statements behind; they are run by the next
+ * load, after emptying the tables, or by restorePending() at startup.
+ *
+ * A load holds a session advisory lock on a connection of its own from
+ * start to end, so a second load waits for the first, and restorePending()
+ * leaves the statements alone while another client is loading instead of
+ * recreating constraints under its COPY.
+ *
+ */
+
+public class BulkLoader{
+	private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+	//table, csv file, column list; parents first
+	private static final String[][] PARENTS = {
+		{"Customer", "customer.csv", "id, fname, lname, gtype, dob, address, phone, zipcode"},
+		{"Pilot", "pilots.csv", "id, fullname, nationality"},
+		{"Plane", "planes.csv", "id, make, model, age, seats"},
+		{"Technician", "technician.csv", "id, full_name"},
+		{"Flight", "flights.csv", "fnum, cost, num_sold, num_stops, actual_departure_date, actual_arrival_date, arrival_airport, departure_airport"},
+	};
+	private static final String[][] CHILDREN = {
+		{"Reservation", "reservation.csv", "rnum, cid, fid, status"},
+		{"FlightInfo", "flightinfo.csv", "fiid, flight_id, pilot_id, plane_id"},
+		{"Repairs", "repairs.csv", "rid, repair_date, repair_code, pilot_id, plane_id, technician_id"},
+		{"Schedule", "schedule.csv", "id, flightNum, departure_time, arrival_time"},
+	};
+	private static final String TABLE_LIST = "Customer, Pilot, Plane, Technician, Flight, Reservation, FlightInfo, Repairs, Schedule";
+	//DDL still to run to undo the changes of a load, in seq order
+	static final String CREATE_RESTORE =
+		"CREATE TABLE IF NOT EXISTS BulkLoadRestore (seq SERIAL NOT NULL, ddl TEXT NOT NULL, PRIMARY KEY (seq));";
+	static final String PENDING_RESTORE = "SELECT seq, ddl FROM BulkLoadRestore ORDER BY seq;";
+	static final String ADD_RESTORE = "INSERT INTO BulkLoadRestore (ddl) VALUES (?);";
+	static final String TAKE_RESTORE = "DELETE FROM BulkLoadRestore WHERE seq = ?;";
+	//SQLSTATE of undefined_table
+	private static final String UNDEFINED_TABLE = "42P01";
+	//advisory lock key held by a running load, unused by anything else in the database
+	static final long LOAD_LOCK = 0x42554c4b4c4f4144L;
+	static final String LOCK = "SELECT pg_advisory_lock(?);";
+	static final String TRY_LOCK = "SELECT pg_try_advisory_lock(?);";
+	static final String UNLOCK = "SELECT pg_advisory_unlock(?);";
+
+	private final DBproject _esql;
+	private final int _threads;
+
+	/**
+	 * @param esql the database to load into
+	 * @param threads number of tables loaded at the same time
+	 */
+	public BulkLoader(DBproject esql, int threads) {
+		this._esql = esql;
+		this._threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Rows loaded into one table.
+	 */
+	public static class TableLoad{
+		public final String table;
+		public final long rows;
+		public final long nanos;
+
+		TableLoad(String table, long rows, long nanos) {
+			this.table = table;
+			this.rows = rows;
+			this.nanos = nanos;
+		}
+
+		public double rowsPerSecond() {
+			return nanos == 0 ? 0 : rows * 1e9 / nanos;
+		}
+	}
+
+	/**
+	 * Method to replace the contents of all tables with the csv files in a
+	 * folder. Existing rows are truncated first. Key sequences are moved past
+	 * the loaded keys and the tables are analyzed once the load is done.
+	 * When another client is loading, this waits for it to finish.
+	 *
+	 * @param dataDir folder holding customer.csv, flights.csv, ...
+	 * @return rows and elapsed time per table, in load order
+	 * @throws java.sql.SQLException when a statement fails, or the rows break a constraint; the tables are empty then
+	 * @throws java.io.IOException when a csv file cannot be read
+	 */
+	public List<TableLoad> load(File dataDir) throws SQLException, IOException {
+		for (String[][] group : new String[][][] {PARENTS, CHILDREN}) {
+			for (String[] table : group) {
+				File csv = new File(dataDir, table[1]);
+				if (!csv.isFile()) {
+					throw new IOException("Missing data file " + csv.getPath());
+				}
+			}
+		}//end for
+
+		ConnectionPool.PooledConnection lock = lock(true);
+		try{
+			return loadLocked(dataDir);
+		}finally{
+			unlock(lock);
+		}
+	}//end load
+
+	/*
+	 * The load itself, run while holding the advisory lock.
+	 */
+	private List<TableLoad> loadLocked(File dataDir) throws SQLException, IOException {
+		_esql.executeUpdate(CREATE_RESTORE);
+		if (!_esql.executeQueryAndReturnResult(PENDING_RESTORE).isEmpty()) {
+			// an earlier load did not finish; its rows are dropped anyway
+			_esql.executeUpdate("TRUNCATE " + TABLE_LIST + ";");
+			List<String> failures = runPending();
+			if (!failures.isEmpty()) {
+				throw new SQLException("Unable to undo an unfinished load: " + String.join("; ", failures));
+			}
+		}
+
+		dropConstraintsAndIndexes();
+		ExecutorService pool = Executors.newFixedThreadPool(_threads);
+		List<TableLoad> loads = new ArrayList<TableLoad>();
+		boolean loaded = false;
+		try{
+			_esql.executeUpdate("TRUNCATE " + TABLE_LIST + ";");
+			loads.addAll(copyAll(pool, dataDir, PARENTS));
+			loads.addAll(copyAll(pool, dataDir, CHILDREN));
+			loaded = true;
+		}finally{
+			pool.shutdownNow();
+			if (!loaded) {
+				// the rows copied so far are dropped, so that every constraint can be restored
+				try{
+					_esql.executeUpdate("TRUNCATE " + TABLE_LIST + ";");
+					for (String failure : runPending()) {
+						System.err.println("Unable to restore: " + failure);
+					}
+				}catch(SQLException e){
+					System.err.println("Unable to restore the tables, the next load will: " + e.getMessage());
+				}
+			}
+		}//end try
+
+		List<String> failures = runPending();
+		if (!failures.isEmpty()) {
+			_esql.executeUpdate("TRUNCATE " + TABLE_LIST + ";");
+			List<String> remaining = runPending();
+			throw new SQLException("The loaded rows were removed, they break " + String.join("; ", failures)
+				+ (remaining.isEmpty() ? "" : ". Still to restore: " + String.join("; ", remaining)));
+		}
+
+		for (String table : TABLE_LIST.split(", ")) {
+			_esql.executeUpdate("ANALYZE " + table + ";");
+		}
+		new RepairAggregates(_esql).rebuild();
+		_esql.syncSequences();
+		return loads;
+	}//end loadLocked
+
+	private List<TableLoad> copyAll(ExecutorService pool, final File dataDir, String[][] tables)
+			throws SQLException, IOException {
+		List<Future<TableLoad>> futures = new ArrayList<Future<TableLoad>>();
+		for (final String[] table : tables) {
+			futures.add(pool.submit(new Callable<TableLoad>() {
+				public TableLoad call() throws Exception {
+					return copy(table[0], table[2], new File(dataDir, table[1]));
+				}
+			}));
+		}
+
+		List<TableLoad> loads = new ArrayList<TableLoad>();
+		for (Future<TableLoad> future : futures) {
+			try{
+				loads.add(future.get());
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while loading", e);
+			}catch(ExecutionException e){
+				Throwable cause = e.getCause();
+				if (cause instanceof SQLException) throw (SQLException) cause;
+				if (cause instanceof IOException) throw (IOException) cause;
+				throw new SQLException(cause.getMessage(), cause);
+			}//end try
+		}
+		return loads;
+	}
+
+	/*
+	 * Streams one csv file into its table on a connection of its own.
+	 */
+	private TableLoad copy(String table, String columns, File csv) throws SQLException, IOException {
+		long start = System.nanoTime();
+		ConnectionPool.PooledConnection pc = _esql.borrowConnection();
+		try (Reader reader = new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8)) {
+			CopyManager copy = pc.getConnection().unwrap(PGConnection.class).getCopyAPI();
+			long rows = copy.copyIn("COPY " + table + " (" + columns + ") FROM STDIN WITH DELIMITER ','",
+				reader, COPY_BUFFER_SIZE);
+			return new TableLoad(table, rows, System.nanoTime() - start);
+		}catch(SQLException e){
+			pc.checkBroken(e);
+			throw e;
+		}finally{
+			_esql.releaseConnection(pc);
+		}
+	}
+
+	/**
+	 * Method to run the DDL left in BulkLoadRestore by a load that did not
+	 * finish, each statement in a transaction of its own. A statement that
+	 * fails stays there and the next ones are still tried. Nothing is run
+	 * while another client is loading.
+	 *
+	 * @return the statements that failed, with the error; empty when the table does not exist,
+	 *         null when another client is loading
+	 * @throws java.sql.SQLException when the lock cannot be taken or the statements cannot be read
+	 */
+	public List<String> restorePending() throws SQLException {
+		ConnectionPool.PooledConnection lock = lock(false);
+		if (lock == null) return null;
+		try{
+			return runPending();
+		}finally{
+			unlock(lock);
+		}
+	}
+
+	/*
+	 * Runs the statements of BulkLoadRestore, see restorePending(). Called
+	 * while holding the advisory lock.
+	 */
+	private List<String> runPending() throws SQLException {
+		List<List<String>> pending;
+		try{
+			pending = _esql.executeQueryAndReturnResult(PENDING_RESTORE);
+		}catch(SQLException e){
+			if (UNDEFINED_TABLE.equals(e.getSQLState())) return new ArrayList<String>();
+			throw e;
+		}
+		List<String> failures = new ArrayList<String>();
+		for (final List<String> row : pending) {
+			try{
+				_esql.executeInTransaction(esql -> {
+					// another client may have run it meanwhile
+					if (esql.executeUpdate(TAKE_RESTORE, Integer.parseInt(row.get(0))) == 1) {
+						esql.executeUpdate(row.get(1));
+					}
+					return null;
+				});
+			}catch(SQLException e){
+				failures.add(row.get(1) + " " + e.getMessage());
+			}
+		}//end for
+		return failures;
+	}//end runPending
+
+	/*
+	 * Takes the advisory lock on a connection borrowed for as long as it is
+	 * held, waiting for it or not. Returns the connection, or null when the
+	 * lock is taken by another client and wait is false.
+	 */
+	private ConnectionPool.PooledConnection lock(boolean wait) throws SQLException {
+		ConnectionPool.PooledConnection pc = _esql.borrowConnection();
+		boolean locked = false;
+		try{
+			PreparedStatement stmt = pc.prepare(wait ? LOCK : TRY_LOCK);
+			stmt.setLong(1, LOAD_LOCK);
+			try (ResultSet rs = stmt.executeQuery()) {
+				// pg_advisory_lock returns void once it holds the lock
+				locked = rs.next() && (wait || rs.getBoolean(1));
+			}
+			return locked ? pc : null;
+		}catch(SQLException e){
+			pc.checkBroken(e);
+			throw e;
+		}finally{
+			if (!locked) _esql.releaseConnection(pc);
+		}
+	}//end lock
+
+	/*
+	 * Releases the advisory lock and hands the connection back. Should the
+	 * unlock fail, the connection is closed, which releases the lock too.
+	 */
+	private void unlock(ConnectionPool.PooledConnection pc) {
+		try{
+			PreparedStatement stmt = pc.prepare(UNLOCK);
+			stmt.setLong(1, LOAD_LOCK);
+			stmt.executeQuery().close();
+		}catch(SQLException e){
+			pc.closeQuietly();
+		}finally{
+			_esql.releaseConnection(pc);
+		}
+	}
+
+	/*
+	 * Turns off the triggers and drops the constraints and secondary indexes
+	 * of the loaded tables in one transaction, which also stores the DDL
+	 * undoing it in the order it has to run.
+	 */
+	private void dropConstraintsAndIndexes() throws SQLException {
+		_esql.executeInTransaction(esql -> {
+			List<String> restore = new ArrayList<String>();
+			RepairAggregates aggregates = new RepairAggregates(esql);
+			aggregates.setTriggerEnabled(false);
+			restore.add(RepairAggregates.triggerDdl(true));
+			FlightLog.setTriggerEnabled(esql, false);
+			restore.addAll(Arrays.asList(FlightLog.triggerDdl(true)));
+			restore.addAll(dropConstraintsAndIndexes(esql));
+			for (String ddl : restore) {
+				esql.executeUpdate(ADD_RESTORE, ddl);
+			}
+			return null;
+		});
+	}
+
+	/*
+	 * Drops the constraints and secondary indexes of the loaded tables and
+	 * returns the DDL that recreates them, in the order it has to run.
+	 */
+	private static List<String> dropConstraintsAndIndexes(DBproject esql) throws SQLException {
+		String tables = "ARRAY['customer', 'pilot', 'plane', 'technician', 'flight', 'reservation', 'flightinfo', 'repairs', 'schedule']";
+		List<List<String>> constraints = esql.executeQueryAndReturnResult(
+			"SELECT C.conrelid::regclass::text, C.conname, pg_get_constraintdef(C.oid), C.contype " +
+			"FROM pg_constraint C JOIN pg_class T ON T.oid = C.conrelid " +
+			"WHERE T.relnamespace = current_schema()::regnamespace AND T.relname = ANY(" + tables + ") " +
+			"AND C.contype IN ('p', 'u', 'f') ORDER BY C.contype = 'f' DESC;");
+		List<List<String>> indexes = esql.executeQueryAndReturnResult(
+			"SELECT I.indexrelid::regclass::text, pg_get_indexdef(I.indexrelid) " +
+			"FROM pg_index I JOIN pg_class T ON T.oid = I.indrelid " +
+			"WHERE T.relnamespace = current_schema()::regnamespace AND T.relname = ANY(" + tables + ") " +
+			"AND NOT EXISTS (SELECT 1 FROM pg_constraint C WHERE C.conindid = I.indexrelid);");
+
+		List<String> keys = new ArrayList<String>();
+		List<String> foreignKeys = new ArrayList<String>();
+		// foreign keys come first in the result so they are dropped before the keys they reference
+		for (List<String> c : constraints) {
+			esql.executeUpdate("ALTER TABLE " + c.get(0) + " DROP CONSTRAINT " + c.get(1) + ";");
+			String ddl = "ALTER TABLE " + c.get(0) + " ADD CONSTRAINT " + c.get(1) + " " + c.get(2) + ";";
+			if (c.get(3).equals("f")) {
+				foreignKeys.add(ddl);
+			} else {
+				keys.add(ddl);
+			}
+		}
+		List<String> restore = new ArrayList<String>(keys);
+		for (List<String> i : indexes) {
+			esql.executeUpdate("DROP INDEX " + i.get(0) + ";");
+			restore.add(i.get(1) + ";");
+		}
+		restore.addAll(foreignKeys);
+		return restore;
+	}//end dropConstraintsAndIndexes
+
+}//end BulkLoader
@@ -0,0 +1,611 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class writes Flight, Reservation, FlightInfo, Plane and Repairs to
+ * a columnar file and reads it back through memory-mapped buffers, so
+ * analytic reports can run on a copy of the data without touching the
+ * database or the Java heap.
+ *
+ * Every column is a run of little-endian 32-bit ints. Dates are stored as
+ * days since 1970-01-01, and text columns (airport codes, status, repair
+ * code, make and model) as indexes into a dictionary of their distinct
+ * values. NULL is Integer.MIN_VALUE in number and date columns and -1 in
+ * text columns. The file is
+ *
+ *   "AIRSNAP1"  magic
+ *   long        offset of the directory
+ *   columns     each starting on an 8 byte boundary
+ *   directory   int tables, then per table: name, long rows, int columns,
+ *               then per column: name, byte type, long offset, int
+ *               dictionary size and the dictionary values
+ *
+ * where names and values are a short length followed by UTF-8 bytes.
+ *
+ * Usage: java ColumnarSnapshot <file> [routes|status|repairs] [top N]
+ *
+ */
+
+public class ColumnarSnapshot implements AutoCloseable{
+	public static final byte INT = 0;
+	public static final byte DAY = 1;
+	public static final byte DICT = 2;
+	public static final int NULL = Integer.MIN_VALUE;
+
+	private static final byte[] MAGIC = "AIRSNAP1".getBytes(StandardCharsets.US_ASCII);
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/*
+	 * Table name, query, and the name and type of every column of the query.
+	 */
+	static final Object[][] TABLES = {
+		{"Flight", "SELECT fnum, cost, num_sold, num_stops, actual_departure_date, actual_arrival_date, " +
+			"departure_airport, arrival_airport FROM Flight;",
+			new String[] {"fnum", "cost", "num_sold", "num_stops", "departure_date", "arrival_date", "departure_airport", "arrival_airport"},
+			new byte[] {INT, INT, INT, INT, DAY, DAY, DICT, DICT}},
+		{"Reservation", "SELECT rnum, cid, fid, status FROM Reservation;",
+			new String[] {"rnum", "cid", "fid", "status"},
+			new byte[] {INT, INT, INT, DICT}},
+		{"FlightInfo", "SELECT fiid, flight_id, pilot_id, plane_id FROM FlightInfo;",
+			new String[] {"fiid", "flight_id", "pilot_id", "plane_id"},
+			new byte[] {INT, INT, INT, INT}},
+		{"Plane", "SELECT id, make, model, age, seats FROM Plane;",
+			new String[] {"id", "make", "model", "age", "seats"},
+			new byte[] {INT, DICT, DICT, INT, INT}},
+		{"Repairs", "SELECT rid, repair_date, repair_code, pilot_id, plane_id, technician_id FROM Repairs;",
+			new String[] {"rid", "repair_date", "repair_code", "pilot_id", "plane_id", "technician_id"},
+			new byte[] {INT, DAY, DICT, INT, INT, INT}},
+	};
+
+	private final FileChannel _channel;
+	private final Map<String, Table> _tables = new LinkedHashMap<String, Table>();
+
+	//=======//
+	// Write //
+	//=======//
+
+	/*
+	 * Collects one column in a temporary file while the rows are read.
+	 */
+	static class ColumnWriter{
+		final String name;
+		final byte type;
+		final File file;
+		final FileChannel channel;
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		final Map<String, Integer> codes = new HashMap<String, Integer>();
+		final List<String> dictionary = new ArrayList<String>();
+
+		ColumnWriter(String name, byte type, File dir) throws IOException {
+			this.name = name;
+			this.type = type;
+			this.file = File.createTempFile("column-" + name + "-", ".bin", dir);
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		void write(int value) throws IOException {
+			if (!buffer.hasRemaining()) flush();
+			buffer.putInt(value);
+		}
+
+		void writeText(String value) throws IOException {
+			if (value == null) {
+				write(-1);
+				return;
+			}
+			String trimmed = value.trim();
+			Integer code = codes.get(trimmed);
+			if (code == null) {
+				code = dictionary.size();
+				codes.put(trimmed, code);
+				dictionary.add(trimmed);
+			}
+			write(code);
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) channel.write(buffer);
+			buffer.clear();
+		}
+
+		void close() throws IOException {
+			flush();
+			channel.close();
+		}
+	}//end ColumnWriter
+
+	/**
+	 * Method to write a snapshot of the tables to a file. The tables are read
+	 * in one read-only REPEATABLE READ transaction, so they are consistent
+	 * with each other.
+	 *
+	 * @param esql the database to read
+	 * @param file the snapshot, created or replaced
+	 * @return rows written per table
+	 * @throws java.sql.SQLException when the tables cannot be read
+	 * @throws java.io.IOException when the file cannot be written
+	 */
+	public static Map<String, Long> export(DBproject esql, final File file) throws SQLException, IOException {
+		final File dir = file.getAbsoluteFile().getParentFile();
+		final List<List<ColumnWriter>> tables = new ArrayList<List<ColumnWriter>>();
+		final long[] rows = new long[TABLES.length];
+		try{
+			esql.executeInTransaction(db -> {
+				db.executeUpdate("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY;");
+				for (int t = 0; t < TABLES.length; t++) {
+					String[] names = (String[]) TABLES[t][2];
+					final byte[] types = (byte[]) TABLES[t][3];
+					final List<ColumnWriter> columns = new ArrayList<ColumnWriter>();
+					tables.add(columns);
+					try{
+						for (int c = 0; c < names.length; c++) {
+							columns.add(new ColumnWriter(names[c], types[c], dir));
+						}
+					}catch(IOException e){
+						throw new SQLException("Failed to create a column file: " + e.getMessage(), "58030", e);
+					}
+					rows[t] = db.streamQuery((String) TABLES[t][1], DBproject.DEFAULT_FETCH_SIZE * 10, row -> {
+						try{
+							for (int c = 0; c < types.length; c++) {
+								ColumnWriter column = columns.get(c);
+								if (types[c] == DICT) {
+									column.writeText(row.getString(c + 1));
+								} else if (types[c] == DAY) {
+									long day = row.getEpochDay(c + 1);
+									column.write(day == Long.MIN_VALUE ? NULL : Math.toIntExact(day));
+								} else {
+									int value = row.getInt(c + 1);
+									column.write(row.wasNull() ? NULL : value);
+								}
+							}
+						}catch(IOException e){
+							throw new SQLException("Failed to write a column file: " + e.getMessage(), "58030", e);
+						}
+					});
+				}//end for
+				return null;
+			});
+
+			for (List<ColumnWriter> columns : tables) {
+				for (ColumnWriter column : columns) column.close();
+			}
+			assemble(file, tables, rows);
+		}finally{
+			for (List<ColumnWriter> columns : tables) {
+				for (ColumnWriter column : columns) {
+					try{
+						column.channel.close();
+					}catch(IOException e){
+						// ignored.
+					}
+					column.file.delete();
+				}
+			}
+		}
+
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for (int t = 0; t < TABLES.length; t++) {
+			counts.put((String) TABLES[t][0], rows[t]);
+		}
+		return counts;
+	}//end export
+
+	/*
+	 * Copies the column files behind the header and writes the directory.
+	 */
+	static void assemble(File file, List<List<ColumnWriter>> tables, long[] rows) throws IOException {
+		try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			long position = 16;
+			long[][] offsets = new long[tables.size()][];
+			for (int t = 0; t < tables.size(); t++) {
+				offsets[t] = new long[tables.get(t).size()];
+				for (int c = 0; c < offsets[t].length; c++) {
+					position = (position + 7) & ~7L;
+					offsets[t][c] = position;
+					try (FileChannel in = FileChannel.open(tables.get(t).get(c).file.toPath(), StandardOpenOption.READ)) {
+						long size = in.size();
+						for (long done = 0; done < size; ) {
+							done += in.transferTo(done, size - done, out.position(position + done));
+						}
+						position += size;
+					}
+				}
+			}//end for
+
+			ByteArrayBuilder directory = new ByteArrayBuilder();
+			directory.putInt(tables.size());
+			for (int t = 0; t < tables.size(); t++) {
+				directory.putString((String) TABLES[t][0]);
+				directory.putLong(rows[t]);
+				directory.putInt(tables.get(t).size());
+				for (int c = 0; c < tables.get(t).size(); c++) {
+					ColumnWriter column = tables.get(t).get(c);
+					directory.putString(column.name);
+					directory.put(column.type);
+					directory.putLong(offsets[t][c]);
+					directory.putInt(column.dictionary.size());
+					for (String value : column.dictionary) directory.putString(value);
+				}
+			}
+			write(out, position, directory.toBuffer());
+
+			ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC).putLong(position).flip();
+			write(out, 0, header);
+		}
+	}//end assemble
+
+	private static void write(FileChannel out, long position, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += out.write(buffer, position);
+		}
+	}
+
+	/*
+	 * A growable little-endian buffer for the directory.
+	 */
+	private static class ByteArrayBuilder{
+		private ByteBuffer _buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+
+		private void reserve(int bytes) {
+			if (_buffer.remaining() >= bytes) return;
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(_buffer.capacity() * 2, _buffer.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+			_buffer.flip();
+			larger.put(_buffer);
+			_buffer = larger;
+		}
+
+		void put(byte value) { reserve(1); _buffer.put(value); }
+		void putInt(int value) { reserve(4); _buffer.putInt(value); }
+		void putLong(long value) { reserve(8); _buffer.putLong(value); }
+
+		void putString(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			reserve(2 + bytes.length);
+			_buffer.putShort((short) bytes.length);
+			_buffer.put(bytes);
+		}
+
+		ByteBuffer toBuffer() {
+			ByteBuffer copy = _buffer.duplicate();
+			copy.flip();
+			return copy;
+		}
+	}
+
+	//======//
+	// Read //
+	//======//
+
+	/**
+	 * A column mapped from the file. Values are read from the mapping and
+	 * never copied to the heap.
+	 */
+	public static class Column{
+		public final String name;
+		public final byte type;
+		private final MappedByteBuffer _data;
+		private final String[] _dictionary;
+
+		Column(String name, byte type, MappedByteBuffer data, String[] dictionary) {
+			this.name = name;
+			this.type = type;
+			this._data = data;
+			this._dictionary = dictionary;
+		}
+
+		public int get(int row) {
+			return _data.getInt(row << 2);
+		}
+
+		/**
+		 * @return the text of a dictionary code, or null for -1
+		 */
+		public String decode(int code) {
+			return code < 0 ? null : _dictionary[code];
+		}
+
+		/**
+		 * @return the dictionary code of a text, or -1 when the column never holds it
+		 */
+		public int code(String value) {
+			for (int i = 0; i < _dictionary.length; i++) {
+				if (_dictionary[i].equals(value)) return i;
+			}
+			return -1;
+		}
+
+		public int getDictionarySize() {
+			return _dictionary.length;
+		}
+	}//end Column
+
+	/**
+	 * The columns of one table.
+	 */
+	public static class Table{
+		public final String name;
+		public final int rows;
+		private final Map<String, Column> _columns = new LinkedHashMap<String, Column>();
+
+		Table(String name, int rows) {
+			this.name = name;
+			this.rows = rows;
+		}
+
+		public Column column(String name) {
+			Column column = _columns.get(name);
+			if (column == null) throw new IllegalArgumentException("No column " + name + " in " + this.name);
+			return column;
+		}
+	}
+
+	private ColumnarSnapshot(FileChannel channel) {
+		this._channel = channel;
+	}
+
+	/**
+	 * Method to open a snapshot written by export().
+	 *
+	 * @throws java.io.IOException when the file cannot be read or is not a snapshot
+	 */
+	public static ColumnarSnapshot open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try{
+			ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0) { }
+			header.flip();
+			byte[] magic = new byte[MAGIC.length];
+			if (header.remaining() < 16) throw new IOException(file + " is not a snapshot");
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) throw new IOException(file + " is not a snapshot");
+			long directoryOffset = header.getLong();
+
+			ColumnarSnapshot snapshot = new ColumnarSnapshot(channel);
+			ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset, channel.size() - directoryOffset)
+				.order(ByteOrder.LITTLE_ENDIAN);
+			int tables = directory.getInt();
+			for (int t = 0; t < tables; t++) {
+				String name = getString(directory);
+				long rows = directory.getLong();
+				if (rows > Integer.MAX_VALUE / 4) throw new IOException("Table " + name + " is too large to map");
+				Table table = new Table(name, (int) rows);
+				int columns = directory.getInt();
+				for (int c = 0; c < columns; c++) {
+					String columnName = getString(directory);
+					byte type = directory.get();
+					long offset = directory.getLong();
+					String[] dictionary = new String[directory.getInt()];
+					for (int i = 0; i < dictionary.length; i++) dictionary[i] = getString(directory);
+					MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, rows * 4);
+					data.order(ByteOrder.LITTLE_ENDIAN);
+					table._columns.put(columnName, new Column(columnName, type, data, dictionary));
+				}
+				snapshot._tables.put(name, table);
+			}//end for
+			return snapshot;
+		}catch(IOException | RuntimeException e){
+			channel.close();
+			throw e;
+		}
+	}//end open
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public Table table(String name) {
+		Table table = _tables.get(name);
+		if (table == null) throw new IllegalArgumentException("No table " + name + " in the snapshot");
+		return table;
+	}
+
+	public void close() throws IOException {
+		_channel.close();
+	}
+
+	//=========//
+	// Reports //
+	//=========//
+
+	/*
+	 * Largest value of an int column, so ids can index plain arrays.
+	 */
+	private static int max(Column column, int rows) {
+		int max = -1;
+		for (int r = 0; r < rows; r++) max = Math.max(max, column.get(r));
+		return max;
+	}
+
+	/**
+	 * Method to compute flights, seats sold, capacity, load factor and
+	 * revenue (cost * num_sold) per route.
+	 *
+	 * @param top routes returned, by revenue
+	 * @return rows of (route, flights, sold, seats, load factor %, revenue)
+	 */
+	public List<List<String>> routes(int top) {
+		Table flights = table("Flight"), info = table("FlightInfo"), planes = table("Plane");
+
+		// seats of every flight through FlightInfo and Plane
+		Column planeID = planes.column("id"), planeSeats = planes.column("seats");
+		int[] seatsOfPlane = new int[max(planeID, planes.rows) + 1];
+		for (int r = 0; r < planes.rows; r++) seatsOfPlane[planeID.get(r)] = planeSeats.get(r);
+		Column flightID = info.column("flight_id"), infoPlane = info.column("plane_id");
+		int[] seatsOfFlight = new int[max(flights.column("fnum"), flights.rows) + 1];
+		for (int r = 0; r < info.rows; r++) {
+			int fnum = flightID.get(r), plane = infoPlane.get(r);
+			if (fnum < seatsOfFlight.length && plane >= 0 && plane < seatsOfPlane.length) seatsOfFlight[fnum] = seatsOfPlane[plane];
+		}
+
+		Column fnum = flights.column("fnum"), cost = flights.column("cost"), sold = flights.column("num_sold");
+		Column from = flights.column("departure_airport"), to = flights.column("arrival_airport");
+		int airports = Math.max(from.getDictionarySize(), 1);
+		Map<Long, long[]> routes = new HashMap<Long, long[]>();	// route -> flights, sold, seats, revenue
+		long[] last = null;
+		long lastKey = -1;
+		for (int r = 0; r < flights.rows; r++) {
+			long key = (long) from.get(r) * airports + to.get(r);
+			if (key != lastKey) {
+				last = routes.computeIfAbsent(key, k -> new long[4]);
+				lastKey = key;
+			}
+			last[0]++;
+			last[1] += sold.get(r);
+			last[2] += seatsOfFlight[fnum.get(r)];
+			last[3] += (long) cost.get(r) * sold.get(r);
+		}
+
+		List<Map.Entry<Long, long[]>> sorted = new ArrayList<Map.Entry<Long, long[]>>(routes.entrySet());
+		sorted.sort((a, b) -> Long.compare(b.getValue()[3], a.getValue()[3]));
+		List<List<String>> result = new ArrayList<List<String>>();
+		for (Map.Entry<Long, long[]> e : sorted.subList(0, Math.min(top, sorted.size()))) {
+			long[] v = e.getValue();
+			String route = from.decode((int) (e.getKey() / airports)) + ">" + to.decode((int) (e.getKey() % airports));
+			result.add(Arrays.asList(route, String.valueOf(v[0]), String.valueOf(v[1]), String.valueOf(v[2]),
+				v[2] == 0 ? "" : String.format("%.1f", 100.0 * v[1] / v[2]), String.valueOf(v[3])));
+		}
+		return result;
+	}//end routes
+
+	/**
+	 * Method to count reservations per status and find the flights with the
+	 * most waitlisted passengers.
+	 *
+	 * @param top flights returned
+	 * @return a totals row (ALL, W, R, C) followed by rows of (fnum, W, R, C)
+	 */
+	public List<List<String>> statusMix(int top) {
+		Table reservations = table("Reservation");
+		Column fid = reservations.column("fid"), status = reservations.column("status");
+		int flights = max(fid, reservations.rows) + 1;
+		int w = status.code("W"), r = status.code("R"), c = status.code("C");
+		int[] waitlisted = new int[flights], reserved = new int[flights], confirmed = new int[flights];
+		for (int row = 0; row < reservations.rows; row++) {
+			int s = status.get(row), f = fid.get(row);
+			if (s == w) waitlisted[f]++;
+			else if (s == r) reserved[f]++;
+			else if (s == c) confirmed[f]++;
+		}
+
+		long totalW = 0, totalR = 0, totalC = 0;
+		for (int f = 0; f < flights; f++) {
+			totalW += waitlisted[f];
+			totalR += reserved[f];
+			totalC += confirmed[f];
+		}
+		List<List<String>> result = new ArrayList<List<String>>();
+		result.add(Arrays.asList("ALL", String.valueOf(totalW), String.valueOf(totalR), String.valueOf(totalC)));
+
+		// selection of the top flights by waitlist, ties by fnum
+		Integer[] order = new Integer[flights];
+		for (int f = 0; f < flights; f++) order[f] = f;
+		final int[] key = waitlisted;
+		Arrays.sort(order, (a, b) -> key[b] != key[a] ? Integer.compare(key[b], key[a]) : Integer.compare(a, b));
+		for (int i = 0; i < Math.min(top, flights) && waitlisted[order[i]] > 0; i++) {
+			int f = order[i];
+			result.add(Arrays.asList(String.valueOf(f), String.valueOf(waitlisted[f]), String.valueOf(reserved[f]), String.valueOf(confirmed[f])));
+		}
+		return result;
+	}//end statusMix
+
+	/**
+	 * Method to count repairs per year and repair code.
+	 *
+	 * @return rows of (year, code, repairs) by year and code
+	 */
+	public List<List<String>> repairs() {
+		Table repairs = table("Repairs");
+		Column date = repairs.column("repair_date"), code = repairs.column("repair_code");
+		Map<Integer, long[]> years = new TreeMap<Integer, long[]>();
+		int codes = code.getDictionarySize() + 1;	// the last slot counts NULL
+		for (int r = 0; r < repairs.rows; r++) {
+			int day = date.get(r);
+			if (day == NULL) continue;
+			int year = LocalDate.ofEpochDay(day).getYear();
+			int c = code.get(r);
+			years.computeIfAbsent(year, y -> new long[codes])[c < 0 ? codes - 1 : c]++;
+		}
+		List<List<String>> result = new ArrayList<List<String>>();
+		for (Map.Entry<Integer, long[]> e : years.entrySet()) {
+			for (int c = 0; c < codes; c++) {
+				if (e.getValue()[c] == 0) continue;
+				result.add(Arrays.asList(String.valueOf(e.getKey()), c == codes - 1 ? "-" : code.decode(c), String.valueOf(e.getValue()[c])));
+			}
+		}
+		return result;
+	}//end repairs
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: java ColumnarSnapshot <file> [routes|status|repairs] [top N]");
+			return;
+		}
+		String report = args.length > 1 ? args[1] : "routes";
+		int top = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		long start = System.nanoTime();
+		try (ColumnarSnapshot snapshot = ColumnarSnapshot.open(new File(args[0]))) {
+			List<List<String>> rows;
+			String format;
+			switch (report) {
+				case "routes":
+					rows = snapshot.routes(top);
+					format = "%-14s %10s %12s %12s %8s %16s%n";
+					System.out.printf(format, "route", "flights", "sold", "seats", "load %", "revenue");
+					break;
+				case "status":
+					rows = snapshot.statusMix(top);
+					format = "%-10s %10s %10s %10s%n";
+					System.out.printf(format, "fnum", "W", "R", "C");
+					break;
+				case "repairs":
+					rows = snapshot.repairs();
+					format = "%-6s %-4s %10s%n";
+					System.out.printf(format, "year", "code", "repairs");
+					break;
+				default:
+					System.err.println("Unknown report " + report + ", expected routes, status or repairs");
+					return;
+			}
+			for (List<String> row : rows) {
+				System.out.printf(format, row.toArray());
+			}
+			System.out.println(String.format("%.3f s", (System.nanoTime() - start) / 1e9));
+		}catch(IOException | RuntimeException e){
+			System.err.println(e.getMessage());
+		}
+	}//end main
+
+}//end ColumnarSnapshot
@@ -0,0 +1,419 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class defines a bounded pool of physical PostgreSQL connections.
+ * Connections are checked out with borrow() and handed back with release().
+ * Idle connections are validated before they are handed out again and are
+ * closed by a background evictor once they have been idle for too long,
+ * never dropping the pool below its minimum size. Each connection keeps its
+ * own cache of prepared statements keyed by SQL text.
+ *
+ */
+
+public class ConnectionPool{
+	//connections idle for longer than this are validated on borrow
+	private static final long VALIDATE_AFTER_IDLE_MILLIS = 1000;
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	private final String _url;
+	private final Properties _properties;
+	private final int _minSize;
+	private final int _maxSize;
+	private final int _statementCacheSize;
+	private final long _idleTimeoutMillis;
+	private final long _borrowTimeoutMillis;
+
+	private final ReentrantLock _lock = new ReentrantLock();
+	private final Condition _available = _lock.newCondition();
+	//most recently returned connection sits at the head
+	private final ArrayDeque<PooledConnection> _idle = new ArrayDeque<PooledConnection>();
+	private int _total = 0;
+	private boolean _closed = false;
+	private final ScheduledExecutorService _evictor;
+	//time spent in borrow() by callers that got a connection
+	private final LatencyHistogram _waitTime = new LatencyHistogram();
+	private final AtomicLong _timeouts = new AtomicLong();
+
+	/**
+	 * Creates the pool and eagerly opens minSize connections.
+	 *
+	 * @param url the JDBC connection URL
+	 * @param properties driver properties, including user and password
+	 * @param minSize number of connections kept open even when idle
+	 * @param maxSize upper bound on open connections
+	 * @param statementCacheSize prepared statements cached per connection
+	 * @param idleTimeoutMillis idle time after which a surplus connection is closed
+	 * @param borrowTimeoutMillis how long borrow() waits for a free connection
+	 * @throws java.sql.SQLException when the initial connections cannot be opened
+	 */
+	public ConnectionPool(String url, Properties properties, int minSize, int maxSize,
+			int statementCacheSize, long idleTimeoutMillis, long borrowTimeoutMillis) throws SQLException {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+		}
+		this._url = url;
+		this._properties = properties;
+		this._minSize = minSize;
+		this._maxSize = maxSize;
+		this._statementCacheSize = statementCacheSize;
+		this._idleTimeoutMillis = idleTimeoutMillis;
+		this._borrowTimeoutMillis = borrowTimeoutMillis;
+
+		for (int i = 0; i < minSize; i++) {
+			_idle.push(open());
+			_total++;
+		}
+
+		_evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "connection-pool-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(idleTimeoutMillis / 2, 1000);
+		_evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Method to check a connection out of the pool. An idle connection is
+	 * reused when there is one, otherwise a new one is opened as long as the
+	 * pool is below its maximum size. When the pool is exhausted the caller
+	 * waits up to the borrow timeout for another thread to release one.
+	 *
+	 * @return a connection that must be handed back with release()
+	 * @throws java.sql.SQLException when no connection became available
+	 */
+	public PooledConnection borrow() throws SQLException {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(_borrowTimeoutMillis);
+		while (true) {
+			PooledConnection candidate = null;
+			boolean openNew = false;
+
+			_lock.lock();
+			try{
+				while (candidate == null && !openNew) {
+					if (_closed) {
+						throw new SQLException("Connection pool is closed", "08003");
+					}
+					if (!_idle.isEmpty()) {
+						candidate = _idle.pop();
+					} else if (_total < _maxSize) {
+						_total++;
+						openNew = true;
+					} else {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0) {
+							_timeouts.incrementAndGet();
+							throw new SQLException("Timed out waiting for a pooled connection", "08001");
+						}
+						_available.awaitNanos(remaining);
+					}
+				}//end while
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for a pooled connection", "08001", e);
+			}finally{
+				_lock.unlock();
+			}//end try
+
+			if (openNew) {
+				try{
+					PooledConnection opened = open();
+					_waitTime.record(System.nanoTime() - start);
+					return opened;
+				}catch(SQLException e){
+					discard(null);
+					throw e;
+				}//end try
+			}
+
+			// validate connections that sat idle long enough to have been dropped
+			if (candidate.idleMillis() < VALIDATE_AFTER_IDLE_MILLIS || candidate.validate(VALIDATION_TIMEOUT_SECONDS)) {
+				candidate.markUsed();
+				_waitTime.record(System.nanoTime() - start);
+				return candidate;
+			}
+			discard(candidate);
+		}//end while
+	}//end borrow
+
+	/**
+	 * Method to hand a connection back to the pool. Broken or closed
+	 * connections are dropped, any open transaction is rolled back and
+	 * autocommit is restored before the connection is reused.
+	 *
+	 * @param pc the connection obtained from borrow()
+	 */
+	public void release(PooledConnection pc) {
+		if (pc == null) return;
+		if (!pc.reset()) {
+			discard(pc);
+			return;
+		}
+		pc.markUsed();
+
+		_lock.lock();
+		try{
+			if (_closed) {
+				_total--;
+				pc.closeQuietly();
+			} else {
+				_idle.push(pc);
+				_available.signal();
+			}
+		}finally{
+			_lock.unlock();
+		}//end try
+	}//end release
+
+	/**
+	 * Method to close every idle connection and stop the evictor. Connections
+	 * still checked out are closed as they are released.
+	 */
+	public void close() {
+		_evictor.shutdownNow();
+		_lock.lock();
+		try{
+			_closed = true;
+			for (PooledConnection pc : _idle) {
+				pc.closeQuietly();
+				_total--;
+			}
+			_idle.clear();
+			_available.signalAll();
+		}finally{
+			_lock.unlock();
+		}//end try
+	}//end close
+
+	/**
+	 * @return time callers spent in borrow(), including opening and validating connections
+	 */
+	public LatencyHistogram getWaitTime() {
+		return _waitTime;
+	}
+
+	/**
+	 * @return number of borrow() calls that timed out
+	 */
+	public long getTimeouts() {
+		return _timeouts.get();
+	}
+
+	public int getMinSize() {
+		return _minSize;
+	}
+
+	public int getMaxSize() {
+		return _maxSize;
+	}
+
+	/**
+	 * @return number of open connections, idle or checked out
+	 */
+	public int getTotalConnections() {
+		_lock.lock();
+		try{
+			return _total;
+		}finally{
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of connections currently waiting in the pool
+	 */
+	public int getIdleConnections() {
+		_lock.lock();
+		try{
+			return _idle.size();
+		}finally{
+			_lock.unlock();
+		}
+	}
+
+	private PooledConnection open() throws SQLException {
+		return new PooledConnection(DriverManager.getConnection(_url, _properties), _statementCacheSize);
+	}
+
+	private void discard(PooledConnection pc) {
+		if (pc != null) pc.closeQuietly();
+		_lock.lock();
+		try{
+			_total--;
+			_available.signal();
+		}finally{
+			_lock.unlock();
+		}//end try
+	}
+
+	/*
+	 * Closes surplus connections that have been idle longer than the idle
+	 * timeout and tops the pool back up to its minimum size.
+	 */
+	private void evictIdle() {
+		_lock.lock();
+		try{
+			// the least recently used connections are at the tail
+			Iterator<PooledConnection> it = _idle.descendingIterator();
+			while (it.hasNext() && _total > _minSize) {
+				PooledConnection pc = it.next();
+				if (pc.idleMillis() < _idleTimeoutMillis) break;
+				it.remove();
+				_total--;
+				pc.closeQuietly();
+			}//end while
+		}finally{
+			_lock.unlock();
+		}//end try
+
+		while (true) {
+			_lock.lock();
+			try{
+				if (_closed || _total >= _minSize) return;
+				_total++;
+			}finally{
+				_lock.unlock();
+			}
+			try{
+				release(open());
+			}catch(SQLException e){
+				discard(null);
+				return; // database unreachable, try again on the next run
+			}//end try
+		}//end while
+	}//end evictIdle
+
+	/**
+	 * A physical connection owned by the pool.
+	 */
+	public static class PooledConnection{
+		private final Connection _connection;
+		private final Map<String, PreparedStatement> _statements;
+		private volatile long _lastUsed;
+		private volatile boolean _broken = false;
+
+		PooledConnection(Connection connection, final int statementCacheSize) {
+			this._connection = connection;
+			this._lastUsed = System.nanoTime();
+			// least recently used statements are closed once the cache is full
+			this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+				protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+					if (size() <= statementCacheSize) return false;
+					try{
+						eldest.getValue().close();
+					}catch(SQLException e){
+						// ignored.
+					}
+					return true;
+				}
+			};
+		}
+
+		public Connection getConnection() {
+			return _connection;
+		}
+
+		/**
+		 * Method to fetch the prepared statement for a SQL string from this
+		 * connection's cache, preparing it on first use. The statement stays
+		 * owned by the cache and must not be closed by the caller.
+		 *
+		 * @param sql the SQL string, with ? placeholders for parameters
+		 * @return the cached prepared statement
+		 * @throws java.sql.SQLException when the statement cannot be prepared
+		 */
+		public PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement stmt = _statements.get(sql);
+			if (stmt == null || stmt.isClosed()) {
+				stmt = _connection.prepareStatement(sql);
+				_statements.put(sql, stmt);
+			}
+			return stmt;
+		}
+
+		/**
+		 * Marks the connection as unusable when the error indicates the link
+		 * to the server was lost (SQLSTATE class 08), so the pool drops it on
+		 * release instead of handing it out again.
+		 *
+		 * @param e the error raised while using the connection
+		 */
+		public void checkBroken(SQLException e) {
+			String state = e.getSQLState();
+			if (state != null && state.startsWith("08")) {
+				_broken = true;
+			}
+		}
+
+		long idleMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - _lastUsed);
+		}
+
+		void markUsed() {
+			_lastUsed = System.nanoTime();
+		}
+
+		boolean validate(int timeoutSeconds) {
+			try{
+				return _connection.isValid(timeoutSeconds);
+			}catch(SQLException e){
+				return false;
+			}
+		}
+
+		/*
+		 * Prepares the connection for its next borrower.
+		 * Returns false if the connection should be discarded.
+		 */
+		boolean reset() {
+			if (_broken) return false;
+			try{
+				if (_connection.isClosed()) return false;
+				if (!_connection.getAutoCommit()) {
+					_connection.rollback();
+					_connection.setAutoCommit(true);
+				}
+				return true;
+			}catch(SQLException e){
+				return false;
+			}//end try
+		}
+
+		void closeQuietly() {
+			try{
+				_connection.close();
+			}catch(SQLException e){
+				// ignored.
+			}
+		}
+	}//end PooledConnection
+
+}//end ConnectionPool
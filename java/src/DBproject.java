@@ -11,18 +11,34 @@
  */
 
 
-import java.sql.DriverManager;
+import java.sql.Array;
 import java.sql.Connection;
-import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
 import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class defines a simple embedded SQL utility class that is designed to
@@ -31,19 +47,85 @@ import java.util.ArrayList;
  */
 
 public class DBproject{
-	//reference to physical database connection
-	private Connection _connection = null;
+	//pool of physical database connections shared by all operations
+	private ConnectionPool _pool = null;
+	//connection of the transaction running on the current thread, if any
+	private final ThreadLocal<ConnectionPool.PooledConnection> _transaction = new ThreadLocal<ConnectionPool.PooledConnection>();
+	//block allocator for primary keys
+	private final IdAllocator _ids = new IdAllocator(this);
+	//seat reservation engine used by BookFlight
+	private final BookingEngine _bookings = new BookingEngine(this);
+	//actions to run when the transaction on the current thread ends
+	private final ThreadLocal<List<Runnable>> _afterTransaction = new ThreadLocal<List<Runnable>>();
+	//call counts and latencies per operation and SQL shape
+	private final Metrics _metrics = new Metrics(Boolean.parseBoolean(System.getProperty("dbproject.jmx", "true")));
+	//statements over the latency threshold, with their plans
+	private SlowQueryLog _slowLog = null;
+	//flight capacities and sold counts for ListNumberOfAvailableSeats
+	private final SeatCache _seats = new SeatCache(this,
+		Integer.getInteger("dbproject.seatCache.size", 10000),
+		Long.getLong("dbproject.seatCache.soldTtlMillis", 1000L));
+	//flights by airport pair and departure date for SearchFlights
+	private final RouteIndex _routes = new RouteIndex(this, Long.getLong("dbproject.routeIndex.refreshMillis", 5000L));
+	//flight network for PlanItinerary
+	private final ItineraryPlanner _planner = new ItineraryPlanner(this,
+		Long.getLong("dbproject.itinerary.refreshMillis", 5000L),
+		Integer.getInteger("dbproject.itinerary.maxTripDays", 2));
+	//passengers per status of every flight for ListStatusOfAllFlights
+	private final StatusMatrix _statusMatrix = new StatusMatrix(this, ForkJoinPool.commonPool());
+	//moves waitlisted reservations to reserved when seats free up
+	private final WaitlistPromoter _promoter = new WaitlistPromoter(this, Integer.getInteger("dbproject.waitlist.batchSize", 10000));
 	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+	private static final Object[] NO_PARAMS = new Object[0];
+	//rows fetched per round trip by cursors
+	static final int DEFAULT_FETCH_SIZE = Integer.getInteger("dbproject.fetchSize", 1000);
+	//least time FlightLog rows are kept for the readers that refresh from it, see FlightLog
+	static final long FLIGHT_LOG_RETENTION_MILLIS = Long.getLong("dbproject.flightLog.retentionMillis", 60 * 60 * 1000L);
+	//format of the results printed to standard out, see ResultPrinter
+	private final String _outputFormat = System.getProperty("dbproject.output.format", ResultPrinter.TSV);
 
 	public DBproject(String dbname, String dbport, String user, String passwd) throws SQLException {
+		this(dbname, dbport, user, passwd,
+			Integer.getInteger("dbproject.pool.min", 1),
+			Integer.getInteger("dbproject.pool.max", 8));
+	}
+
+	public DBproject(String dbname, String dbport, String user, String passwd, int minPoolSize, int maxPoolSize) throws SQLException {
+		if (!ResultPrinter.validFormat(_outputFormat)) {
+			throw new IllegalArgumentException("Invalid dbproject.output.format: " + _outputFormat + ", use table, tsv, csv or jsonl");
+		}
 		System.out.print("Connecting to database...");
 		try{
 			// constructs the connection URL
 			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
 			System.out.println ("Connection URL: " + url + "\n");
 
-			// obtain a physical connection
-	        this._connection = DriverManager.getConnection(url, user, passwd);
+			// statements are prepared on the server once they have been
+			// executed prepareThreshold times on a connection
+			Properties props = new Properties();
+			props.setProperty("user", user);
+			props.setProperty("password", passwd);
+			props.setProperty("prepareThreshold", System.getProperty("dbproject.prepareThreshold", "3"));
+			// batched inserts are sent as multi-row INSERTs
+			props.setProperty("reWriteBatchedInserts", "true");
+
+			// open the connection pool
+			this._pool = new ConnectionPool(url, props, minPoolSize, maxPoolSize,
+				Integer.getInteger("dbproject.statementCacheSize", 64),
+				Long.getLong("dbproject.pool.idleTimeoutMillis", 60000L),
+				Long.getLong("dbproject.pool.borrowTimeoutMillis", 30000L));
+			_metrics.registerPool(_pool);
+			this._slowLog = new SlowQueryLog(this,
+				Long.getLong("dbproject.slowQuery.thresholdMillis", 200L),
+				System.getProperty("dbproject.slowQuery.redact", "strings"),
+				Integer.getInteger("dbproject.slowQuery.explainsPerShape", 3),
+				new File(System.getProperty("dbproject.slowQuery.file", "slow-queries.log")),
+				Long.getLong("dbproject.slowQuery.maxBytes", 10L << 20),
+				Integer.getInteger("dbproject.slowQuery.files", 5));
+			long promoteMillis = Long.getLong("dbproject.waitlist.promoteMillis", 0L);
+			if (promoteMillis > 0) {
+				_promoter.start(promoteMillis);
+			}
 	        System.out.println("Done");
 		}catch(Exception e){
 			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
@@ -52,6 +134,195 @@ public class DBproject{
 		}
 	}
 
+	/**
+	 * Method to check a connection out of the pool. Every borrowed
+	 * connection must be handed back with releaseConnection().
+	 *
+	 * @return a pooled connection
+	 * @throws java.sql.SQLException when no connection is available
+	 */
+	public ConnectionPool.PooledConnection borrowConnection() throws SQLException {
+		return this._pool.borrow();
+	}
+
+	/**
+	 * Method to hand a connection back to the pool.
+	 *
+	 * @param pc the connection obtained from borrowConnection()
+	 */
+	public void releaseConnection(ConnectionPool.PooledConnection pc) {
+		this._pool.release(pc);
+	}
+
+	/**
+	 * A unit of work executed by executeInTransaction().
+	 */
+	public interface Transaction<T>{
+		T run(DBproject esql) throws SQLException;
+	}
+
+	/**
+	 * Method to run several statements as one transaction. While the work
+	 * runs, every execute* call made on this thread uses the same connection
+	 * with autocommit off. The transaction commits when the work returns and
+	 * rolls back when it throws. Nested calls join the outer transaction.
+	 *
+	 * @param work the statements to run
+	 * @return the value returned by the work
+	 * @throws java.sql.SQLException when a statement or the commit failed
+	 */
+	public <T> T executeInTransaction(Transaction<T> work) throws SQLException {
+		if (_transaction.get() != null) {
+			return work.run(this);
+		}
+
+		ConnectionPool.PooledConnection pc = this._pool.borrow();
+		Connection connection = pc.getConnection();
+		_transaction.set(pc);
+		try{
+			connection.setAutoCommit(false);
+			T result = work.run(this);
+			connection.commit();
+			return result;
+		}catch(SQLException e){
+			pc.checkBroken(e);
+			rollbackQuietly(connection);
+			throw e;
+		}catch(RuntimeException e){
+			rollbackQuietly(connection);
+			throw e;
+		}finally{
+			_transaction.remove();
+			this._pool.release(pc);
+			List<Runnable> actions = _afterTransaction.get();
+			_afterTransaction.remove();
+			if (actions != null) {
+				for (Runnable action : actions) action.run();
+			}
+		}
+	}//end executeInTransaction
+
+	/**
+	 * @return true while a transaction runs on the current thread
+	 */
+	public boolean inTransaction() {
+		return _transaction.get() != null;
+	}
+
+	/**
+	 * Method to run an action once the transaction on the current thread
+	 * has committed or rolled back, or right away when there is none.
+	 *
+	 * @param action the action, run on this thread
+	 */
+	public void afterTransaction(Runnable action) {
+		if (_transaction.get() == null) {
+			action.run();
+			return;
+		}
+		List<Runnable> actions = _afterTransaction.get();
+		if (actions == null) {
+			actions = new ArrayList<Runnable>();
+			_afterTransaction.set(actions);
+		}
+		actions.add(action);
+	}
+
+	private static void rollbackQuietly(Connection connection) {
+		try{
+			connection.rollback();
+		}catch(SQLException e){
+			// ignored, the pool drops the connection if it is unusable.
+		}
+	}
+
+	/*
+	 * Returns the connection of the current transaction, or borrows one.
+	 */
+	private ConnectionPool.PooledConnection acquire() throws SQLException {
+		ConnectionPool.PooledConnection pc = _transaction.get();
+		return pc != null ? pc : this._pool.borrow();
+	}
+
+	/*
+	 * Hands a connection from acquire() back unless it belongs to the
+	 * transaction running on this thread.
+	 */
+	private void restore(ConnectionPool.PooledConnection pc) {
+		if (pc != _transaction.get()) {
+			this._pool.release(pc);
+		}
+	}
+
+	/**
+	 * @return the engine that reserves seats for BookFlight
+	 */
+	public BookingEngine getBookingEngine() {
+		return _bookings;
+	}
+
+	/**
+	 * @return the counters of every operation and SQL shape
+	 */
+	public Metrics getMetrics() {
+		return _metrics;
+	}
+
+	/**
+	 * Method to format the counters of every operation, SQL shape and the
+	 * connection pool as text tables.
+	 *
+	 * @return the tables
+	 */
+	public String dumpMetrics() {
+		return _metrics.dump(_pool);
+	}
+
+	/*
+	 * Counts a call of a SQL shape that started at start, and logs it when
+	 * it was slow.
+	 */
+	private void recordStatement(String sql, Object[] params, long start, long rows, boolean failed) {
+		long nanos = System.nanoTime() - start;
+		_metrics.statement(sql).record(nanos, rows, failed);
+		if (_slowLog != null) _slowLog.record(sql, params, rows, nanos, failed);
+	}
+
+	/*
+	 * Counts a call of an operation that started at start.
+	 */
+	private void recordOperation(String name, long start, long rows, boolean failed) {
+		_metrics.operation(name).record(System.nanoTime() - start, rows, failed);
+	}
+
+	/**
+	 * @return the cache answering availableSeats()
+	 */
+	public SeatCache getSeatCache() {
+		return _seats;
+	}
+
+	/**
+	 * @return the index answering searchFlights()
+	 */
+	public RouteIndex getRouteIndex() {
+		return _routes;
+	}
+
+	/**
+	 * @return the planner answering planItinerary()
+	 */
+	public ItineraryPlanner getItineraryPlanner() {
+		return _planner;
+	}
+
+	/**
+	 * @return the promoter answering promoteWaitlists()
+	 */
+	public WaitlistPromoter getWaitlistPromoter() {
+		return _promoter;
+	}
+
 	/**
 	 * Method to execute an update SQL statement.  Update SQL instructions
 	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
@@ -60,14 +331,38 @@ public class DBproject{
 	 * @throws java.sql.SQLException when update failed
 	 * */
 	public void executeUpdate (String sql) throws SQLException {
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		// issues the update instruction
-		stmt.executeUpdate (sql);
+		executeUpdate (sql, NO_PARAMS);
+	}//end executeUpdate
 
-		// close the instruction
-	    stmt.close ();
+	/**
+	 * Method to execute a parameterized update SQL statement.  The statement
+	 * is prepared once per connection and reused from the statement cache.
+	 *
+	 * @param sql the input SQL string with ? placeholders
+	 * @param params the values bound to the placeholders, in order
+	 * @return the number of rows affected
+	 * @throws java.sql.SQLException when update failed
+	 * */
+	public int executeUpdate (String sql, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		int rowCount = -1;
+		ConnectionPool.PooledConnection pc = null;
+		try{
+			pc = acquire();
+			// fetches the cached statement object
+			PreparedStatement stmt = pc.prepare (sql);
+			bind (stmt, params);
+
+			// issues the update instruction
+			rowCount = stmt.executeUpdate ();
+			return rowCount;
+		}catch(SQLException e){
+			if (pc != null) pc.checkBroken(e);
+			throw e;
+		}finally{
+			if (pc != null) restore(pc);
+			recordStatement(sql, params, start, rowCount, rowCount < 0);
+		}
 	}//end executeUpdate
 
 	/**
@@ -80,39 +375,85 @@ public class DBproject{
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
 	public int executeQueryAndPrintResult (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		/*
-		 *  obtains the metadata object for the returned result set.  The metadata
-		 *  contains row and column info.
-		 */
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-
-		//iterates through the result set and output them to standard out.
-		boolean outputHeader = true;
-		while (rs.next()){
-			if(outputHeader){
-				for(int i = 1; i <= numCol; i++){
-					System.out.print(rsmd.getColumnName(i) + "\t");
-			    }
-			    System.out.println();
-			    outputHeader = false;
-			}
-			for (int i=1; i<=numCol; ++i)
-				System.out.print (rs.getString (i) + "\t");
-			System.out.println ();
-			++rowCount;
-		}//end while
-		stmt.close ();
+		return executeQueryAndPrintResult (query, NO_PARAMS);
+	}
+
+	/**
+	 * Method to execute a parameterized query and output the results to
+	 * standard out, in the current output format.
+	 *
+	 * @param query the input query string with ? placeholders
+	 * @param params the values bound to the placeholders, in order
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+		try (ResultPrinter printer = ResultPrinter.toConsole(_outputFormat)) {
+			return (int) printResult(printer, query, params);
+		}catch(IOException e){
+			throw new SQLException("Failed to print the result: " + e.getMessage(), "58030", e);
+		}
+	}
+
+	/**
+	 * Method to print the result of a report to standard out, recorded in
+	 * the metrics under the operation returning the same report.
+	 *
+	 * @param operation name of the operation, e.g. repairs-per-plane
+	 * @return the number of rows printed
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int printReport (String operation, String query, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		int rows = -1;
+		try{
+			rows = executeQueryAndPrintResult(query, params);
+			return rows;
+		}finally{
+			recordOperation(operation, start, rows, rows < 0);
+		}
+	}
+
+	/**
+	 * Method to execute a parameterized query and write the results to a
+	 * file, without holding them in memory.
+	 *
+	 * @param query the input query string with ? placeholders
+	 * @param format table, tsv, csv or jsonl
+	 * @param file the file, created or truncated
+	 * @param params the values bound to the placeholders, in order
+	 * @return the closed printer, with the rows written and the time taken
+	 * @throws java.sql.SQLException when failed to execute the query
+	 * @throws java.io.IOException when failed to write the file
+	 */
+	public ResultPrinter executeQueryAndWriteResult (String query, String format, Path file, Object... params) throws SQLException, IOException {
+		try (ResultPrinter printer = ResultPrinter.toFile(file, format)) {
+			printResult(printer, query, params);
+			return printer;
+		}
+	}
+
+	private long printResult (ResultPrinter printer, String query, Object... params) throws SQLException, IOException {
+		long start = System.nanoTime();
+		long rowCount = 0;
+		boolean failed = true;
+		//reads the result through a cursor so large results are not held in memory
+		try{
+			rowCount = printer.print(openCursor (query, DEFAULT_FETCH_SIZE, params));
+			failed = false;
+		}finally{
+			recordStatement(query, params, start, rowCount, failed);
+		}
 		return rowCount;
 	}
 
+	/**
+	 * @return format of the results printed to standard out
+	 */
+	public String getOutputFormat() {
+		return _outputFormat;
+	}
+
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and returns the results as
@@ -123,31 +464,55 @@ public class DBproject{
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
 	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		/*
-		 * obtains the metadata object for the returned result set.  The metadata
-		 * contains row and column info.
-		*/
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-
-		//iterates through the result set and saves the data returned by the query.
-		boolean outputHeader = false;
-		List<List<String>> result  = new ArrayList<List<String>>();
-		while (rs.next()){
-			List<String> record = new ArrayList<String>();
-			for (int i=1; i<=numCol; ++i)
-				record.add(rs.getString (i));
-			result.add(record);
-		}//end while
-		stmt.close ();
-		return result;
+		return executeQueryAndReturnResult (query, NO_PARAMS);
+	}//end executeQueryAndReturnResult
+
+	/**
+	 * Method to execute a parameterized query and return the results as
+	 * a list of records. Each record in turn is a list of attribute values
+	 *
+	 * @param query the input query string with ? placeholders
+	 * @param params the values bound to the placeholders, in order
+	 * @return the query result as a list of records
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		int rowCount = -1;
+		ConnectionPool.PooledConnection pc = null;
+		try{
+			pc = acquire();
+			PreparedStatement stmt = pc.prepare (query);
+			bind (stmt, params);
+
+			//issues the query instruction
+			ResultSet rs = stmt.executeQuery ();
+
+			/*
+			 * obtains the metadata object for the returned result set.  The metadata
+			 * contains row and column info.
+			*/
+			ResultSetMetaData rsmd = rs.getMetaData ();
+			int numCol = rsmd.getColumnCount ();
+
+			//iterates through the result set and saves the data returned by the query.
+			List<List<String>> result  = new ArrayList<List<String>>();
+			while (rs.next()){
+				List<String> record = new ArrayList<String>();
+				for (int i=1; i<=numCol; ++i)
+					record.add(rs.getString (i));
+				result.add(record);
+			}//end while
+			rs.close ();
+			rowCount = result.size();
+			return result;
+		}catch(SQLException e){
+			if (pc != null) pc.checkBroken(e);
+			throw e;
+		}finally{
+			if (pc != null) restore(pc);
+			recordStatement(query, params, start, rowCount, rowCount < 0);
+		}
 	}//end executeQueryAndReturnResult
 
 	/**
@@ -159,20 +524,249 @@ public class DBproject{
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
 	public int executeQuery (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
+		return executeQuery (query, NO_PARAMS);
+	}
+
+	/**
+	 * Method to execute a parameterized query and return the number of
+	 * results
+	 *
+	 * @param query the input query string with ? placeholders
+	 * @param params the values bound to the placeholders, in order
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQuery (String query, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		int rowCount = -1;
+		ConnectionPool.PooledConnection pc = null;
+		try{
+			pc = acquire();
+			PreparedStatement stmt = pc.prepare (query);
+			bind (stmt, params);
+
+			//issues the query instruction
+			ResultSet rs = stmt.executeQuery ();
+
+			rowCount = 0;
+
+			//iterates through the result set and count nuber of results.
+			if(rs.next()){
+				rowCount++;
+			}//end while
+			rs.close ();
+			return rowCount;
+		}catch(SQLException e){
+			if (pc != null) pc.checkBroken(e);
+			throw e;
+		}finally{
+			if (pc != null) restore(pc);
+			recordStatement(query, params, start, rowCount, rowCount < 0);
+		}
+	}
+
+	/**
+	 * Method to check whether a row with the given key exists. Only a
+	 * constant is fetched, never the row itself.
+	 *
+	 * @param table the table to look in
+	 * @param keyColumn the key column of the table
+	 * @param id the key value
+	 * @return true if a row with that key exists
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public boolean exists (String table, String keyColumn, int id) throws SQLException {
+		String query = String.format ("SELECT 1 FROM %s WHERE %s = ? LIMIT 1;",
+			identifier (table), identifier (keyColumn));
+		return executeQuery (query, id) > 0;
+	}
+
+	//positions of the keys found in a table, formatted with the table and key column
+	static final String EXISTING_IDS = "SELECT K.pos FROM unnest(CAST(? AS INTEGER[])) WITH ORDINALITY AS K(id, pos) " +
+		"WHERE EXISTS (SELECT 1 FROM %s T WHERE T.%s = K.id);";
+
+	/**
+	 * Method to check which of many keys exist, in a single round trip.
+	 * The keys are sent as one array parameter and the DBMS returns the
+	 * positions of the keys that were found.
+	 *
+	 * @param table the table to look in
+	 * @param keyColumn the key column of the table
+	 * @param ids the key values
+	 * @return a bitset where bit i is set when ids[i] exists
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public BitSet existingIds (String table, String keyColumn, int[] ids) throws SQLException {
+		BitSet found = new BitSet (ids.length);
+		if (ids.length == 0) return found;
 
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
+		String query = String.format (EXISTING_IDS, identifier (table), identifier (keyColumn));
+		Integer[] boxed = new Integer[ids.length];
+		for (int i = 0; i < ids.length; i++) boxed[i] = ids[i];
 
-		int rowCount = 0;
+		long start = System.nanoTime();
+		boolean failed = true;
+		ConnectionPool.PooledConnection pc = null;
+		try{
+			pc = acquire();
+			PreparedStatement stmt = pc.prepare (query);
+			Array array = pc.getConnection().createArrayOf ("int4", boxed);
+			stmt.setArray (1, array);
+			ResultSet rs = stmt.executeQuery ();
+			while (rs.next()) {
+				found.set ((int) rs.getLong (1) - 1);
+			}
+			rs.close ();
+			array.free ();
+			failed = false;
+			return found;
+		}catch(SQLException e){
+			if (pc != null) pc.checkBroken(e);
+			throw e;
+		}finally{
+			if (pc != null) restore(pc);
+			recordStatement(query, NO_PARAMS, start, found.cardinality(), failed);
+		}
+	}//end existingIds
 
-		//iterates through the result set and count nuber of results.
-		if(rs.next()){
-			rowCount++;
-		}//end while
-		stmt.close ();
+	/*
+	 * Rejects table and column names that are not plain identifiers, since
+	 * they are formatted into the SQL instead of bound.
+	 */
+	private static String identifier (String name) {
+		if (!name.matches ("[A-Za-z_][A-Za-z0-9_]*")) {
+			throw new IllegalArgumentException ("Invalid identifier: " + name);
+		}
+		return name;
+	}
+
+	/**
+	 * Method to open a cursor over the result of a query. Rows are fetched
+	 * from a server-side cursor fetchSize at a time, so memory use does not
+	 * grow with the size of the result. Outside a transaction the cursor runs
+	 * in its own read transaction, which ends when the cursor is closed. The
+	 * cursor holds a pooled connection and must be closed.
+	 *
+	 * @param query the input query string with ? placeholders
+	 * @param fetchSize number of rows fetched per round trip
+	 * @param params the values bound to the placeholders, in order
+	 * @return an open cursor positioned before the first row
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public RowCursor openCursor (String query, int fetchSize, Object... params) throws SQLException {
+		final ConnectionPool.PooledConnection pc = acquire();
+		final Connection connection = pc.getConnection();
+		try{
+			// the driver only uses a cursor when autocommit is off
+			final boolean ownTransaction = connection.getAutoCommit();
+			if (ownTransaction) {
+				connection.setAutoCommit(false);
+			}
+			final PreparedStatement stmt = pc.prepare (query);
+			bind (stmt, params);
+			stmt.setFetchSize (fetchSize);
+			final ResultSet rs = stmt.executeQuery ();
+
+			return new RowCursor(rs, () -> {
+				try{
+					rs.close ();
+					stmt.setFetchSize (0);
+					if (ownTransaction) {
+						connection.commit();
+					}
+				}catch(SQLException e){
+					pc.checkBroken(e);
+				}finally{
+					restore(pc);
+				}
+			});
+		}catch(SQLException e){
+			pc.checkBroken(e);
+			restore(pc);
+			throw e;
+		}
+	}//end openCursor
+
+	/**
+	 * Method to stream the result of a query to a handler one row at a time
+	 * through a cursor, see openCursor().
+	 *
+	 * @param query the input query string with ? placeholders
+	 * @param fetchSize number of rows fetched per round trip
+	 * @param handler receives every row in order
+	 * @param params the values bound to the placeholders, in order
+	 * @return the number of rows handled
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public long streamQuery (String query, int fetchSize, RowCursor.Handler handler, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		long rowCount = 0;
+		boolean failed = true;
+		try (RowCursor cursor = openCursor (query, fetchSize, params)) {
+			while (cursor.hasNext()) {
+				handler.handle (cursor.next());
+				rowCount++;
+			}
+			failed = false;
+		}catch(RowCursor.CursorException e){
+			throw e.getCause();
+		}finally{
+			recordStatement(query, params, start, rowCount, failed);
+		}
 		return rowCount;
+	}//end streamQuery
+
+	/**
+	 * Method to execute one update SQL statement for many parameter lists
+	 * as a single JDBC batch.  Use WriteBatch to queue different statements
+	 * into one transaction.
+	 *
+	 * @param sql the input SQL string with ? placeholders
+	 * @param paramList one parameter list per execution
+	 * @return the number of rows affected by each execution, or
+	 *         Statement.SUCCESS_NO_INFO when the driver does not know it, as
+	 *         for inserts rewritten into multi-row INSERTs
+	 * @throws java.sql.SQLException when the batch failed
+	 */
+	public int[] executeBatch (String sql, List<Object[]> paramList) throws SQLException {
+		long start = System.nanoTime();
+		long rowCount = -1;
+		ConnectionPool.PooledConnection pc = null;
+		try{
+			pc = acquire();
+			PreparedStatement stmt = pc.prepare (sql);
+			for (Object[] params : paramList) {
+				bind (stmt, params);
+				stmt.addBatch ();
+			}
+			int[] counts = stmt.executeBatch ();
+			rowCount = 0;
+			for (int count : counts) {
+				// rewritten batched inserts report SUCCESS_NO_INFO, one row per execution
+				if (count > 0) rowCount += count;
+				else if (count == Statement.SUCCESS_NO_INFO) rowCount++;
+			}
+			return counts;
+		}catch(SQLException e){
+			if (pc != null) pc.checkBroken(e);
+			throw e;
+		}finally{
+			if (pc != null) restore(pc);
+			recordStatement(sql, paramList.isEmpty() ? NO_PARAMS : paramList.get(0), start, rowCount, rowCount < 0);
+		}
+	}//end executeBatch
+
+	/*
+	 * Binds the parameters of a prepared statement in order.
+	 */
+	static void bind (PreparedStatement stmt, Object[] params) throws SQLException {
+		for (int i = 0; i < params.length; i++) {
+			if (params[i] == null) {
+				stmt.setNull (i + 1, Types.NULL);
+			} else {
+				stmt.setObject (i + 1, params[i]);
+			}
+		}//end for
 	}
 
 	/**
@@ -186,24 +780,464 @@ public class DBproject{
 	 */
 
 	public int getCurrSeqVal(String sequence) throws SQLException {
-		Statement stmt = this._connection.createStatement ();
+		List<List<String>> result = executeQueryAndReturnResult ("Select currval(CAST(? AS regclass))", sequence);
+		if (result.isEmpty()) return -1;
+		return Integer.parseInt(result.get(0).get(0));
+	}
 
-		ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-		if (rs.next()) return rs.getInt(1);
-		return -1;
+	/**
+	 * Method to advance a sequence. This method issues nextval() to the
+	 * DBMS and returns the new value of the sequence
+	 *
+	 * @param sequence name of the DB sequence
+	 * @return next value of a sequence
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public long getNextSeqVal(String sequence) throws SQLException {
+		List<List<String>> result = executeQueryAndReturnResult ("Select nextval(CAST(? AS regclass))", sequence);
+		return Long.parseLong(result.get(0).get(0));
 	}
 
 	/**
-	 * Method to close the physical connection if it is open.
+	 * Method to allocate a new primary key. Keys are handed out from blocks
+	 * reserved on the sequence, so most calls do not touch the DBMS.
+	 *
+	 * @param sequence one of the IdAllocator sequence names
+	 * @return a unique key for a new row
+	 * @throws java.sql.SQLException when a new block cannot be reserved
 	 */
-	public void cleanup(){
+	public int nextId(String sequence) throws SQLException {
+		return _ids.nextId(sequence);
+	}
+
+	/**
+	 * Method to allocate many primary keys at once, reserving all the blocks
+	 * that are needed in a single round trip.
+	 *
+	 * @param sequence one of the IdAllocator sequence names
+	 * @param count number of keys
+	 * @return count unique keys
+	 * @throws java.sql.SQLException when the blocks cannot be reserved
+	 */
+	public int[] nextIds(String sequence, int count) throws SQLException {
+		return _ids.nextIds(sequence, count);
+	}
+
+	/**
+	 * Method to move all key sequences past the largest key in their tables.
+	 * Must be called after rows were inserted without going through nextId().
+	 *
+	 * @throws java.sql.SQLException when a sequence cannot be updated
+	 */
+	public void syncSequences() throws SQLException {
+		_ids.syncAll();
+	}
+
+	//============//
+	// Operations //
+	//============//
+	// The menu operations without any console I/O, shared by the menu,
+	// the script mode and other front ends.
+
+	static final String INSERT_PLANE = "INSERT INTO plane VALUES (?, ?, ?, ?, ?);";
+	static final String INSERT_PILOT = "INSERT INTO Pilot VALUES(?, ?, ?);";
+	static final String INSERT_TECHNICIAN = "INSERT INTO Technician VALUES(?, ?);";
+	static final String INSERT_FLIGHT = "INSERT INTO flight VALUES (?, ?, ?, ?, CAST(? AS DATE), CAST(? AS DATE), ?, ?);";
+	static final String INSERT_FLIGHTINFO = "INSERT INTO FlightInfo VALUES (?, ?, ?, ?);";
+	static final String INSERT_SCHEDULE = "INSERT INTO Schedule VALUES (?, ?, CAST(? AS DATE), CAST(? AS DATE));";
+	static final String SEATS_SOLD = "SELECT F.num_sold FROM Flight F WHERE F.fnum=? AND F.actual_departure_date=CAST(? AS DATE);";
+	static final String PLANE_SEATS = "SELECT P.seats FROM FlightInfo FI, Plane P WHERE FI.flight_id=? AND FI.plane_id=P.id;";
+	// reports 7 and 8 read the counters maintained by triggers on Repairs, see RepairAggregates
+	static final String REPAIRS_PER_PLANE = "SELECT P.id AS PlaneID, COALESCE(RP.repairs, 0) AS PlaneCount FROM plane P LEFT JOIN RepairsPerPlane RP ON RP.plane_id=P.id ORDER BY PlaneCount DESC;";
+	static final String REPAIRS_PER_YEAR = "SELECT year AS date_part, repairs AS count FROM RepairsPerYear WHERE repairs > 0 ORDER BY count ASC;";
+	static final String PASSENGERS_WITH_STATUS = "SELECT COUNT(*) FROM reservation R WHERE R.fid=? AND R.status=?;";
+
+	/**
+	 * Method to add a plane.
+	 *
+	 * @return the id of the new plane
+	 * @throws java.sql.SQLException when the insert failed
+	 */
+	public int addPlane(String make, String model, int age, int seats) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
 		try{
-			if (this._connection != null){
-				this._connection.close ();
-			}//end if
-		}catch (SQLException e){
-	         // ignored.
-		}//end try
+			if (make.isEmpty() || model.isEmpty()) throw new IllegalArgumentException("Invalid Make or Model.");
+			if (age < 0 || age > 120) throw new IllegalArgumentException("Invalid Age");
+			if (seats < 0 || seats > 999) throw new IllegalArgumentException("Invalid Number of Seats");
+
+			int planeID = nextId(IdAllocator.PLANE);
+			executeUpdate(INSERT_PLANE, planeID, make, model, age, seats);
+			_seats.invalidatePlane(planeID);
+			failed = false;
+			return planeID;
+		}finally{
+			recordOperation("add-plane", start, 1, failed);
+		}
+	}
+
+	/**
+	 * Method to add a pilot.
+	 *
+	 * @return the id of the new pilot
+	 * @throws java.sql.SQLException when the insert failed
+	 */
+	public int addPilot(String fullname, String nationality) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try{
+			if (fullname.isEmpty() || nationality.isEmpty()) throw new IllegalArgumentException("Invalid Name.");
+
+			int pilotID = nextId(IdAllocator.PILOT);
+			executeUpdate(INSERT_PILOT, pilotID, fullname, nationality);
+			failed = false;
+			return pilotID;
+		}finally{
+			recordOperation("add-pilot", start, 1, failed);
+		}
+	}
+
+	/**
+	 * Method to add a technician.
+	 *
+	 * @return the id of the new technician
+	 * @throws java.sql.SQLException when the insert failed
+	 */
+	public int addTechnician(String fullname) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try{
+			int technicianID = nextId(IdAllocator.TECHNICIAN);
+			executeUpdate(INSERT_TECHNICIAN, technicianID, fullname);
+			failed = false;
+			return technicianID;
+		}finally{
+			recordOperation("add-technician", start, 1, failed);
+		}
+	}
+
+	/**
+	 * The values of a new flight, as entered in AddFlight.
+	 */
+	public static class FlightSpec{
+		public final int cost, numSold, numStops;
+		public final String departureDate, departureTime;	// YYYY-MM-DD, HH:MM
+		public final String arrivalDate, arrivalTime;
+		public final String arrivalAirport, departureAirport;
+		public final int pilotID, planeID;
+
+		public FlightSpec(int cost, int numSold, int numStops, String departureDate, String departureTime,
+				String arrivalDate, String arrivalTime, String arrivalAirport, String departureAirport,
+				int pilotID, int planeID) {
+			this.cost = cost;
+			this.numSold = numSold;
+			this.numStops = numStops;
+			this.departureDate = departureDate;
+			this.departureTime = departureTime;
+			this.arrivalDate = arrivalDate;
+			this.arrivalTime = arrivalTime;
+			this.arrivalAirport = arrivalAirport;
+			this.departureAirport = departureAirport;
+			this.pilotID = pilotID;
+			this.planeID = planeID;
+		}
+	}//end FlightSpec
+
+	/**
+	 * Method to add flights together with their FlightInfo and Schedule
+	 * rows. Keys are reserved in blocks, the pilot and plane references are
+	 * validated in one query each, and all rows are written in one
+	 * transaction with one JDBC batch per table.
+	 *
+	 * @param flights the flights to add
+	 * @return the fnum of every flight, in order
+	 * @throws java.sql.SQLException when a pilot or plane does not exist or an insert failed
+	 */
+	public int[] addFlights(List<FlightSpec> flights) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try{
+			int n = flights.size();
+			int[] pilots = new int[n], planes = new int[n];
+			for (int i = 0; i < n; i++) {
+				pilots[i] = flights.get(i).pilotID;
+				planes[i] = flights.get(i).planeID;
+			}
+			BitSet pilotFound = existingIds("Pilot", "id", pilots);
+			BitSet planeFound = existingIds("Plane", "id", planes);
+			if (pilotFound.cardinality() < n) {
+				throw new SQLException("Pilot " + pilots[pilotFound.nextClearBit(0)] + " does not exist", "02000");
+			}
+			if (planeFound.cardinality() < n) {
+				throw new SQLException("Plane " + planes[planeFound.nextClearBit(0)] + " does not exist", "02000");
+			}
+
+			int[] fnums = nextIds(IdAllocator.FLIGHT, n);
+			int[] fiids = nextIds(IdAllocator.FLIGHTINFO, n);
+			int[] scheduleIDs = nextIds(IdAllocator.SCHEDULE, n);
+
+			WriteBatch batch = new WriteBatch(this);
+			for (int i = 0; i < n; i++) {
+				FlightSpec f = flights.get(i);
+				batch.add(INSERT_FLIGHT,
+					fnums[i], f.cost, f.numSold, f.numStops, f.departureDate, f.arrivalDate, f.arrivalAirport, f.departureAirport);
+			}
+			for (int i = 0; i < n; i++) {
+				FlightSpec f = flights.get(i);
+				batch.add(INSERT_FLIGHTINFO, fiids[i], fnums[i], f.pilotID, f.planeID);
+			}
+			for (int i = 0; i < n; i++) {
+				FlightSpec f = flights.get(i);
+				batch.add(INSERT_SCHEDULE, scheduleIDs[i], fnums[i],
+					f.departureDate + " " + f.departureTime, f.arrivalDate + " " + f.arrivalTime);
+			}
+			for (int fnum : fnums) {
+				_seats.invalidate(fnum);
+			}
+			batch.execute();
+			for (int i = 0; i < n; i++) {
+				FlightSpec f = flights.get(i);
+				_routes.add(fnums[i], f.departureAirport, f.arrivalAirport, f.departureDate);
+				_planner.add(fnums[i], f.departureAirport, f.arrivalAirport, f.departureDate, f.arrivalDate, f.cost);
+			}
+			failed = false;
+			return fnums;
+		}finally{
+			recordOperation("add-flight", start, flights.size(), failed);
+		}
+	}//end addFlights
+
+	/**
+	 * Method to book a flight for a customer, see BookingEngine.
+	 *
+	 * @return the new reservation
+	 * @throws java.sql.SQLException when the booking failed
+	 */
+	public BookingEngine.Booking bookFlight(int customerID, int flightNumber) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try{
+			BookingEngine.Booking booking = _bookings.book(customerID, flightNumber);
+			failed = false;
+			return booking;
+		}finally{
+			recordOperation("book-flight", start, 1, failed);
+		}
+	}
+
+	/**
+	 * Method to find the number of available seats on a flight, i.e. the
+	 * capacity of its plane minus the seats sold. Answered from the seat
+	 * cache when possible.
+	 *
+	 * @param flightNumber fnum of the flight
+	 * @param departure departure date of the flight, a time of day may follow
+	 * @return the number of available seats
+	 * @throws java.sql.SQLException when no such flight departs on that date
+	 */
+	public int availableSeats(int flightNumber, String departure) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try{
+			int seats = _seats.availableSeats(flightNumber, departure);
+			failed = false;
+			return seats;
+		}finally{
+			recordOperation("available-seats", start, 1, failed);
+		}
+	}
+
+	/**
+	 * Method to find the number of available seats on a flight without the
+	 * seat cache.
+	 *
+	 * @param flightNumber fnum of the flight
+	 * @param departure departure date of the flight, a time of day may follow
+	 * @return the number of available seats
+	 * @throws java.sql.SQLException when no such flight departs on that date
+	 */
+	public int queryAvailableSeats(int flightNumber, String departure) throws SQLException {
+		List<List<String>> sold = executeQueryAndReturnResult(SEATS_SOLD, flightNumber, departure);
+		if (sold.isEmpty()) {
+			throw new SQLException("Flight " + flightNumber + " does not depart on " + departure, "02000");
+		}
+		List<List<String>> seats = executeQueryAndReturnResult(PLANE_SEATS, flightNumber);
+		if (seats.isEmpty()) {
+			throw new SQLException("Flight " + flightNumber + " has no plane assigned", "02000");
+		}
+		return Integer.parseInt(seats.get(0).get(0)) - Integer.parseInt(sold.get(0).get(0));
+	}
+
+	/**
+	 * @return (plane id, number of repairs) for every plane, most repaired first
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public List<List<String>> repairsPerPlane() throws SQLException {
+		long start = System.nanoTime();
+		int rows = -1;
+		try{
+			List<List<String>> result = executeQueryAndReturnResult(REPAIRS_PER_PLANE);
+			rows = result.size();
+			return result;
+		}finally{
+			recordOperation("repairs-per-plane", start, rows, rows < 0);
+		}
+	}
+
+	/**
+	 * @return (year, number of repairs) for every year with repairs, fewest first
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public List<List<String>> repairsPerYear() throws SQLException {
+		long start = System.nanoTime();
+		int rows = -1;
+		try{
+			List<List<String>> result = executeQueryAndReturnResult(REPAIRS_PER_YEAR);
+			rows = result.size();
+			return result;
+		}finally{
+			recordOperation("repairs-per-year", start, rows, rows < 0);
+		}
+	}
+
+	/**
+	 * Method to count the passengers of a flight with a reservation status.
+	 *
+	 * @param status W, R or C
+	 * @return number of reservations with that status
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int passengersWithStatus(int flightNumber, String status) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try{
+			if (!status.equals("W") && !status.equals("R") && !status.equals("C")) {
+				throw new IllegalArgumentException("Please enter a valid status. ");
+			}
+			int count = Integer.parseInt(executeQueryAndReturnResult(PASSENGERS_WITH_STATUS, flightNumber, status).get(0).get(0));
+			failed = false;
+			return count;
+		}finally{
+			recordOperation("passengers-with-status", start, 1, failed);
+		}
+	}
+
+	/**
+	 * Method to find the flights between two airports departing between two
+	 * dates, see RouteIndex.
+	 *
+	 * @param fromDate first departure date, YYYY-MM-DD
+	 * @param toDate last departure date, YYYY-MM-DD
+	 * @param limit most flights returned
+	 * @return the flights with a seat left, by departure date
+	 * @throws java.sql.SQLException when failed to read the flights
+	 */
+	public List<RouteIndex.FlightMatch> searchFlights(String departureAirport, String arrivalAirport,
+			String fromDate, String toDate, int limit) throws SQLException {
+		long start = System.nanoTime();
+		int rows = 0;
+		boolean failed = true;
+		try{
+			if (!validDate(fromDate) || !validDate(toDate)) {
+				throw new IllegalArgumentException("Please enter dates as YYYY-MM-DD. ");
+			}
+			List<RouteIndex.FlightMatch> flights = _routes.search(departureAirport, arrivalAirport, fromDate, toDate, limit, true);
+			rows = flights.size();
+			failed = false;
+			return flights;
+		}finally{
+			recordOperation("search-flights", start, rows, failed);
+		}
+	}
+
+	/**
+	 * Method to find the fastest or cheapest itinerary between two airports,
+	 * see ItineraryPlanner.
+	 *
+	 * @param date day of the first departure, YYYY-MM-DD
+	 * @param maxConnections most changes of plane
+	 * @param minLayoverDays least days between an arrival and the next departure
+	 * @param objective fastest or cheapest
+	 * @return the itinerary, or null when there is none
+	 * @throws java.sql.SQLException when failed to read the flights
+	 */
+	public ItineraryPlanner.Itinerary planItinerary(String from, String to, String date, int maxConnections,
+			int minLayoverDays, String objective) throws SQLException {
+		long start = System.nanoTime();
+		int rows = 0;
+		boolean failed = true;
+		try{
+			if (!validDate(date)) {
+				throw new IllegalArgumentException("Please enter the date as YYYY-MM-DD. ");
+			}
+			ItineraryPlanner.Itinerary itinerary = _planner.plan(from, to, date, maxConnections, minLayoverDays, objective);
+			rows = itinerary == null ? 0 : itinerary.legs.size();
+			failed = false;
+			return itinerary;
+		}finally{
+			recordOperation("plan-itinerary", start, rows, failed);
+		}
+	}
+
+	/**
+	 * Method to count the passengers per status of every flight with one
+	 * read of Reservation, see StatusMatrix.
+	 *
+	 * @param fromDate first departure date, YYYY-MM-DD, or null for all flights
+	 * @param toDate last departure date, YYYY-MM-DD, ignored when fromDate is null
+	 * @return the counts of every flight, zero for those without reservations
+	 * @throws java.sql.SQLException when failed to read the reservations
+	 */
+	public StatusMatrix.Matrix statusOfAllFlights(String fromDate, String toDate) throws SQLException {
+		long start = System.nanoTime();
+		int rows = 0;
+		boolean failed = true;
+		try{
+			if (fromDate != null && (!validDate(fromDate) || !validDate(toDate))) {
+				throw new IllegalArgumentException("Please enter the dates as YYYY-MM-DD. ");
+			}
+			StatusMatrix.Matrix matrix = _statusMatrix.compute(fromDate, toDate);
+			rows = matrix.size();
+			failed = false;
+			return matrix;
+		}finally{
+			recordOperation("status-matrix", start, rows, failed);
+		}
+	}
+
+	/**
+	 * Method to move waitlisted reservations to reserved, first come first
+	 * served, on every flight with seats left, see WaitlistPromoter.
+	 *
+	 * @return the number of flights and reservations promoted
+	 * @throws java.sql.SQLException when a batch failed; the batches before it stay committed
+	 */
+	public WaitlistPromoter.Promotion promoteWaitlists() throws SQLException {
+		long start = System.nanoTime();
+		long rows = 0;
+		boolean failed = true;
+		try{
+			WaitlistPromoter.Promotion promotion = _promoter.promote();
+			rows = promotion.promoted;
+			failed = false;
+			return promotion;
+		}finally{
+			recordOperation("promote-waitlist", start, rows, failed);
+		}
+	}
+
+	/**
+	 * Method to close the physical connections held by the pool.
+	 */
+	public void cleanup(){
+		_promoter.stop();
+		_metrics.unregister();
+		if (this._slowLog != null){
+			this._slowLog.close();
+		}//end if
+		if (this._pool != null){
+			this._pool.close ();
+		}//end if
 	}//end cleanup
 
 	/**
@@ -212,14 +1246,15 @@ public class DBproject{
 	 * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
 	 */
 	public static void main (String[] args) {
-		if (args.length != 3) {
+		if (args.length < 3) {
 			System.err.println (
 				"Usage: " + "java [-classpath <classpath>] " + DBproject.class.getName () +
-		            " <dbname> <port> <user>");
+		            " <dbname> <port> <user> [--load <data folder> [threads] | --script <file|-> [commit every] | --repairs <rebuild|verify> | --plans [max cost] | --snapshot <file> | --serve <http port>]");
 			return;
 		}//end if
 
 		DBproject esql = null;
+		int status = 0;
 
 		try{
 			System.out.println("(1)");
@@ -239,6 +1274,30 @@ public class DBproject{
 			String user = args[2];
 
 			esql = new DBproject (dbname, dbport, user, "");
+			RestorePendingLoad(esql);
+
+			// non-interactive modes
+			if (args.length > 3) {
+				if (args[3].equals("--load") && args.length > 4) {
+					int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+					BulkLoad(esql, args[4], threads);
+				} else if (args[3].equals("--script") && args.length > 4) {
+					int commitEvery = args.length > 5 ? Integer.parseInt(args[5]) : 100;
+					RunScript(esql, args[4], commitEvery);
+				} else if (args[3].equals("--repairs") && args.length > 4) {
+					RepairCounters(esql, args[4]);
+				} else if (args[3].equals("--serve") && args.length > 4) {
+					Serve(esql, Integer.parseInt(args[4]));
+				} else if (args[3].equals("--plans")) {
+					double maxCost = args.length > 4 ? Double.parseDouble(args[4]) : PlanCheck.DEFAULT_MAX_COST;
+					if (!CheckPlans(esql, maxCost)) status = 1;
+				} else if (args[3].equals("--snapshot") && args.length > 4) {
+					if (!ExportSnapshot(esql, args[4])) status = 1;
+				} else {
+					System.err.println ("Unknown option " + args[3]);
+				}
+				return;
+			}//end if
 
 			boolean keepon = true;
 			while(keepon){
@@ -253,7 +1312,12 @@ public class DBproject{
 				System.out.println("7. List total number of repairs per plane in descending order");
 				System.out.println("8. List total number of repairs per year in ascending order");
 				System.out.println("9. Find total number of passengers with a given status");
-				System.out.println("10. < EXIT");
+				System.out.println("10. Search flights by airports and dates");
+				System.out.println("11. Plan an itinerary with connections");
+				System.out.println("12. List passengers per status of all flights");
+				System.out.println("13. Promote waitlisted passengers");
+				System.out.println("14. Dump metrics");
+				System.out.println("15. < EXIT");
 
 				switch (readChoice()){
 					case 1: AddPlane(esql); break;
@@ -265,7 +1329,12 @@ public class DBproject{
 					case 7: ListsTotalNumberOfRepairsPerPlane(esql); break;
 					case 8: ListTotalNumberOfRepairsPerYear(esql); break;
 					case 9: FindPassengersCountWithStatus(esql); break;
-					case 10: keepon = false; break;
+					case 10: SearchFlights(esql); break;
+					case 11: PlanItinerary(esql); break;
+					case 12: ListStatusOfAllFlights(esql); break;
+					case 13: PromoteWaitlistedPassengers(esql); break;
+					case 14: DumpMetrics(esql); break;
+					case 15: keepon = false; break;
 				}
 			}
 		}catch(Exception e){
@@ -281,6 +1350,7 @@ public class DBproject{
 				// ignored.
 			}
 		}
+		if (status != 0) System.exit(status);
 	}
 
 	public static int readChoice() {
@@ -361,15 +1431,7 @@ public class DBproject{
 			// Insert Plane  //
 			//===============//
 
-			// maxIDQuery is the current max primary id value
-			int maxIDQuery = Integer.valueOf(esql.executeQueryAndReturnResult("SELECT max(id) FROM plane;").get(0).get(0));
-
-			maxIDQuery++;	// increment maxIDQuery to get next primary key for new plane.
-
-      String query = "INSERT INTO plane VALUES (" + maxIDQuery
-									 + ", \'" + make + "\', \'" +  model + "\', "
-									 + age + ", " + seats + ");";	// prepare insert statement
-      esql.executeUpdate(query); 								//insert new plane into database
+      esql.addPlane(make, model, Integer.valueOf(age), Integer.valueOf(seats)); 	//insert new plane into database
 
 			System.out.println("Plane added to database.");
 
@@ -380,11 +1442,6 @@ public class DBproject{
 
 	public static void AddPilot(DBproject esql) {//2
 		try{
-	         int getID = Integer.valueOf(esql.executeQueryAndReturnResult("SELECT max(id) FROM Pilot;").get(0).get(0));
-	         getID++;
-
-			 //System.out.println("current ID: " + getID); // debugging output
-
 	         System.out.print("Enter fullname: ");
 	         String fullname = in.readLine();
 					 if (fullname.equals(""))
@@ -406,9 +1463,7 @@ public class DBproject{
 
 	         //System.out.println("nationality: " + nationality); // debugging output
 
-	         String query = "INSERT INTO Pilot VALUES(" + getID + ", \'" + fullname + "\', \'" + nationality + "\');";
-
-	         esql.executeUpdate(query);
+	         esql.addPilot(fullname, nationality);
 
 	         System.out.println("Pilot added to database.");
 
@@ -530,9 +1585,9 @@ public class DBproject{
 			pilotID = Integer.valueOf(in.readLine());
 
 			// Check is pilot_id is valid
-			int pilotExists = esql.executeQuery("SELECT * FROM Pilot Where id="+pilotID+";");
+			boolean pilotExists = esql.exists("Pilot", "id", pilotID);
 
-			while (pilotExists < 1) {
+			while (!pilotExists) {
 				System.out.println("Invalid Pilot ID. Please try again or enter q to return to menu.");
 				System.out.print("Enter Pilot ID: ");
 				String userInput = in.readLine();
@@ -540,7 +1595,7 @@ public class DBproject{
 					return;
 				}
 				pilotID = Integer.valueOf(userInput);
-				pilotExists = esql.executeQuery("SELECT * FROM Pilot Where id="+pilotID+";");
+				pilotExists = esql.exists("Pilot", "id", pilotID);
 			}
 
 
@@ -549,9 +1604,9 @@ public class DBproject{
 			planeID = Integer.valueOf(in.readLine());
 
 			// Check is plane_id is valid
-			int planeExists = esql.executeQuery("SELECT * FROM Plane Where id="+planeID+";");
+			boolean planeExists = esql.exists("Plane", "id", planeID);
 
-			while (planeExists < 1) {
+			while (!planeExists) {
 				System.out.println("Invalid Plane ID. Please try again or enter q to return to menu.");
 				System.out.print("Enter Plane ID: ");
 				String userInput = in.readLine();
@@ -559,7 +1614,7 @@ public class DBproject{
 					return;
 				}
 				planeID = Integer.valueOf(userInput);
-				planeExists = esql.executeQuery("SELECT * FROM Plane Where id="+planeID+";");
+				planeExists = esql.exists("Plane", "id", planeID);
 			}
 
 
@@ -582,42 +1637,13 @@ public class DBproject{
 			// Insert Flight //
 			//===============//
 
-			// maxIDQuery is the current max primary id value in the flight table plus 1
-			int flightID = Integer.valueOf(esql.executeQueryAndReturnResult("SELECT max(fnum) FROM flight;").get(0).get(0)) + 1;
-
-      String insertFlightStatement = "INSERT INTO flight VALUES (" + flightID
-									 + ", " + cost + ", " +  num_sold + ", "
-									 + num_stops + ", \'" + departure_date + "\', \'" + arrival_date + "\', \'" + arrival_airport + "\', \'" + departure_airport + "\');";	// prepare insert flight statement
-
-      esql.executeUpdate(insertFlightStatement); 								//insert new flight into database
-
-			System.out.println("Flight added to database.");
-
-			//===================//
-			// Insert FlightInfo //
-			//===================//
-			// Parameters for FlightInfo(fiid, flight_id, pilot_id, plane_id, technician_id)
-
-			// flightInfoID is the current max primary id value in the flight table plus 1.
-			int flightInfoID = Integer.valueOf(esql.executeQueryAndReturnResult("SELECT max(fnum) FROM flight;").get(0).get(0)) +1;
-
-			// Prepare FlightInfo insert statement.
-			String insertFlightInfoStatement = "INSERT INTO FlightInfo VALUES (" + flightInfoID + ", " +flightID+", "+pilotID+", "+planeID+");";
+			// The Flight, FlightInfo and Schedule rows are written as one transaction
+			FlightSpec flight = new FlightSpec(cost, num_sold, num_stops, departure_date, departure_time,
+				arrival_date, arrival_time, arrival_airport, departure_airport, pilotID, planeID);
+			int flightID = esql.addFlights(Collections.singletonList(flight))[0];
 
-			esql.executeUpdate(insertFlightInfoStatement);
+			System.out.println("Flight " + flightID + " added to database.");
 			System.out.println("FlightInfo added to database.");
-
-			//===================//
-			// Insert Schedule   //
-			//===================//
-			// Parameters for Schedule(id, flightNum, departure_time, arrival_time)
-
-			// scheduleID is the result of adding one to max primary id value in the schedule table
-			int scheduleID = Integer.valueOf(esql.executeQueryAndReturnResult("SELECT max(fnum) FROM flight;").get(0).get(0)) + 1;
-
-			String insertScheduleStatement = "INSERT INTO Schedule VALUES ("+scheduleID+", "+flightID+", \'"+departure_date+" "+departure_time+"\', \'"+arrival_date+" "+arrival_time+"\');";
-			// System.out.println(insertScheduleStatement); // Debugging
-			esql.executeUpdate(insertScheduleStatement);
 			System.out.println("Schedule added to database.");
 
     }catch(Exception e){
@@ -632,19 +1658,12 @@ public class DBproject{
        try{
           // my code
 
-         int getID = Integer.valueOf(esql.executeQueryAndReturnResult("SELECT max(id) FROM Technician;").get(0).get(0));
-         getID++;
-
-		 //System.out.println("current ID: " + getID); // debugging output
-
          System.out.print("Enter fullname: ");
          String fullname = in.readLine();
 
          // System.out.println("fullname: " + fullname); // debugging output
 
-         String query = "INSERT INTO Technician VALUES(" + getID + ", \'" + fullname + "\');";
-
-         esql.executeUpdate(query);
+         esql.addTechnician(fullname);
 
          System.out.println("Technician added to database.");
 
@@ -659,16 +1678,14 @@ public class DBproject{
 		// Book Flight: Given a customer and flight that he/she wants to book, determine the status of the
 		//							reservation (Waitlisted/Confirmed/Reserved) and add the reservation to the database with appropriate status.
 		try{
-			String reservation_status = ""; // Used for Insert on Reservation table
-
 			// Get customer id
 			System.out.println("Please enter the Customer ID");
 			int customerID=Integer.valueOf(in.readLine());
 
 			// Check is customerID is valid
-			int customerExists = esql.executeQuery("SELECT * FROM Customer Where id="+customerID+";");
+			boolean customerExists = esql.exists("Customer", "id", customerID);
 
-			while (customerExists < 1) {
+			while (!customerExists) {
 				System.out.println("Customer ID does not exist. Please try again or enter q to return to menu.");
 				System.out.print("Enter Customer ID: ");
 				String userInput = in.readLine();
@@ -677,7 +1694,7 @@ public class DBproject{
 					return;
 				}
 				customerID = Integer.valueOf(userInput);
-				customerExists = esql.executeQuery("SELECT * FROM Customer Where id="+customerID+";");
+				customerExists = esql.exists("Customer", "id", customerID);
 			}
 
 			// Get flight id
@@ -685,9 +1702,9 @@ public class DBproject{
 			int flightNumber = Integer.valueOf(in.readLine());
 
 			// Check is flightNumber is valid
-			int flightExists = esql.executeQuery("SELECT * FROM Flight Where fnum="+flightNumber+";");
+			boolean flightExists = esql.exists("Flight", "fnum", flightNumber);
 
-			while (flightExists < 1) {
+			while (!flightExists) {
 				System.out.println("Flight Number does not exist. Please try again or enter q to return to menu.");
 				System.out.print("Enter Flight Number: ");
 				String userInput = in.readLine();
@@ -696,41 +1713,17 @@ public class DBproject{
 					return;
 				}
 				flightNumber = Integer.valueOf(userInput);
-				flightExists = esql.executeQuery("SELECT * FROM Flight Where fnum="+flightNumber+";");
+				flightExists = esql.exists("Flight", "fnum", flightNumber);
 			}
 
-			// Get number of seats sold from flight
-			int seats_sold = Integer.valueOf(esql.executeQueryAndReturnResult("SELECT F.num_sold FROM Flight F WHERE F.fnum="+ flightNumber +";").get(0).get(0));
-			System.out.println("Number of seats sold: " + seats_sold); // Debugging
+			// Reserve a seat if one is left, otherwise waitlist the customer.
+			// The seat count and the reservation are written in one transaction.
+			BookingEngine.Booking booking = esql.bookFlight(customerID, flightNumber);
+			System.out.println("There are " + booking.seatsRemaining + " seats available.");
+			System.out.println("Reservation " + booking.rnum + " has status " + booking.status);
+			System.out.println("Customer Added to Flight");
 
-			//Get number of seats available on the plane.
-			int seats_total = Integer.valueOf(esql.executeQueryAndReturnResult("SELECT P.seats FROM FlightInfo FI, Plane P WHERE FI.flight_id=" + flightNumber + " AND FI.plane_id=P.id;").get(0).get(0));
-			System.out.println("Number of seats on plane: " + seats_total); // Debugging
 
-			// Compare number of seats sold from Flight table with number of seats available on plane from plane table.
-			int seats_available = seats_total - seats_sold;
-			System.out.println("There are " + seats_available + " seats available.");
-
-			if(seats_available > 0) {
-				reservation_status = "R";
-			} else {
-				reservation_status = "W";
-			}
-
-			// Prepare to add reservation to the database with appropriate status
-			// Update number of seats sold in flight table.
-			esql.executeUpdate("UPDATE Flight SET num_sold =num_sold+1");
-
-			// Generate rnum
-			int rnum = Integer.valueOf(esql.executeQueryAndReturnResult("SELECT max(rnum) FROM Reservation;").get(0).get(0)) + 1;
-
-			String insertReservationStatement="INSERT INTO Reservation VALUES (" + rnum + ", " + customerID + ", " + flightNumber + ", \'" + reservation_status + "\');";
-			System.out.println(insertReservationStatement);
-			// Insert reservation to reservation table
-			esql.executeUpdate(insertReservationStatement);
-			System.out.println("Customer Added to Flight");
-
-
 		}catch(Exception e){
 			System.err.println (e.getMessage());
 		}
@@ -775,23 +1768,9 @@ public class DBproject{
             String user_provided_date_time = in.readLine();
 
 
-            ////////////////////////////////////////////////////////////////////////
-			// Get number of seats sold from flight
-			int seats_sold = Integer.valueOf(esql.executeQueryAndReturnResult("SELECT F.num_sold FROM Flight F WHERE F.fnum="+ user_provided_fnum + " AND F.actual_departure_date=\'"+ user_provided_date_time + "\';").get(0).get(0));
-
-            System.out.println("Number of seats sold: " + seats_sold); // Debugging
-
-
-            ////////////////////////////////////////////////////////////////////////
-			//Get number of seats available on the plane.
-			int seats_total = Integer.valueOf(esql.executeQueryAndReturnResult("SELECT P.seats FROM FlightInfo FI, Plane P WHERE FI.flight_id=" + user_provided_fnum + " AND FI.plane_id=P.id;").get(0).get(0));
-
-            System.out.println("Number of seats on plane: " + seats_total); // Debugging
-
-
             ////////////////////////////////////////////////////////////////////////
 			// Compare number of seats sold from Flight table with number of seats available on plane from plane table.
-			int seats_available = seats_total - seats_sold;
+			int seats_available = esql.availableSeats(user_provided_fnum, user_provided_date_time);
 
             System.out.println("There are " + seats_available + " seats available.");
 
@@ -825,10 +1804,7 @@ public class DBproject{
 
           // String query = "SELECT P.id, nvl(R.nb_repairs, 0) FROM (SELECT plane.id FROM plane) P LEFT JOIN (SELECT plane_id, COUNT(*) AS nb_repairs FROM repairs GROUP BY plane_id ORDER BY nb_repairs DESC) R ON P.id=R.plane_id;";
 
-          String query = "SELECT plane.id AS PlaneID, (SELECT COUNT(*) FROM repairs WHERE repairs.plane_id=plane.id) AS PlaneCount FROM plane ORDER BY PlaneCount DESC;";
-
-
-          esql.executeQueryAndPrintResult(query);
+          esql.printReport("repairs-per-plane", REPAIRS_PER_PLANE);
 
           System.out.println("List Total Number of Repairs completed.");
 
@@ -851,9 +1827,7 @@ public class DBproject{
         try{
           // my code
 
-          String query = "SELECT date_part('year', repair_date), COUNT(*) FROM repairs GROUP BY date_part('year', repair_date) ORDER BY count ASC;";
-
-          esql.executeQueryAndPrintResult(query);
+          esql.printReport("repairs-per-year", REPAIRS_PER_YEAR);
 
           System.out.println("List Total Number of Repairs completed.");
 
@@ -882,9 +1856,9 @@ public class DBproject{
 			int flightNumber = Integer.valueOf(in.readLine());
 
 			// Check is flightNumber is valid
-			int flightExists = esql.executeQuery("SELECT * FROM Flight Where fnum="+flightNumber+";");
+			boolean flightExists = esql.exists("Flight", "fnum", flightNumber);
 
-			while (flightExists < 1) {
+			while (!flightExists) {
 				System.out.println("Flight Number does not exist. Please try again or enter q to return to menu.");
 				System.out.print("Enter Flight Number: ");
 				String userInput = in.readLine();
@@ -893,7 +1867,7 @@ public class DBproject{
 					return;
 				}
 				flightNumber = Integer.valueOf(userInput);
-				flightExists = esql.executeQuery("SELECT * FROM Flight Where fnum="+flightNumber+";");
+				flightExists = esql.exists("Flight", "fnum", flightNumber);
 			}
 
             System.out.print("Please enter your status (i.e., W=Waitlisted, R=Reserved, C=Confirmed): ");
@@ -911,9 +1885,7 @@ public class DBproject{
             
             
 
-            String query = "SELECT COUNT(*) FROM reservation R WHERE R.fid=" + flightNumber + " AND R.status=\'" + user_provided_status + "\';";
-
-            esql.executeQueryAndPrintResult(query);
+            esql.printReport("passengers-with-status", PASSENGERS_WITH_STATUS, flightNumber, user_provided_status);
 
             System.out.println("List Total Passengers with Status completed.");
 
@@ -928,57 +1900,289 @@ public class DBproject{
 
 	}
 
-	// Added Functions
-	public static boolean validDate(String date) {
-		if (date.length()!=10) return false;
+	public static void Serve(final DBproject esql, int port) {
+		// Serve the operations as JSON over HTTP until the process is stopped.
+		try{
+			final HttpService service = new HttpService(esql, port, Integer.getInteger("dbproject.http.backlog", 1024),
+				Integer.getInteger("dbproject.http.maxBodyBytes", 1 << 20));
+			final CountDownLatch stopped = new CountDownLatch(1);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				service.stop(2);
+				esql.cleanup();
+				stopped.countDown();
+			}));
+			service.start();
+			System.out.println("Serving on port " + port + (service.usesVirtualThreads() ? " with virtual threads" : "")
+				+ ", press Ctrl-C to stop.");
+			stopped.await();
+		}catch(Exception e){
+			System.err.println (e.getMessage());
+		}
+	}
 
-		// Parse date, expected input YYYY-MM-DD
-		String[] parsedDate = date.split("-");
-		int year = Integer.valueOf(parsedDate[0]);
-		int month = Integer.valueOf(parsedDate[1]);
-		int day = Integer.valueOf(parsedDate[2]);
+	public static void SearchFlights(DBproject esql) {//10
+		// List the flights with seats left between two airports, departing between two dates.
+		try{
+			System.out.print("Enter Departure Airport Code: ");
+			String departureAirport = in.readLine();
+			System.out.print("Enter Arrival Airport Code: ");
+			String arrivalAirport = in.readLine();
+			System.out.print("Enter First Departure Date (YYYY-MM-DD): ");
+			String fromDate = in.readLine();
+			System.out.print("Enter Last Departure Date (YYYY-MM-DD): ");
+			String toDate = in.readLine();
+
+			List<RouteIndex.FlightMatch> flights = esql.searchFlights(departureAirport, arrivalAirport, fromDate, toDate, 50);
+			System.out.println("fnum\tdeparture\tarrival\tcost\tseats");
+			for (RouteIndex.FlightMatch flight : flights) {
+				System.out.println(flight);
+			}
+			System.out.println(flights.size() + " flights found.");
+		}catch(Exception e){
+			System.err.println (e.getMessage());
+		}
+	}
 
-		// validate year
-		if (year < 0) {
-			return false;
+	public static void PlanItinerary(DBproject esql) {//11
+		// Find the fastest or cheapest way between two airports with connecting flights.
+		try{
+			System.out.print("Enter Departure Airport Code: ");
+			String from = in.readLine();
+			System.out.print("Enter Arrival Airport Code: ");
+			String to = in.readLine();
+			System.out.print("Enter Departure Date (YYYY-MM-DD): ");
+			String date = in.readLine();
+			System.out.print("Enter Maximum Number of Connections: ");
+			int connections = Integer.parseInt(in.readLine());
+			System.out.print("Enter Minimum Layover in Days (0 for the same day): ");
+			int layover = Integer.parseInt(in.readLine());
+			System.out.print("Fastest or cheapest (f/c): ");
+			String objective = in.readLine().trim().startsWith("c") ? ItineraryPlanner.CHEAPEST : ItineraryPlanner.FASTEST;
+
+			ItineraryPlanner.Itinerary itinerary = esql.planItinerary(from, to, date, connections, layover, objective);
+			if (itinerary == null) {
+				System.out.println("No itinerary found.");
+				return;
+			}
+			for (ItineraryPlanner.Leg leg : itinerary.legs) {
+				System.out.println(leg);
+			}
+			System.out.println(itinerary.legs.size() + " flights, arriving " + itinerary.getArrival() + ", total cost " + itinerary.cost);
+		}catch(Exception e){
+			System.err.println (e.getMessage());
 		}
-		// Validate Month
-		if (month < 0 || month >12 ) {
-			return false;
+	}
+
+	public static void ListStatusOfAllFlights(DBproject esql) {//12
+		// Count the waitlisted, reserved and confirmed passengers of every flight departing in a date range.
+		try{
+			System.out.print("Enter First Departure Date (YYYY-MM-DD, empty for all flights): ");
+			String fromDate = in.readLine().trim();
+			String toDate = null;
+			if (fromDate.isEmpty()) {
+				fromDate = null;
+			} else {
+				System.out.print("Enter Last Departure Date (YYYY-MM-DD): ");
+				toDate = in.readLine().trim();
+			}
+			System.out.print("Enter Minimum Number of Waitlisted Passengers: ");
+			String min = in.readLine().trim();
+			int minWaitlisted = min.isEmpty() ? 0 : Integer.parseInt(min);
+			System.out.print("Order by fnum, waitlisted, reserved or confirmed: ");
+			String orderBy = in.readLine().trim().toLowerCase();
+			if (orderBy.isEmpty()) orderBy = StatusMatrix.BY_FNUM;
+			System.out.print("Enter Maximum Number of Flights Listed: ");
+			String limit = in.readLine().trim();
+
+			StatusMatrix.Matrix matrix = esql.statusOfAllFlights(fromDate, toDate);
+			int[] selected = matrix.select(minWaitlisted, orderBy, limit.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(limit));
+			System.out.println("fnum\tW\tR\tC");
+			for (int row : selected) {
+				System.out.println(matrix.toString(row));
+			}
+			System.out.println(selected.length + " of " + matrix.size() + " flights listed. Total W " + matrix.totalWaitlisted
+				+ ", R " + matrix.totalReserved + ", C " + matrix.totalConfirmed + ".");
+		}catch(Exception e){
+			System.err.println (e.getMessage());
 		}
-		//Validate Day
-		if (day > 31 ) {
-			return false;
-		} else if (month == 4 || month == 6 || month == 9 || month == 11 && day > 30){
-			return false;
-		} else if (month == 2){
-			if (day > 28){
-				return false;
-			} else if (year%4 == 0 && day > 29) {
-				return false;
+	}
+
+	public static void PromoteWaitlistedPassengers(DBproject esql) {//13
+		// Give the seats freed on every flight to its waitlisted passengers, first come first served.
+		try{
+			long start = System.nanoTime();
+			WaitlistPromoter.Promotion promotion = esql.promoteWaitlists();
+			System.out.println(String.format("%s in %.2f s.", promotion, (System.nanoTime() - start) / 1e9));
+		}catch(Exception e){
+			System.err.println (e.getMessage());
+		}
+	}
+
+	public static void DumpMetrics(DBproject esql) {//14
+		// Print call counts, errors, rows and latency percentiles per operation and SQL statement.
+		System.out.print(esql.dumpMetrics());
+	}
+
+	public static void RestorePendingLoad(DBproject esql) {
+		// Recreate the constraints, indexes and triggers a load that did not finish left dropped.
+		try{
+			List<String> failures = new BulkLoader(esql, 1).restorePending();
+			if (failures == null) {
+				System.err.println("Another client is loading the tables, leaving the restore to it.");
+				return;
 			}
+			for (String failure : failures) {
+				System.err.println("Unable to restore after an unfinished load: " + failure);
+			}
+			if (!failures.isEmpty()) System.err.println("Run --load again to reload the tables.");
+		}catch(SQLException e){
+			System.err.println (e.getMessage());
 		}
+	}
+
+	public static void BulkLoad(DBproject esql, String dataDir, int threads) {
+		// Reload every table from the csv files in dataDir and report the load rate per table.
+		try{
+			System.out.println("Loading " + dataDir + " with " + threads + " threads...");
+			long start = System.nanoTime();
+			List<BulkLoader.TableLoad> loads;
+			try{
+				loads = new BulkLoader(esql, threads).load(new File(dataDir));
+			}finally{
+				// a failed load empties the tables as well
+				esql.getSeatCache().clear();
+				esql.getRouteIndex().clear();
+				esql.getItineraryPlanner().clear();
+			}
 
-		return true;
+			long totalRows = 0;
+			for (BulkLoader.TableLoad load : loads) {
+				System.out.println(String.format("%-12s %12d rows %10.2f s %14.0f rows/s",
+					load.table, load.rows, load.nanos / 1e9, load.rowsPerSecond()));
+				totalRows += load.rows;
+			}
+			System.out.println(String.format("Loaded %d rows in %.2f s (including index and constraint builds).",
+				totalRows, (System.nanoTime() - start) / 1e9));
+		}catch(Exception e){
+			System.err.println (e.getMessage());
+		}
 	}
 
-	public static boolean validTime(String time) {
-		if (time.length()!=5) return false;
+	public static void RunScript(DBproject esql, String script, int commitEvery) {
+		// Run the commands of a script file, or of standard input for "-", and report the throughput.
+		try{
+			BufferedReader reader = script.equals("-") ? in : new BufferedReader(new FileReader(script));
+			PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+			ScriptRunner.Summary summary = new ScriptRunner(esql, commitEvery).run(reader, out);
+			if (reader != in) reader.close();
 
-		// Parse date, expected input YYYY-MM-DD
-		String[] parsedTime = time.split(":");
-		int hour = Integer.valueOf(parsedTime[0]);
-		int minute = Integer.valueOf(parsedTime[1]);
+			for (Map.Entry<String, Long> entry : summary.perCommand.entrySet()) {
+				out.println(String.format("%-18s %10d", entry.getKey(), entry.getValue()));
+			}
+			out.println(String.format("Ran %d commands (%d failed) in %.2f s, %.0f commands/s.",
+				summary.commands, summary.errors, summary.nanos / 1e9, summary.commandsPerSecond()));
+			out.println(esql.getSeatCache());
+			out.flush();
+		}catch(Exception e){
+			System.err.println (e.getMessage());
+		}
+	}
 
-		// validate year
-		if (hour < 0 || hour > 23) {
+	public static void RepairCounters(DBproject esql, String action) {
+		// Rebuild the repair counters behind reports 7 and 8, or compare them with the Repairs table.
+		try{
+			RepairAggregates aggregates = new RepairAggregates(esql);
+			if (action.equals("rebuild")) {
+				long start = System.nanoTime();
+				aggregates.rebuild();
+				System.out.println(String.format("Rebuilt the repair counters in %.2f s.", (System.nanoTime() - start) / 1e9));
+			} else if (action.equals("verify")) {
+				List<List<String>> mismatches = aggregates.verify();
+				for (List<String> m : mismatches) {
+					System.out.println(String.format("%-6s %-8s live %8s stored %8s", m.get(0), m.get(1), m.get(2), m.get(3)));
+				}
+				System.out.println(mismatches.isEmpty() ? "The repair counters match the Repairs table."
+					: mismatches.size() + " repair counters differ from the Repairs table, run --repairs rebuild.");
+			} else {
+				System.err.println ("Unknown action " + action + ", expected rebuild or verify");
+			}
+		}catch(Exception e){
+			System.err.println (e.getMessage());
+		}
+	}
+
+	public static boolean CheckPlans(DBproject esql, double maxCost) {
+		// EXPLAIN every statement the client issues and report sequential scans and plans over the cost budget.
+		try{
+			List<PlanCheck.Result> results = new PlanCheck(esql, maxCost).run();
+			int failed = 0;
+			for (PlanCheck.Result r : results) {
+				System.out.println(String.format("%-4s %-26s cost %12.2f  %s", r.passed() ? "ok" : "FAIL", r.name, r.totalCost,
+					r.passed() ? "" : String.join(", ", r.problems)));
+				if (!r.passed()) failed++;
+			}
+			System.out.println(failed == 0 ? "All " + results.size() + " plans passed."
+				: failed + " of " + results.size() + " plans failed.");
+			return failed == 0;
+		}catch(Exception e){
+			System.err.println (e.getMessage());
+			return false;
+		}
+	}
+
+	public static boolean ExportSnapshot(DBproject esql, String file) {
+		// Write Flight, Reservation, FlightInfo, Plane and Repairs to a columnar file read by ColumnarSnapshot.
+		try{
+			long start = System.nanoTime();
+			Map<String, Long> rows = ColumnarSnapshot.export(esql, new File(file));
+			for (Map.Entry<String, Long> e : rows.entrySet()) {
+				System.out.println(String.format("%-12s %12d rows", e.getKey(), e.getValue()));
+			}
+			System.out.println(String.format("Wrote %s (%d bytes) in %.1f s", file, new File(file).length(),
+				(System.nanoTime() - start) / 1e9));
+			return true;
+		}catch(Exception e){
+			System.err.println (e.getMessage());
+			return false;
+		}
+	}
+
+	// Added Functions
+	/**
+	 * Method to check a date entered as YYYY-MM-DD, including the length of
+	 * the month and leap years.
+	 *
+	 * @param date the date entered
+	 * @return whether it is a valid calendar date
+	 */
+	public static boolean validDate(String date) {
+		if (date == null || date.length()!=10) return false;
+
+		// Parse date, expected input YYYY-MM-DD
+		try{
+			LocalDate.parse(date);
+			return true;
+		}catch(DateTimeParseException e){
 			return false;
 		}
-		// Validate Month
-		if (minute < 0 || minute >59 ) {
+	}
+
+	/**
+	 * Method to check a time entered as HH:MM.
+	 *
+	 * @param time the time entered
+	 * @return whether it is a valid time of day
+	 */
+	public static boolean validTime(String time) {
+		if (time == null || time.length()!=5) return false;
+
+		// Parse time, expected input HH:MM
+		try{
+			LocalTime.parse(time);
+			return true;
+		}catch(DateTimeParseException e){
 			return false;
 		}
-		return true;
 	}
 
 }
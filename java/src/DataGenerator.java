@@ -0,0 +1,455 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class writes a synthetic data set in the format of the files in data/,
+ * at a chosen scale factor. Scale factor 1 matches the size of the fixtures
+ * (2000 flights, 10000 reservations, 67 planes); 10000 gives 100M
+ * reservations. Every value is derived from the row number and the seed, so
+ * tables are written in independent chunks by several threads, memory use
+ * does not depend on the scale, and the same arguments always produce the
+ * same files. All references point to existing rows and all values respect
+ * the domains in sql/create.sql.
+ *
+ * Bookings and routes can be skewed: a fraction of the flights (airports)
+ * can be made to receive a larger share of the reservations (flights).
+ *
+ */
+
+public class DataGenerator{
+	private static final int CHUNK_ROWS = 1000000;
+	private static final long FIRST_FLIGHT_DAY = LocalDate.of(2014, 1, 1).toEpochDay();
+	private static final long FIRST_REPAIR_DAY = LocalDate.of(2010, 1, 1).toEpochDay();
+
+	private static final String[] FIRST_NAMES = {"Armand", "Alberto", "Wyatt", "Jane", "Maria", "Chen", "Fatima", "Olga", "Kenji", "Amara", "Liam", "Sofia"};
+	private static final String[] LAST_NAMES = {"Enderle", "Scarlett", "Ruoff", "Garcia", "Nguyen", "Okafor", "Smith", "Ivanova", "Tanaka", "Haddad", "Kowalski", "Silva"};
+	private static final String[] STREETS = {"Chapel Drive", "Bald Hill Street", "Campfire Ave.", "Main Street", "Oak Lane", "Sunset Blvd."};
+	private static final String[] CITIES = {"Melbourne", "Baton Rouge", "Cockeysville", "Riverside", "Portland", "Austin"};
+	private static final String[] STATES = {"FL", "LA", "MD", "CA", "OR", "TX"};
+	private static final String[] COUNTRIES = {"Australia", "Morocco", "India", "USA", "Brazil", "Japan", "Germany", "Nigeria"};
+	private static final String[][] PLANES = {
+		{"Airbus", "AirbusA300"}, {"Airbus", "AirbusA320"}, {"Boeing", "Boeing737"},
+		{"Boeing", "Boeing777"}, {"Embraer", "EmbraerE190"}, {"Bombadier", "BombardierCRJ900"}};
+	private static final String[] REPAIR_CODES = {"MJ", "MN", "SV"};
+
+	// per table salts for the row random generators
+	private static final long CUSTOMER = 1, PILOT = 2, PLANE = 3, TECHNICIAN = 4, FLIGHT = 5, RESERVATION = 6, REPAIR = 7, ROUTE = 8;
+
+	private final long _seed;
+	private final int _customers, _pilots, _technicians, _planes, _flights, _reservations, _repairs, _airports;
+	private final double _hotFlightFraction, _hotFlightShare;
+	private final double _hotAirportFraction, _hotAirportShare;
+
+	/**
+	 * @param scale scale factor, 1 is the size of the fixtures in data/
+	 * @param seed seed of all generated values
+	 * @param airports number of distinct airports
+	 * @param hotFlightFraction fraction of the flights that are hot
+	 * @param hotFlightShare share of the reservations going to hot flights
+	 * @param hotAirportFraction fraction of the airports that are hot
+	 * @param hotAirportShare share of the flights departing from or arriving at hot airports
+	 */
+	public DataGenerator(double scale, long seed, int airports, double hotFlightFraction, double hotFlightShare,
+			double hotAirportFraction, double hotAirportShare) {
+		this._seed = seed;
+		this._customers = scaled(250, scale);
+		this._pilots = scaled(250, scale);
+		this._technicians = scaled(250, scale);
+		this._planes = scaled(67, scale);
+		this._flights = scaled(2000, scale);
+		this._reservations = scaled(10000, scale);
+		this._repairs = scaled(550, scale);
+		this._airports = Math.max(2, airports);
+		this._hotFlightFraction = hotFlightFraction;
+		this._hotFlightShare = hotFlightShare;
+		this._hotAirportFraction = hotAirportFraction;
+		this._hotAirportShare = hotAirportShare;
+	}
+
+	private static int scaled(int base, double scale) {
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(base * scale)));
+	}
+
+	/**
+	 * Method to write all csv files into a folder.
+	 *
+	 * @param dir the output folder, created if missing
+	 * @param threads number of chunks written at the same time
+	 * @throws java.io.IOException when a file cannot be written
+	 */
+	public void generate(File dir, int threads) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Unable to create " + dir.getPath());
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		try{
+			List<Future<?>> tables = new ArrayList<Future<?>>();
+			List<Runnable> finish = new ArrayList<Runnable>();
+			tables.addAll(submit(pool, dir, "customer.csv", _customers, this::customer, finish));
+			tables.addAll(submit(pool, dir, "pilots.csv", _pilots, this::pilot, finish));
+			tables.addAll(submit(pool, dir, "technician.csv", _technicians, this::technician, finish));
+			tables.addAll(submit(pool, dir, "planes.csv", _planes, this::plane, finish));
+			tables.addAll(submit(pool, dir, "flights.csv", _flights, this::flight, finish));
+			tables.addAll(submit(pool, dir, "flightinfo.csv", _flights, this::flightInfo, finish));
+			tables.addAll(submit(pool, dir, "schedule.csv", _flights, this::schedule, finish));
+			tables.addAll(submit(pool, dir, "reservation.csv", _reservations, this::reservation, finish));
+			tables.addAll(submit(pool, dir, "repairs.csv", _repairs, this::repair, finish));
+			for (Future<?> chunk : tables) {
+				chunk.get();
+			}
+			for (Runnable concat : finish) {
+				concat.run();
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		}catch(ExecutionException e){
+			throw new IOException(e.getCause().getMessage(), e.getCause());
+		}catch(UncheckedIOException e){
+			throw e.getCause();
+		}finally{
+			pool.shutdownNow();
+		}
+	}//end generate
+
+	/*
+	 * Writes one row of a table into a line buffer.
+	 */
+	private interface RowWriter{
+		void write(long row, Rng rng, StringBuilder line);
+	}
+
+	/*
+	 * Splits a table into chunks that are written to part files in parallel
+	 * and registers the step that joins the parts into the final file.
+	 */
+	private List<Future<?>> submit(ExecutorService pool, File dir, final String name, final long rows,
+			final RowWriter writer, List<Runnable> finish) {
+		final int chunks = (int) ((rows + CHUNK_ROWS - 1) / CHUNK_ROWS);
+		final File[] parts = new File[chunks];
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int c = 0; c < chunks; c++) {
+			final long first = (long) c * CHUNK_ROWS;
+			final long last = Math.min(rows, first + CHUNK_ROWS);
+			final File part = new File(dir, name + ".part" + c);
+			parts[c] = part;
+			futures.add(pool.submit(() -> {
+				try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(part), StandardCharsets.UTF_8), 1 << 20)) {
+					Rng rng = new Rng();
+					StringBuilder line = new StringBuilder(256);
+					for (long row = first; row < last; row++) {
+						line.setLength(0);
+						writer.write(row, rng, line);
+						line.append('\n');
+						out.append(line);
+					}
+				}catch(IOException e){
+					throw new UncheckedIOException(e);
+				}
+				return null;
+			}));
+		}//end for
+
+		final File target = new File(dir, name);
+		finish.add(() -> {
+			try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				for (File part : parts) {
+					try (FileChannel in = FileChannel.open(part.toPath(), StandardOpenOption.READ)) {
+						long position = 0, size = in.size();
+						while (position < size) {
+							position += in.transferTo(position, size - position, out);
+						}
+					}
+					part.delete();
+				}
+			}catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+		});
+		return futures;
+	}//end submit
+
+	//======//
+	// Rows //
+	//======//
+
+	private void customer(long id, Rng rng, StringBuilder line) {
+		rng.reset(_seed, CUSTOMER, id);
+		LocalDate dob = LocalDate.ofEpochDay(LocalDate.of(1940, 1, 1).toEpochDay() + rng.nextInt(60 * 365));
+		int city = rng.nextInt(CITIES.length);
+		line.append(id).append(',')
+			.append(rng.pick(FIRST_NAMES)).append(',')
+			.append(rng.pick(LAST_NAMES)).append(',')
+			.append(rng.nextInt(2) == 0 ? 'F' : 'M').append(',')
+			.append(dob).append(',')
+			.append(1000 + rng.nextInt(9000)).append(' ').append(rng.pick(STREETS)).append(' ').append(CITIES[city]).append(',')
+			.append(2000000000L + rng.nextLong(8000000000L)).append(',')
+			.append(STATES[city]).append(' ').append(10000 + rng.nextInt(90000));
+	}
+
+	private void pilot(long id, Rng rng, StringBuilder line) {
+		rng.reset(_seed, PILOT, id);
+		line.append(id).append(',')
+			.append(rng.pick(FIRST_NAMES)).append(' ').append(rng.pick(LAST_NAMES)).append(',')
+			.append(rng.pick(COUNTRIES));
+	}
+
+	private void technician(long id, Rng rng, StringBuilder line) {
+		rng.reset(_seed, TECHNICIAN, id);
+		line.append(id).append(',')
+			.append(rng.pick(FIRST_NAMES)).append(' ').append(rng.pick(LAST_NAMES));
+	}
+
+	private void plane(long id, Rng rng, StringBuilder line) {
+		String[] model = PLANES[(int) (id % PLANES.length)];
+		line.append(id).append(',')
+			.append(model[0]).append(',')
+			.append(model[1]).append(',')
+			.append(planeAge(rng, id)).append(',')
+			.append(planeSeats(rng, id));
+	}
+
+	private int planeAge(Rng rng, long plane) {
+		rng.reset(_seed, PLANE, plane);
+		return rng.nextInt(40);
+	}
+
+	// _SEATS is 1..499
+	private int planeSeats(Rng rng, long plane) {
+		rng.reset(_seed, PLANE, plane);
+		rng.nextInt(40);
+		return 40 + rng.nextInt(460);
+	}
+
+	private int planeOf(long flight) {
+		return (int) ((Rng.mix(_seed ^ (flight * 0x9E3779B97F4A7C15L)) >>> 1) % _planes);
+	}
+
+	private void flight(long fnum, Rng rng, StringBuilder line) {
+		int seats = planeSeats(rng, planeOf(fnum));
+		rng.reset(_seed, FLIGHT, fnum);
+		long departure = departureMinute(rng);
+		long arrival = departure + 60 + rng.nextInt(15 * 60);
+		int cost = 50 + rng.nextInt(950);
+		int stops = rng.nextInt(4);
+		int sold = rng.nextInt(seats + 1);
+
+		rng.reset(_seed, ROUTE, fnum);
+		int from = airport(rng);
+		int to = airport(rng);
+		if (to == from) to = (to + 1) % _airports;
+
+		line.append(fnum).append(',')
+			.append(cost).append(',')
+			.append(sold).append(',')
+			.append(stops).append(',');
+		appendMinute(line, departure);
+		line.append(',');
+		appendMinute(line, arrival);
+		line.append(',');
+		appendAirport(line, to);
+		line.append(',');
+		appendAirport(line, from);
+	}
+
+	private void flightInfo(long fnum, Rng rng, StringBuilder line) {
+		long pilot = (Rng.mix(_seed ^ fnum ^ 0x5DEECE66DL) >>> 1) % _pilots;
+		line.append(fnum).append(',')
+			.append(fnum).append(',')
+			.append(pilot).append(',')
+			.append(planeOf(fnum));
+	}
+
+	private void schedule(long fnum, Rng rng, StringBuilder line) {
+		// same times as the flight row
+		rng.reset(_seed, FLIGHT, fnum);
+		long departure = departureMinute(rng);
+		long arrival = departure + 60 + rng.nextInt(15 * 60);
+		line.append(fnum).append(',')
+			.append(fnum).append(',');
+		appendMinute(line, departure);
+		line.append(',');
+		appendMinute(line, arrival);
+	}
+
+	private void reservation(long rnum, Rng rng, StringBuilder line) {
+		rng.reset(_seed, RESERVATION, rnum);
+		long fid = skewed(rng, _flights, _hotFlightFraction, _hotFlightShare);
+		int status = rng.nextInt(10);
+		line.append(rnum).append(',')
+			.append(rng.nextInt(_customers)).append(',')
+			.append(fid).append(',')
+			.append(status < 5 ? 'R' : status < 8 ? 'C' : 'W');
+	}
+
+	private void repair(long rid, Rng rng, StringBuilder line) {
+		rng.reset(_seed, REPAIR, rid);
+		line.append(rid).append(',')
+			.append(LocalDate.ofEpochDay(FIRST_REPAIR_DAY + rng.nextInt(9 * 365))).append(',')
+			.append(rng.pick(REPAIR_CODES)).append(',')
+			.append(rng.nextInt(_pilots)).append(',')
+			.append(rng.nextInt(_planes)).append(',')
+			.append(rng.nextInt(_technicians));
+	}
+
+	private long departureMinute(Rng rng) {
+		return (FIRST_FLIGHT_DAY + rng.nextInt(365)) * 1440 + rng.nextInt(1440);
+	}
+
+	private int airport(Rng rng) {
+		return (int) skewed(rng, _airports, _hotAirportFraction, _hotAirportShare);
+	}
+
+	/*
+	 * Picks a value in [0, n); with probability share it comes from the hot
+	 * first fraction of the range.
+	 */
+	private static long skewed(Rng rng, long n, double fraction, double share) {
+		long hot = (long) (n * fraction);
+		if (hot > 0 && rng.nextDouble() < share) {
+			return rng.nextLong(hot);
+		}
+		return rng.nextLong(n);
+	}
+
+	private static void appendMinute(StringBuilder line, long minute) {
+		line.append(LocalDate.ofEpochDay(minute / 1440)).append(' ');
+		long hh = (minute % 1440) / 60, mm = minute % 60;
+		if (hh < 10) line.append('0');
+		line.append(hh).append(':');
+		if (mm < 10) line.append('0');
+		line.append(mm);
+	}
+
+	/*
+	 * Five letter airport codes; multiplying by a number coprime to 26^5
+	 * spreads consecutive airports over the alphabet without collisions.
+	 */
+	private static void appendAirport(StringBuilder line, int airport) {
+		long code = (airport * 4194301L) % 11881376L;	// 26^5
+		char[] letters = new char[5];
+		for (int i = 4; i >= 0; i--) {
+			letters[i] = (char) ('A' + code % 26);
+			code /= 26;
+		}
+		line.append(letters);
+	}
+
+	/*
+	 * SplitMix64 generator reseeded for every row, so a row's values only
+	 * depend on the seed, the table and the row number.
+	 */
+	private static class Rng{
+		private long _state;
+
+		static long mix(long z) {
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+
+		void reset(long seed, long table, long row) {
+			_state = mix(seed ^ mix(table * 0x9E3779B97F4A7C15L + row));
+		}
+
+		long nextLong() {
+			_state += 0x9E3779B97F4A7C15L;
+			return mix(_state);
+		}
+
+		long nextLong(long bound) {
+			return (nextLong() >>> 1) % bound;
+		}
+
+		int nextInt(int bound) {
+			return (int) nextLong(bound);
+		}
+
+		double nextDouble() {
+			return (nextLong() >>> 11) * 0x1.0p-53;
+		}
+
+		String pick(String[] values) {
+			return values[nextInt(values.length)];
+		}
+	}//end Rng
+
+	/**
+	 * Usage: java DataGenerator <output folder> <scale factor> [options]
+	 *   --threads N           chunks written in parallel (default: number of cores)
+	 *   --seed S              seed of the generated values (default 1)
+	 *   --airports N          number of airports (default 200)
+	 *   --hot-flights F:S     share S of the reservations go to the first fraction F of the flights
+	 *   --hot-airports F:S    share S of the flights use the first fraction F of the airports
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: java DataGenerator <output folder> <scale factor> [--threads N] [--seed S]"
+				+ " [--airports N] [--hot-flights fraction:share] [--hot-airports fraction:share]");
+			return;
+		}
+		try{
+			File dir = new File(args[0]);
+			double scale = Double.parseDouble(args[1]);
+			int threads = Runtime.getRuntime().availableProcessors();
+			long seed = 1;
+			int airports = 200;
+			double[] hotFlights = {0, 0}, hotAirports = {0, 0};
+			for (int i = 2; i + 1 < args.length; i += 2) {
+				switch (args[i]) {
+					case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+					case "--seed": seed = Long.parseLong(args[i + 1]); break;
+					case "--airports": airports = Integer.parseInt(args[i + 1]); break;
+					case "--hot-flights": hotFlights = fractionAndShare(args[i + 1]); break;
+					case "--hot-airports": hotAirports = fractionAndShare(args[i + 1]); break;
+					default: throw new IllegalArgumentException("Unknown option " + args[i]);
+				}
+			}//end for
+
+			DataGenerator generator = new DataGenerator(scale, seed, airports,
+				hotFlights[0], hotFlights[1], hotAirports[0], hotAirports[1]);
+			long start = System.nanoTime();
+			generator.generate(dir, threads);
+			System.out.println(String.format("Wrote %d flights and %d reservations to %s in %.1f s.",
+				generator._flights, generator._reservations, dir.getPath(), (System.nanoTime() - start) / 1e9));
+		}catch(Exception e){
+			System.err.println(e.getMessage());
+		}
+	}//end main
+
+	private static double[] fractionAndShare(String value) {
+		String[] parts = value.split(":");
+		return new double[] {Double.parseDouble(parts[0]), Double.parseDouble(parts[1])};
+	}
+
+}//end DataGenerator
@@ -0,0 +1,153 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+
+/**
+ * This class follows FlightLog, the table the flight_log triggers of
+ * sql/create.sql append flights to: every inserted flight, and every flight
+ * whose seats left may have gone up because num_sold went down, a plane was
+ * assigned or its seats were raised. Every row holds the id of the
+ * transaction that wrote it.
+ *
+ * Neither fnums nor the order of the rows tell which flights a reader has
+ * already seen: clients take fnums in blocks, and transactions commit in any
+ * order. A reader therefore notes, before each read, the oldest transaction
+ * still running (the xmin of a snapshot). Every transaction below it has
+ * ended, so the read sees its rows; the next read takes the rows of that
+ * transaction and the later ones again. A row can be read more than once but
+ * is never missed, so readers must apply changes idempotently.
+ *
+ * Readers prune the log as they go. Each one notes a mark with the time it
+ * was taken, and once the retention has passed deletes the rows below that
+ * mark and notes a new one; rows are therefore kept between one and two
+ * retentions. Since marks only grow, a reader that advanced within the last
+ * half retention has a floor above every mark pruned by any client, while
+ * one that has not read for longer reads every flight again.
+ *
+ * Databases created without FlightLog are read in full instead.
+ *
+ */
+
+public class FlightLog{
+	static final String SNAPSHOT_XMIN = "SELECT txid_snapshot_xmin(txid_current_snapshot());";
+	//condition on F.fnum selecting the flights logged from a transaction on
+	static final String CHANGED_SINCE = "F.fnum IN (SELECT L.fnum FROM FlightLog L WHERE L.txid >= ?)";
+	static final String TRIGGER = "flight_log";
+	//logs the flights whose num_sold went down
+	static final String SEATS_TRIGGER = "flight_log_seats";
+	//rows of the transactions ended before a mark taken at least one retention ago
+	static final String PRUNE = "DELETE FROM FlightLog WHERE txid < ?;";
+	//SQLSTATE of undefined_table
+	private static final String UNDEFINED_TABLE = "42P01";
+
+	private final DBproject _esql;
+	private final long _retentionMillis;
+	private long _floor = 0;	// oldest transaction whose rows may not have been read
+	private long _advancedAt = 0;
+	private long _pruneMark = 0;	// rows below it are deleted once the retention has passed
+	private long _pruneMarkAt = 0;
+	private volatile boolean _missing = false;
+
+	/**
+	 * @param esql the database the log is read from
+	 * @param retentionMillis how long rows are kept at least, see the class comment
+	 */
+	public FlightLog(DBproject esql, long retentionMillis) {
+		this._esql = esql;
+		this._retentionMillis = retentionMillis;
+	}
+
+	/**
+	 * Method to note where a read starts. Call it before reading and pass
+	 * the result to advance() once the read succeeded.
+	 *
+	 * @return the oldest transaction still running
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public long mark() throws SQLException {
+		return Long.parseLong(_esql.executeQueryAndReturnResult(SNAPSHOT_XMIN).get(0).get(0));
+	}
+
+	/**
+	 * @return the txid to read the log from, the parameter of CHANGED_SINCE
+	 */
+	public long getFloor() {
+		return _floor;
+	}
+
+	public void advance(long mark) {
+		_floor = mark;
+		_advancedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return false once the log turned out to be missing, or when the last read is so old that rows
+	 *         after the floor may have been pruned; the caller reads every flight then
+	 */
+	public boolean isAvailable() {
+		return !_missing && System.currentTimeMillis() - _advancedAt <= _retentionMillis / 2;
+	}
+
+	/**
+	 * Method to delete the rows below the mark noted one retention ago, if
+	 * any, and note a new one. A failure is reported and tried again after
+	 * the next retention.
+	 *
+	 * @param mark the result of mark() at the start of the last read
+	 */
+	public void prune(long mark) {
+		long now = System.currentTimeMillis();
+		if (_missing || (_pruneMarkAt != 0 && now - _pruneMarkAt < _retentionMillis)) return;
+		try{
+			if (_pruneMarkAt != 0) _esql.executeUpdate(PRUNE, _pruneMark);
+		}catch(SQLException e){
+			System.err.println("Unable to prune FlightLog: " + e.getMessage());
+		}finally{
+			_pruneMark = mark;
+			_pruneMarkAt = now;
+		}
+	}
+
+	/**
+	 * Method to tell whether a failed read of the log failed because the
+	 * table does not exist, and to stop using the log if so.
+	 */
+	public boolean isMissing(SQLException e) {
+		if (!UNDEFINED_TABLE.equals(e.getSQLState())) return false;
+		_missing = true;
+		return true;
+	}
+
+	/**
+	 * Method to turn logging of flights off, for a bulk load, and back on. The log is emptied when it is turned off; readers are cleared
+	 * after the load anyway.
+	 *
+	 * @throws java.sql.SQLException when the trigger cannot be changed
+	 */
+	public static void setTriggerEnabled(DBproject esql, boolean enabled) throws SQLException {
+		for (String ddl : triggerDdl(enabled)) {
+			esql.executeUpdate(ddl);
+		}
+		if (!enabled) esql.executeUpdate("TRUNCATE FlightLog;");
+	}
+
+	static String[] triggerDdl(boolean enabled) {
+		String action = enabled ? "ENABLE" : "DISABLE";
+		return new String[] {
+			"ALTER TABLE Flight " + action + " TRIGGER " + TRIGGER + ", " + action + " TRIGGER " + SEATS_TRIGGER + ";",
+			"ALTER TABLE FlightInfo " + action + " TRIGGER " + TRIGGER + ";",
+			"ALTER TABLE Plane " + action + " TRIGGER " + TRIGGER + ";"};
+	}
+
+}//end FlightLog
@@ -0,0 +1,477 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class serves the menu operations as JSON over HTTP with the server
+ * built into the JDK. Every request runs on its own virtual thread when the
+ * JVM has them (Java 21 and later) and on a cached thread pool otherwise;
+ * all requests share the connection pool of one DBproject.
+ *
+ *   POST /planes                      {"make", "model", "age", "seats"}
+ *   POST /pilots                      {"fullname", "nationality"}
+ *   POST /flights                     {"cost", "numSold", "numStops", "departureDate", "departureTime",
+ *                                      "arrivalDate", "arrivalTime", "arrivalAirport", "departureAirport",
+ *                                      "pilotId", "planeId"}, or an array of them
+ *   POST /technicians                 {"fullname"}
+ *   POST /bookings                    {"customerId", "flightNumber"}
+ *   POST /waitlist-promotions         {}
+ *   GET  /flights?from=LAX&to=JFK&after=YYYY-MM-DD&before=YYYY-MM-DD[&limit=50]
+ *   GET  /flights/{fnum}/seats?departure=YYYY-MM-DD
+ *   GET  /flights/{fnum}/passengers?status=W|R|C
+ *   GET  /itineraries?from=LAX&to=JFK&date=YYYY-MM-DD[&connections=2&layoverDays=1&by=fastest|cheapest]
+ *   GET  /reports/repairs-per-plane
+ *   GET  /reports/repairs-per-year
+ *   GET  /reports/status-matrix[?after=YYYY-MM-DD&before=YYYY-MM-DD&minWaitlisted=0&by=fnum&limit=1000]
+ *   GET  /metrics                     the metrics tables as text
+ *
+ * Invalid input is answered with 400, as are bodies larger than
+ * maxBodyBytes and JSON nested deeper than Json allows. Unknown flights,
+ * customers, pilots and planes and other failed lookups are answered with
+ * 404, other constraint violations with 409 and a lost database connection
+ * with 503. Error bodies are {"error": message}.
+ *
+ */
+
+public class HttpService{
+	private final DBproject _esql;
+	private final HttpServer _server;
+	private final ExecutorService _executor;
+	private final boolean _virtualThreads;
+	private final int _maxBodyBytes;
+
+	/**
+	 * @param esql the database the operations run on
+	 * @param port the TCP port to listen on
+	 * @param backlog pending connections queued by the OS
+	 * @param maxBodyBytes largest request body read, larger ones are answered with 400
+	 * @throws java.io.IOException when the port cannot be bound
+	 */
+	public HttpService(DBproject esql, int port, int backlog, int maxBodyBytes) throws IOException {
+		this._esql = esql;
+		this._maxBodyBytes = maxBodyBytes;
+		this._server = HttpServer.create(new InetSocketAddress(port), backlog);
+		ExecutorService virtual = virtualThreadExecutor();
+		this._virtualThreads = virtual != null;
+		this._executor = virtual != null ? virtual : Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "http-worker");
+			t.setDaemon(true);
+			return t;
+		});
+		_server.setExecutor(_executor);
+		_server.createContext("/", this::handle);
+	}
+
+	/*
+	 * Executors.newVirtualThreadPerTaskExecutor() is looked up at run time so
+	 * the class still compiles and runs on Java 17; null when it is missing.
+	 */
+	private static ExecutorService virtualThreadExecutor() {
+		try{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}catch(ReflectiveOperationException e){
+			return null;
+		}
+	}
+
+	/**
+	 * @return true when requests run on virtual threads
+	 */
+	public boolean usesVirtualThreads() {
+		return _virtualThreads;
+	}
+
+	public void start() {
+		_server.start();
+	}
+
+	/**
+	 * Method to stop accepting requests and wait up to delaySeconds for the
+	 * running ones.
+	 */
+	public void stop(int delaySeconds) {
+		_server.stop(delaySeconds);
+		_executor.shutdown();
+	}
+
+	/*
+	 * An error answered with a status code.
+	 */
+	private static class HttpError extends RuntimeException{
+		private static final long serialVersionUID = 1L;
+
+		final int status;
+
+		HttpError(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		int status = 200;
+		String body;
+		String contentType = "application/json";
+		try{
+			String method = exchange.getRequestMethod();
+			String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+			Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+			Object result;
+			if (method.equals("POST") && path.length == 1) {
+				result = post(path[0], Json.parse(readBody(exchange.getRequestBody(), _maxBodyBytes)));
+				status = 201;
+			} else if (method.equals("GET") && path.length == 1 && path[0].equals("flights")) {
+				result = searchFlights(query);
+			} else if (method.equals("GET") && path.length == 3 && path[0].equals("flights")) {
+				result = getFlight(parseInt(path[1], "flight number"), path[2], query);
+			} else if (method.equals("GET") && path.length == 1 && path[0].equals("itineraries")) {
+				result = planItinerary(query);
+			} else if (method.equals("GET") && path.length == 2 && path[0].equals("reports")) {
+				result = path[1].equals("status-matrix") ? statusMatrix(query) : getReport(path[1]);
+			} else if (method.equals("GET") && path.length == 1 && path[0].equals("metrics")) {
+				result = null;
+				contentType = "text/plain";
+			} else {
+				throw new HttpError(404, "No such resource: " + method + " " + exchange.getRequestURI().getPath());
+			}
+			body = result == null ? _esql.dumpMetrics() : Json.write(result);
+		}catch(HttpError e){
+			status = e.status;
+			body = error(e.getMessage());
+		}catch(IllegalArgumentException | ClassCastException e){
+			status = 400;
+			body = error(e.getMessage() == null ? "Invalid request" : e.getMessage());
+		}catch(SQLException e){
+			status = status(e.getSQLState());
+			body = error(e.getMessage());
+		}catch(RuntimeException e){
+			status = 500;
+			body = error(String.valueOf(e.getMessage()));
+		}
+
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}//end handle
+
+	private Object post(String resource, Object json) throws SQLException {
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		switch (resource) {
+			case "planes": {
+				Map<?, ?> p = object(json);
+				result.put("id", _esql.addPlane(string(p, "make"), string(p, "model"), integer(p, "age"), integer(p, "seats")));
+				return result;
+			}
+			case "pilots": {
+				Map<?, ?> p = object(json);
+				result.put("id", _esql.addPilot(string(p, "fullname"), string(p, "nationality")));
+				return result;
+			}
+			case "technicians": {
+				Map<?, ?> p = object(json);
+				result.put("id", _esql.addTechnician(string(p, "fullname")));
+				return result;
+			}
+			case "flights": {
+				List<DBproject.FlightSpec> flights = new ArrayList<DBproject.FlightSpec>();
+				for (Object item : json instanceof List ? (List<?>) json : Collections.singletonList(json)) {
+					flights.add(flight(object(item)));
+				}
+				result.put("fnums", _esql.addFlights(flights));
+				return result;
+			}
+			case "bookings": {
+				Map<?, ?> p = object(json);
+				BookingEngine.Booking booking = _esql.bookFlight(integer(p, "customerId"), integer(p, "flightNumber"));
+				result.put("rnum", booking.rnum);
+				result.put("status", booking.status);
+				result.put("seatsRemaining", booking.seatsRemaining);
+				return result;
+			}
+			case "waitlist-promotions": {
+				object(json);
+				WaitlistPromoter.Promotion promotion = _esql.promoteWaitlists();
+				result.put("promoted", promotion.promoted);
+				result.put("flights", promotion.flights);
+				result.put("batches", promotion.batches);
+				return result;
+			}
+			default:
+				throw new HttpError(404, "No such resource: POST /" + resource);
+		}
+	}//end post
+
+	private Object getFlight(int fnum, String resource, Map<String, String> query) throws SQLException {
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("fnum", fnum);
+		switch (resource) {
+			case "seats":
+				String departure = required(query, "departure");
+				if (!DBproject.validDate(departure.length() > 10 ? departure.substring(0, 10) : departure)) {
+					throw new IllegalArgumentException("departure must be YYYY-MM-DD");
+				}
+				result.put("availableSeats", _esql.availableSeats(fnum, departure));
+				return result;
+			case "passengers":
+				String status = required(query, "status").toUpperCase();
+				result.put("status", status);
+				result.put("count", _esql.passengersWithStatus(fnum, status));
+				return result;
+			default:
+				throw new HttpError(404, "No such resource: GET /flights/" + fnum + "/" + resource);
+		}
+	}
+
+	private Object searchFlights(Map<String, String> query) throws SQLException {
+		String after = requiredDate(query, "after"), before = requiredDate(query, "before");
+		int limit = query.containsKey("limit") ? parseInt(query.get("limit"), "limit") : 50;
+		if (limit < 1 || limit > 1000) throw new IllegalArgumentException("limit must be between 1 and 1000");
+
+		List<Object> result = new ArrayList<Object>();
+		for (RouteIndex.FlightMatch flight : _esql.searchFlights(required(query, "from"), required(query, "to"), after, before, limit)) {
+			Map<String, Object> item = new LinkedHashMap<String, Object>();
+			item.put("fnum", flight.fnum);
+			item.put("departureDate", flight.departureDate);
+			item.put("arrivalDate", flight.arrivalDate);
+			item.put("cost", flight.cost);
+			item.put("seatsAvailable", flight.seatsAvailable);
+			result.add(item);
+		}
+		return result;
+	}
+
+	private Object planItinerary(Map<String, String> query) throws SQLException {
+		String date = requiredDate(query, "date");
+		int connections = query.containsKey("connections") ? parseInt(query.get("connections"), "connections") : 2;
+		int layover = query.containsKey("layoverDays") ? parseInt(query.get("layoverDays"), "layoverDays") : 1;
+		if (connections < 0 || connections > 5) throw new IllegalArgumentException("connections must be between 0 and 5");
+		if (layover < 0) throw new IllegalArgumentException("layoverDays cannot be negative");
+		String objective = query.getOrDefault("by", ItineraryPlanner.FASTEST);
+		if (!objective.equals(ItineraryPlanner.FASTEST) && !objective.equals(ItineraryPlanner.CHEAPEST)) {
+			throw new IllegalArgumentException("by must be fastest or cheapest");
+		}
+
+		ItineraryPlanner.Itinerary itinerary = _esql.planItinerary(required(query, "from"), required(query, "to"),
+			date, connections, layover, objective);
+		if (itinerary == null) throw new HttpError(404, "No itinerary found");
+		List<Object> legs = new ArrayList<Object>();
+		for (ItineraryPlanner.Leg leg : itinerary.legs) {
+			Map<String, Object> item = new LinkedHashMap<String, Object>();
+			item.put("fnum", leg.fnum);
+			item.put("from", leg.from);
+			item.put("to", leg.to);
+			item.put("departure", leg.departure.toString());
+			item.put("arrival", leg.arrival.toString());
+			item.put("cost", leg.cost);
+			legs.add(item);
+		}
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("cost", itinerary.cost);
+		result.put("arrival", itinerary.getArrival().toString());
+		result.put("legs", legs);
+		return result;
+	}
+
+	private Object statusMatrix(Map<String, String> query) throws SQLException {
+		if (query.containsKey("after") != query.containsKey("before")) {
+			throw new IllegalArgumentException("after and before go together");
+		}
+		String after = query.containsKey("after") ? requiredDate(query, "after") : null;
+		String before = query.containsKey("before") ? requiredDate(query, "before") : null;
+		int minWaitlisted = query.containsKey("minWaitlisted") ? parseInt(query.get("minWaitlisted"), "minWaitlisted") : 0;
+		int limit = query.containsKey("limit") ? parseInt(query.get("limit"), "limit") : 1000;
+		if (limit < 1 || limit > 100000) throw new IllegalArgumentException("limit must be between 1 and 100000");
+		String orderBy = query.getOrDefault("by", StatusMatrix.BY_FNUM);
+
+		StatusMatrix.Matrix matrix = _esql.statusOfAllFlights(after, before);
+		List<Object> flights = new ArrayList<Object>();
+		for (int row : matrix.select(minWaitlisted, orderBy, limit)) {
+			Map<String, Object> item = new LinkedHashMap<String, Object>();
+			item.put("fnum", matrix.fnum[row]);
+			item.put("waitlisted", matrix.waitlisted[row]);
+			item.put("reserved", matrix.reserved[row]);
+			item.put("confirmed", matrix.confirmed[row]);
+			flights.add(item);
+		}
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("flightsWithReservations", matrix.size());
+		result.put("waitlisted", matrix.totalWaitlisted);
+		result.put("reserved", matrix.totalReserved);
+		result.put("confirmed", matrix.totalConfirmed);
+		result.put("flights", flights);
+		return result;
+	}
+
+	private Object getReport(String report) throws SQLException {
+		List<List<String>> rows;
+		String key;
+		switch (report) {
+			case "repairs-per-plane":
+				rows = _esql.repairsPerPlane();
+				key = "planeId";
+				break;
+			case "repairs-per-year":
+				rows = _esql.repairsPerYear();
+				key = "year";
+				break;
+			default:
+				throw new HttpError(404, "No such report: " + report);
+		}
+		List<Object> result = new ArrayList<Object>(rows.size());
+		for (List<String> row : rows) {
+			Map<String, Object> item = new LinkedHashMap<String, Object>();
+			item.put(key, Long.parseLong(row.get(0).trim()));
+			item.put("repairs", Long.parseLong(row.get(1).trim()));
+			result.add(item);
+		}
+		return result;
+	}
+
+	private static DBproject.FlightSpec flight(Map<?, ?> p) {
+		return new DBproject.FlightSpec(integer(p, "cost"), integer(p, "numSold"), integer(p, "numStops"),
+			date(p, "departureDate"), time(p, "departureTime"), date(p, "arrivalDate"), time(p, "arrivalTime"),
+			airport(p, "arrivalAirport"), airport(p, "departureAirport"), integer(p, "pilotId"), integer(p, "planeId"));
+	}
+
+	//============//
+	// Validation //
+	//============//
+
+	private static Map<?, ?> object(Object json) {
+		if (!(json instanceof Map)) throw new IllegalArgumentException("Expected a JSON object");
+		return (Map<?, ?>) json;
+	}
+
+	private static String string(Map<?, ?> p, String name) {
+		Object value = p.get(name);
+		if (!(value instanceof String) || ((String) value).isEmpty()) {
+			throw new IllegalArgumentException(name + " must be a non-empty string");
+		}
+		return (String) value;
+	}
+
+	private static int integer(Map<?, ?> p, String name) {
+		Object value = p.get(name);
+		if (!(value instanceof Double) || (Double) value != Math.rint((Double) value)
+				|| Math.abs((Double) value) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(name + " must be an integer");
+		}
+		return ((Double) value).intValue();
+	}
+
+	private static String date(Map<?, ?> p, String name) {
+		String value = string(p, name);
+		if (!DBproject.validDate(value)) throw new IllegalArgumentException(name + " must be YYYY-MM-DD");
+		return value;
+	}
+
+	private static String time(Map<?, ?> p, String name) {
+		String value = string(p, name);
+		if (!DBproject.validTime(value)) throw new IllegalArgumentException(name + " must be HH:MM");
+		return value;
+	}
+
+	private static String airport(Map<?, ?> p, String name) {
+		String value = string(p, name);
+		if (value.length() > 5) throw new IllegalArgumentException(name + " must be at most 5 characters");
+		return value;
+	}
+
+	private static String required(Map<String, String> query, String name) {
+		String value = query.get(name);
+		if (value == null || value.isEmpty()) throw new IllegalArgumentException("Missing query parameter " + name);
+		return value;
+	}
+
+	private static String requiredDate(Map<String, String> query, String name) {
+		String value = required(query, name);
+		if (!DBproject.validDate(value)) throw new IllegalArgumentException(name + " must be YYYY-MM-DD");
+		return value;
+	}
+
+	private static int parseInt(String value, String name) {
+		try{
+			return Integer.parseInt(value);
+		}catch(NumberFormatException e){
+			throw new IllegalArgumentException("Invalid " + name + ": " + value);
+		}
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) {
+		Map<String, String> query = new HashMap<String, String>();
+		if (rawQuery == null) return query;
+		for (String pair : rawQuery.split("&")) {
+			int eq = pair.indexOf('=');
+			String name = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return query;
+	}
+
+	/*
+	 * Maps the SQLSTATE of a failed operation to a status code: no_data
+	 * (failed lookups) and foreign_key_violation (an unknown customer,
+	 * flight, pilot or plane) to 404, other integrity violations to 409.
+	 */
+	private static int status(String state) {
+		if (state == null) return 500;
+		if (state.startsWith("02") || state.equals("23503")) return 404;
+		if (state.startsWith("23")) return 409;
+		if (state.startsWith("08")) return 503;
+		return 500;
+	}
+
+	private static String readBody(InputStream in, int maxBytes) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		int n;
+		while ((n = in.read(chunk)) > 0) {
+			if (buffer.size() + n > maxBytes) {
+				throw new HttpError(400, "Request body larger than " + maxBytes + " bytes");
+			}
+			buffer.write(chunk, 0, n);
+		}
+		return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static String error(String message) {
+		Map<String, Object> error = new LinkedHashMap<String, Object>();
+		error.put("error", message);
+		return Json.write(error);
+	}
+
+}//end HttpService
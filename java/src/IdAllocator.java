@@ -0,0 +1,190 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class hands out primary keys from PostgreSQL sequences. Each sequence
+ * is created with INCREMENT BY the block size, so one nextval() call reserves
+ * a whole block of ids which are then handed out from memory. Inserts only go
+ * to the database for a new block, and ids stay unique across processes
+ * because every block comes from the shared sequence.
+ *
+ */
+
+public class IdAllocator{
+	public static final String PLANE = "plane_id_seq";
+	public static final String PILOT = "pilot_id_seq";
+	public static final String TECHNICIAN = "technician_id_seq";
+	public static final String FLIGHT = "flight_fnum_seq";
+	public static final String FLIGHTINFO = "flightinfo_fiid_seq";
+	public static final String SCHEDULE = "schedule_id_seq";
+	public static final String RESERVATION = "reservation_rnum_seq";
+
+	//block size used when a sequence has to be created, see sql/create.sql
+	public static final int DEFAULT_BLOCK_SIZE = 50;
+
+	//sequence name -> {table, key column}
+	private static final String[][] KEYS = {
+		{PLANE, "Plane", "id"},
+		{PILOT, "Pilot", "id"},
+		{TECHNICIAN, "Technician", "id"},
+		{FLIGHT, "Flight", "fnum"},
+		{FLIGHTINFO, "FlightInfo", "fiid"},
+		{SCHEDULE, "Schedule", "id"},
+		{RESERVATION, "Reservation", "rnum"},
+	};
+
+	private final DBproject _esql;
+	private final Map<String, Block> _blocks = new ConcurrentHashMap<String, Block>();
+
+	public IdAllocator(DBproject esql) {
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to allocate the next primary key from a sequence.
+	 *
+	 * @param sequence name of the DB sequence, one of the constants above
+	 * @return a key that no other caller will receive
+	 * @throws java.sql.SQLException when a new block cannot be reserved
+	 */
+	public int nextId(String sequence) throws SQLException {
+		Block block = _blocks.get(sequence);
+		if (block == null) {
+			block = _blocks.computeIfAbsent(sequence, s -> new Block(s));
+		}
+		return block.next();
+	}
+
+	/**
+	 * Method to allocate many primary keys at once. What is left of the
+	 * cached block is used first, and all further blocks are reserved with
+	 * a single query.
+	 *
+	 * @param sequence name of the DB sequence, one of the constants above
+	 * @param count number of keys
+	 * @return count keys that no other caller will receive
+	 * @throws java.sql.SQLException when the blocks cannot be reserved
+	 */
+	public int[] nextIds(String sequence, int count) throws SQLException {
+		Block block = _blocks.get(sequence);
+		if (block == null) {
+			block = _blocks.computeIfAbsent(sequence, s -> new Block(s));
+		}
+		return block.next(count);
+	}
+
+	/**
+	 * Method to move every sequence past the current max key of its table,
+	 * for example after rows were loaded with COPY. Blocks cached in this
+	 * JVM are dropped since they may overlap the loaded keys.
+	 *
+	 * @throws java.sql.SQLException when a sequence cannot be updated
+	 */
+	public void syncAll() throws SQLException {
+		for (String[] key : KEYS) {
+			sync(key);
+		}
+		_blocks.clear();
+	}
+
+	private void sync(String[] key) throws SQLException {
+		_esql.executeQueryAndReturnResult(String.format(
+			"SELECT setval(CAST(? AS regclass), COALESCE((SELECT max(%s) FROM %s), 0) + 1, false);",
+			key[2], key[1]), key[0]);
+	}
+
+	/*
+	 * Creates a sequence that is missing from a database initialized before
+	 * sequences were part of the schema.
+	 */
+	private void create(String sequence) throws SQLException {
+		for (String[] key : KEYS) {
+			if (key[0].equals(sequence)) {
+				_esql.executeUpdate(String.format("CREATE SEQUENCE IF NOT EXISTS %s INCREMENT BY %d;",
+					sequence, DEFAULT_BLOCK_SIZE));
+				sync(key);
+				return;
+			}
+		}//end for
+		throw new SQLException("Unknown sequence " + sequence);
+	}
+
+	/*
+	 * A block of ids reserved by one nextval() call.
+	 */
+	private class Block{
+		private final String _sequence;
+		private int _increment = 0;
+		private long _next = 0;
+		private long _end = 0;	// exclusive
+
+		Block(String sequence) {
+			this._sequence = sequence;
+		}
+
+		synchronized int next() throws SQLException {
+			if (_next >= _end) {
+				reserve();
+			}
+			return (int) _next++;
+		}
+
+		synchronized int[] next(int count) throws SQLException {
+			int[] ids = new int[count];
+			int filled = 0;
+			while (filled < count && _next < _end) {
+				ids[filled++] = (int) _next++;
+			}
+			if (filled == count) return ids;
+
+			if (_increment == 0) {
+				_increment = readIncrement();
+			}
+			int blocks = (count - filled + _increment - 1) / _increment;
+			List<List<String>> starts = _esql.executeQueryAndReturnResult(
+				"SELECT nextval(CAST(? AS regclass)) FROM generate_series(1, ?);", _sequence, blocks);
+			for (List<String> start : starts) {
+				_next = Long.parseLong(start.get(0));
+				_end = _next + _increment;
+				while (filled < count && _next < _end) {
+					ids[filled++] = (int) _next++;
+				}
+			}//end for
+			return ids;
+		}
+
+		private void reserve() throws SQLException {
+			if (_increment == 0) {
+				_increment = readIncrement();
+			}
+			_next = _esql.getNextSeqVal(_sequence);
+			_end = _next + _increment;
+		}
+
+		private int readIncrement() throws SQLException {
+			List<List<String>> result = _esql.executeQueryAndReturnResult(
+				"SELECT increment_by FROM pg_sequences WHERE schemaname = current_schema() AND sequencename = ?;", _sequence);
+			if (result.isEmpty()) {
+				create(_sequence);
+				return DEFAULT_BLOCK_SIZE;
+			}
+			return Integer.parseInt(result.get(0).get(0));
+		}
+	}//end Block
+
+}//end IdAllocator
@@ -0,0 +1,622 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class plans itineraries of one or more flights between two airports.
+ * The flight network is held as a time-dependent graph: airports are
+ * numbered nodes and every flight is an edge from its departure airport,
+ * valid at its departure time. Edges are stored in parallel int arrays,
+ * grouped by departure airport and sorted by departure time (a CSR layout),
+ * so the flights leaving an airport after a given time are found with a
+ * binary search.
+ *
+ * A query runs in rounds, one per leg: round r extends every itinerary of
+ * r - 1 legs by the flights that leave its last airport after the minimum
+ * layover. Each airport keeps only the itineraries that are not both later
+ * and dearer than another one, so the fastest and the cheapest answer come
+ * from the same search. Every flight must leave within maxTripDays of the
+ * first departure day, which bounds the search on a busy network.
+ *
+ * Flights written by this process are added as they are written and kept
+ * apart until there are enough of them to be worth merging into the sorted
+ * arrays; flights of other clients are read by refresh() from FlightLog.
+ * Every edge holds the seats left when it was read, as a hint only: the
+ * flights of an answer are checked against the database, and flights found
+ * full are excluded before the search runs again. A flight that was full is
+ * skipped by later searches until the log reports that it may have seats
+ * again, when refresh() reads them anew.
+ *
+ * Schedule stores dates only, so departure and arrival times are read at
+ * day resolution and the minimum layover is given in days: 0 allows a
+ * connection on the day of arrival, 1 requires the next day.
+ *
+ */
+
+public class ItineraryPlanner{
+	public static final String FASTEST = "fastest";
+	public static final String CHEAPEST = "cheapest";
+
+	//departure and arrival in minutes since 1970-01-01 and seats left of every flight
+	static final String FLIGHTS =
+		"SELECT DISTINCT ON (F.fnum) F.fnum, F.departure_airport, F.arrival_airport, " +
+		"CAST(EXTRACT(EPOCH FROM CAST(COALESCE(S.departure_time, F.actual_departure_date) AS TIMESTAMP)) / 60 AS BIGINT), " +
+		"CAST(EXTRACT(EPOCH FROM CAST(COALESCE(S.arrival_time, F.actual_arrival_date) AS TIMESTAMP)) / 60 AS BIGINT), " +
+		"F.cost, COALESCE(P.seats - F.num_sold, 0) " +
+		"FROM Flight F LEFT JOIN Schedule S ON S.flightNum = F.fnum " +
+		"LEFT JOIN FlightInfo FI ON FI.flight_id = F.fnum LEFT JOIN Plane P ON P.id = FI.plane_id ";
+	static final String ALL_FLIGHTS = FLIGHTS + "ORDER BY F.fnum;";
+	static final String CHANGED_FLIGHTS = FLIGHTS + "WHERE " + FlightLog.CHANGED_SINCE + " ORDER BY F.fnum;";
+	//searches run before giving up on finding an answer with seats on every flight
+	private static final int MAX_SEAT_CHECKS = 8;
+	private static final int MINUTES_PER_DAY = 24 * 60;
+
+	private final DBproject _esql;
+	private final long _refreshMillis;
+	private final int _maxTripMinutes;
+	private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+	private final ReentrantLock _reading = new ReentrantLock();	// held by the one thread reading from the database
+	private final FlightLog _log;
+
+	// airports
+	private final Map<String, Integer> _airportIds = new HashMap<String, Integer>();
+	private String[] _airports = new String[64];
+
+	// edges, index e describes one flight
+	private int _edges = 0;
+	private int[] _fnum = new int[1024];
+	private int[] _from = new int[1024];
+	private int[] _to = new int[1024];
+	private int[] _departure = new int[1024];
+	private int[] _arrival = new int[1024];
+	private int[] _cost = new int[1024];
+	private int[] _seatsLeft = new int[1024];
+
+	// sorted edges: those of airport a are _sorted[_start[a] .. _start[a + 1]), by departure
+	private int[] _sorted = new int[0];
+	private int[] _start = new int[1];
+	// edges added since the last sort, as a list per airport
+	private int[] _pendingHead = new int[64];
+	private int[] _pendingNext = new int[1024];
+	private int _pending = 0;
+
+	private final Map<Integer, Integer> _edgeOf = new HashMap<Integer, Integer>();	// fnum -> edge
+	private volatile boolean _loaded = false;
+	private volatile long _refreshedAt = 0;
+
+	/**
+	 * @param esql the database flights are read from
+	 * @param refreshMillis how often a query reads flights added by other clients, negative for never
+	 * @param maxTripDays days after the departure day by which the last flight must have left
+	 */
+	public ItineraryPlanner(DBproject esql, long refreshMillis, int maxTripDays) {
+		this._esql = esql;
+		this._refreshMillis = refreshMillis;
+		this._maxTripMinutes = maxTripDays * MINUTES_PER_DAY;
+		this._log = new FlightLog(esql, DBproject.FLIGHT_LOG_RETENTION_MILLIS);
+		Arrays.fill(_pendingHead, -1);
+	}
+
+	/**
+	 * One flight of an itinerary.
+	 */
+	public static class Leg{
+		public final int fnum;
+		public final String from, to;
+		public final LocalDateTime departure, arrival;
+		public final int cost;
+
+		Leg(int fnum, String from, String to, int departure, int arrival, int cost) {
+			this.fnum = fnum;
+			this.from = from;
+			this.to = to;
+			this.departure = toDateTime(departure);
+			this.arrival = toDateTime(arrival);
+			this.cost = cost;
+		}
+
+		public String toString() {
+			return fnum + "\t" + from + " " + departure + "\t" + to + " " + arrival + "\t" + cost;
+		}
+	}
+
+	/**
+	 * The flights of an itinerary, in order.
+	 */
+	public static class Itinerary{
+		public final List<Leg> legs;
+		public final int cost;
+
+		Itinerary(List<Leg> legs) {
+			this.legs = legs;
+			int total = 0;
+			for (Leg leg : legs) {
+				total += leg.cost;
+			}
+			this.cost = total;
+		}
+
+		public LocalDateTime getDeparture() {
+			return legs.get(0).departure;
+		}
+
+		public LocalDateTime getArrival() {
+			return legs.get(legs.size() - 1).arrival;
+		}
+	}
+
+	/*
+	 * An itinerary reached during a search, linked to the one it extends.
+	 */
+	private static class Label{
+		final int arrival, cost, edge;
+		final Label previous;
+
+		Label(int arrival, int cost, int edge, Label previous) {
+			this.arrival = arrival;
+			this.cost = cost;
+			this.edge = edge;
+			this.previous = previous;
+		}
+	}
+
+	private static LocalDateTime toDateTime(int minutes) {
+		return LocalDate.ofEpochDay(Math.floorDiv(minutes, MINUTES_PER_DAY)).atStartOfDay()
+			.plusMinutes(Math.floorMod(minutes, MINUTES_PER_DAY));
+	}
+
+	/**
+	 * Method to find the fastest or cheapest itinerary between two airports.
+	 *
+	 * @param from code of the departure airport
+	 * @param to code of the arrival airport
+	 * @param date day of the first departure, YYYY-MM-DD
+	 * @param maxConnections most changes of plane, 0 for direct flights only
+	 * @param minLayoverDays least days between an arrival and the next departure, see the class comment
+	 * @param objective FASTEST for the earliest arrival, CHEAPEST for the lowest total cost
+	 * @return the itinerary, or null when there is none with seats left on every flight
+	 * @throws java.sql.SQLException when the flights cannot be read
+	 */
+	public Itinerary plan(String from, String to, String date, int maxConnections, int minLayoverDays,
+			String objective) throws SQLException {
+		if (!objective.equals(FASTEST) && !objective.equals(CHEAPEST)) {
+			throw new IllegalArgumentException("Invalid objective: " + objective);
+		}
+		if (maxConnections < 0 || minLayoverDays < 0) {
+			throw new IllegalArgumentException("Connections and layover cannot be negative");
+		}
+		int day = Math.toIntExact(LocalDate.parse(date).toEpochDay());
+		ensureFresh();
+
+		BitSet full = new BitSet();
+		for (int check = 0; check < MAX_SEAT_CHECKS; check++) {
+			List<Leg> legs = route(from, to, day, maxConnections, minLayoverDays, objective.equals(CHEAPEST), full);
+			if (legs == null) return null;
+			if (checkSeats(legs, full)) return new Itinerary(legs);
+		}//end for
+		return null;
+	}//end plan
+
+	/*
+	 * Searches the graph as read so far, skipping the flights in full, and
+	 * returns the legs of the best itinerary, or null when there is none.
+	 * The day is in days since 1970-01-01.
+	 */
+	List<Leg> route(String from, String to, int day, int maxConnections, int minLayoverDays, boolean cheapest,
+			BitSet full) {
+		_lock.readLock().lock();
+		try{
+			Integer origin = _airportIds.get(from.trim());
+			Integer destination = _airportIds.get(to.trim());
+			if (origin == null || destination == null || origin.equals(destination)) return null;
+			Label best = search(origin, destination, day * MINUTES_PER_DAY, (day + 1) * MINUTES_PER_DAY,
+				maxConnections + 1, minLayoverDays * MINUTES_PER_DAY, cheapest, full);
+			if (best == null) return null;
+
+			List<Leg> legs = new ArrayList<Leg>();
+			for (Label label = best; label != null; label = label.previous) {
+				int e = label.edge;
+				legs.add(0, new Leg(_fnum[e], _airports[_from[e]], _airports[_to[e]], _departure[e], _arrival[e], _cost[e]));
+			}
+			return legs;
+		}finally{
+			_lock.readLock().unlock();
+		}
+	}//end route
+
+	/*
+	 * Round-based search over the edges. Returns the label at the
+	 * destination with the earliest arrival, or the lowest cost.
+	 */
+	private Label search(int origin, int destination, int earliest, int latest, int maxLegs, int layover,
+			boolean cheapest, BitSet full) {
+		Map<Integer, List<Label>> fronts = new HashMap<Integer, List<Label>>();
+		Label best = null;
+		int horizon = earliest + _maxTripMinutes;
+
+		// first leg: flights leaving the origin on the given day
+		List<Label> round = new ArrayList<Label>();
+		forEachDeparture(origin, earliest, latest, e -> {
+			if (!full.get(_fnum[e])) round.add(new Label(_arrival[e], _cost[e], e, null));
+		});
+
+		for (int legs = 1; legs <= maxLegs && !round.isEmpty(); legs++) {
+			List<Label> improved = new ArrayList<Label>();
+			for (Label label : round) {
+				int airport = _to[label.edge];
+				if (airport == origin) continue;
+				// arrival and cost only grow along an itinerary
+				if (best != null && !(cheapest ? better(label.cost, label.arrival, best.cost, best.arrival)
+						: better(label.arrival, label.cost, best.arrival, best.cost))) continue;
+				if (!insert(fronts.computeIfAbsent(airport, a -> new ArrayList<Label>()), label)) continue;
+				if (airport == destination) {
+					best = label;
+				} else {
+					improved.add(label);
+				}
+			}//end for
+
+			if (legs == maxLegs) break;
+			round.clear();
+			for (final Label label : improved) {
+				forEachDeparture(_to[label.edge], label.arrival + layover, horizon, e -> {
+					if (!full.get(_fnum[e])) round.add(new Label(_arrival[e], label.cost + _cost[e], e, label));
+				});
+			}
+		}//end for
+		return best;
+	}//end search
+
+	private static boolean better(int first, int second, int bestFirst, int bestSecond) {
+		return first < bestFirst || (first == bestFirst && second < bestSecond);
+	}
+
+	/*
+	 * Adds a label to the Pareto front of an airport unless another label
+	 * arrives no later for no more; labels it beats are removed.
+	 */
+	private static boolean insert(List<Label> front, Label label) {
+		for (Label other : front) {
+			if (other.arrival <= label.arrival && other.cost <= label.cost) return false;
+		}
+		front.removeIf(other -> label.arrival <= other.arrival && label.cost <= other.cost);
+		front.add(label);
+		return true;
+	}
+
+	private interface EdgeVisitor{
+		void visit(int edge);
+	}
+
+	/*
+	 * Visits the flights with seats left, as far as known, that leave an airport in
+	 * [after, before), sorted ones first, then the pending ones.
+	 */
+	private void forEachDeparture(int airport, int after, int before, EdgeVisitor visitor) {
+		if (airport + 1 < _start.length) {
+			int lo = _start[airport], hi = _start[airport + 1];
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (_departure[_sorted[mid]] < after) lo = mid + 1; else hi = mid;
+			}
+			for (int i = lo; i < _start[airport + 1]; i++) {
+				int e = _sorted[i];
+				if (_departure[e] >= before) break;
+				if (_seatsLeft[e] > 0 && _arrival[e] >= _departure[e]) visitor.visit(e);
+			}
+		}
+		for (int e = _pendingHead[airport]; e >= 0; e = _pendingNext[e]) {
+			if (_departure[e] >= after && _departure[e] < before && _seatsLeft[e] > 0 && _arrival[e] >= _departure[e]) {
+				visitor.visit(e);
+			}
+		}
+	}
+
+	/*
+	 * Reads the seats left of every leg with one query. Returns true when
+	 * all have one; the full ones are added to the excluded set and their
+	 * edges updated.
+	 */
+	private boolean checkSeats(List<Leg> legs, BitSet full) throws SQLException {
+		StringBuilder array = new StringBuilder("{");
+		for (int i = 0; i < legs.size(); i++) {
+			if (i > 0) array.append(',');
+			array.append(legs.get(i).fnum);
+		}
+		Map<Integer, Integer> seats = new HashMap<Integer, Integer>();
+		for (List<String> row : _esql.executeQueryAndReturnResult(RouteIndex.FLIGHT_DETAILS, array.append('}').toString())) {
+			seats.put(Integer.parseInt(row.get(0)), row.get(4) == null ? 0 : Integer.parseInt(row.get(4)));
+		}
+
+		boolean available = true;
+		_lock.writeLock().lock();
+		try{
+			for (Leg leg : legs) {
+				Integer left = seats.get(leg.fnum);
+				int value = left == null ? 0 : Math.max(0, left);
+				int edge = edgeOf(leg.fnum);
+				if (edge >= 0) _seatsLeft[edge] = value;
+				if (value == 0) {
+					full.set(leg.fnum);
+					available = false;
+				}
+			}
+		}finally{
+			_lock.writeLock().unlock();
+		}
+		return available;
+	}//end checkSeats
+
+	/**
+	 * Method to put a flight written by this process into the graph. Its
+	 * seats are taken as available until an answer using it is checked.
+	 * Nothing is done until the graph has been read.
+	 *
+	 * @param departureDate YYYY-MM-DD, times are not kept, see the class comment
+	 */
+	public void add(int fnum, String departureAirport, String arrivalAirport, String departureDate, String arrivalDate,
+			int cost) {
+		if (!_loaded) return;
+		int departure = Math.toIntExact(LocalDate.parse(departureDate.trim().substring(0, 10)).toEpochDay() * MINUTES_PER_DAY);
+		int arrival = Math.toIntExact(LocalDate.parse(arrivalDate.trim().substring(0, 10)).toEpochDay() * MINUTES_PER_DAY);
+		_lock.writeLock().lock();
+		try{
+			addEdge(fnum, departureAirport, arrivalAirport, departure, arrival, cost, Integer.MAX_VALUE);
+			if (_pending > Math.max(1024, _sorted.length / 8)) sort();
+		}finally{
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Appends an edge to the pending lists, or updates the seats left of the
+	 * flight when it is known. Called with the write lock held.
+	 */
+	private void addEdge(int fnum, String departureAirport, String arrivalAirport, int departure, int arrival,
+			int cost, int seatsLeft) {
+		int known = edgeOf(fnum);
+		if (known >= 0) {
+			_seatsLeft[known] = seatsLeft;
+			return;
+		}
+		int e = _edges++;
+		if (e == _fnum.length) {
+			int size = e * 2;
+			_fnum = Arrays.copyOf(_fnum, size);
+			_from = Arrays.copyOf(_from, size);
+			_to = Arrays.copyOf(_to, size);
+			_departure = Arrays.copyOf(_departure, size);
+			_arrival = Arrays.copyOf(_arrival, size);
+			_cost = Arrays.copyOf(_cost, size);
+			_seatsLeft = Arrays.copyOf(_seatsLeft, size);
+			_pendingNext = Arrays.copyOf(_pendingNext, size);
+		}
+		_fnum[e] = fnum;
+		_from[e] = airport(departureAirport);
+		_to[e] = airport(arrivalAirport);
+		_departure[e] = departure;
+		_arrival[e] = arrival;
+		_cost[e] = cost;
+		_seatsLeft[e] = seatsLeft;
+		_edgeOf.put(fnum, e);
+
+		_pendingNext[e] = _pendingHead[_from[e]];
+		_pendingHead[_from[e]] = e;
+		_pending++;
+	}//end addEdge
+
+	private int edgeOf(int fnum) {
+		Integer edge = _edgeOf.get(fnum);
+		return edge == null ? -1 : edge;
+	}
+
+	private int airport(String code) {
+		String trimmed = code.trim();
+		Integer id = _airportIds.get(trimmed);
+		if (id != null) return id;
+		id = _airportIds.size();
+		if (id == _airports.length) {
+			_airports = Arrays.copyOf(_airports, id * 2);
+			int old = _pendingHead.length;
+			_pendingHead = Arrays.copyOf(_pendingHead, id * 2);
+			Arrays.fill(_pendingHead, old, _pendingHead.length, -1);
+		}
+		_airports[id] = trimmed;
+		_airportIds.put(trimmed, id);
+		return id;
+	}
+
+	/*
+	 * Merges every edge into the sorted arrays: a counting sort by departure
+	 * airport, then a sort by departure time within each airport. Called with
+	 * the write lock held.
+	 */
+	private void sort() {
+		int airports = _airportIds.size();
+		int[] start = new int[airports + 1];
+		for (int e = 0; e < _edges; e++) {
+			start[_from[e] + 1]++;
+		}
+		for (int a = 0; a < airports; a++) {
+			start[a + 1] += start[a];
+		}
+		int[] next = Arrays.copyOf(start, airports);
+		long[] keys = new long[_edges];
+		for (int e = 0; e < _edges; e++) {
+			// departure in the high bits keeps each airport's slice sorted by time
+			keys[next[_from[e]]++] = ((long) _departure[e] << 32) | e;
+		}
+		int[] sorted = new int[_edges];
+		for (int a = 0; a < airports; a++) {
+			Arrays.sort(keys, start[a], start[a + 1]);
+			for (int i = start[a]; i < start[a + 1]; i++) {
+				sorted[i] = (int) keys[i];
+			}
+		}
+		_sorted = sorted;
+		_start = start;
+		Arrays.fill(_pendingHead, -1);
+		_pending = 0;
+	}//end sort
+
+	/*
+	 * Reads everything on first use, which every caller waits for. Later, the
+	 * caller that finds the data stale refreshes it, while the others go on
+	 * with what has been read rather than wait for the refresh.
+	 */
+	private void ensureFresh() throws SQLException {
+		if (!_loaded) {
+			_reading.lock();
+			try{
+				if (!_loaded) {
+					read(true);
+					_loaded = true;
+				}
+			}finally{
+				_reading.unlock();
+			}
+		} else if (_refreshMillis >= 0 && isStale() && _reading.tryLock()) {
+			try{
+				// another thread may have refreshed since the check
+				if (_loaded && isStale()) read(false);
+			}finally{
+				_reading.unlock();
+			}
+		}
+	}
+
+	private boolean isStale() {
+		return System.currentTimeMillis() - _refreshedAt > _refreshMillis;
+	}
+
+	/**
+	 * Method to read the flights added, and the seats of the flights that
+	 * may have seats again, since the graph was last read.
+	 *
+	 * @throws java.sql.SQLException when the flights cannot be read
+	 */
+	public void refresh() throws SQLException {
+		_reading.lock();
+		try{
+			if (_loaded) read(false);
+		}finally{
+			_reading.unlock();
+		}
+	}
+
+	/*
+	 * A flight as read from the database, kept until the write lock is taken.
+	 */
+	static class FlightRow{
+		final int fnum;
+		final String from, to;
+		final int departure, arrival, cost, seatsLeft;
+
+		FlightRow(int fnum, String from, String to, int departure, int arrival, int cost, int seatsLeft) {
+			this.fnum = fnum;
+			this.from = from;
+			this.to = to;
+			this.departure = departure;
+			this.arrival = arrival;
+			this.cost = cost;
+			this.seatsLeft = seatsLeft;
+		}
+	}
+
+	/*
+	 * Reads every flight, or those logged since the last read, without
+	 * holding the lock, then merges them. Called holding _reading.
+	 */
+	private void read(boolean full) throws SQLException {
+		_refreshedAt = System.currentTimeMillis();
+		final List<FlightRow> rows = new ArrayList<FlightRow>();
+		RowCursor.Handler handler = row -> rows.add(new FlightRow(row.getInt(1), row.getString(2), row.getString(3),
+			Math.toIntExact(row.getLong(4)), Math.toIntExact(row.getLong(5)), row.getInt(6), row.getInt(7)));
+		long mark = _log.mark();
+		if (full || !_log.isAvailable()) {
+			_esql.streamQuery(ALL_FLIGHTS, DBproject.DEFAULT_FETCH_SIZE * 10, handler);
+		} else {
+			try{
+				_esql.streamQuery(CHANGED_FLIGHTS, DBproject.DEFAULT_FETCH_SIZE * 10, handler, _log.getFloor());
+			}catch(SQLException e){
+				if (!_log.isMissing(e)) throw e;
+				rows.clear();
+				_esql.streamQuery(ALL_FLIGHTS, DBproject.DEFAULT_FETCH_SIZE * 10, handler);
+			}
+		}
+
+		merge(rows);
+		_log.advance(mark);
+		_log.prune(mark);
+	}//end read
+
+	/*
+	 * Adds the flights read, or updates their seats, under the write lock.
+	 */
+	void merge(List<FlightRow> rows) {
+		_lock.writeLock().lock();
+		try{
+			for (FlightRow row : rows) {
+				addEdge(row.fnum, row.from, row.to, row.departure, row.arrival, row.cost, row.seatsLeft);
+			}
+			if (_pending > 0) sort();
+		}finally{
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Method to drop the graph, for example after a bulk load. It is read
+	 * again on the next query.
+	 */
+	public void clear() {
+		_reading.lock();
+		_lock.writeLock().lock();
+		try{
+			_airportIds.clear();
+			_edgeOf.clear();
+			_edges = 0;
+			_sorted = new int[0];
+			_start = new int[1];
+			Arrays.fill(_pendingHead, -1);
+			_pending = 0;
+			_loaded = false;
+		}finally{
+			_lock.writeLock().unlock();
+			_reading.unlock();
+		}
+	}
+
+	public String toString() {
+		_lock.readLock().lock();
+		try{
+			if (!_loaded) return "Itinerary planner: not loaded";
+			return "Itinerary planner: " + _airportIds.size() + " airports, " + _edges + " flights, " + _pending + " not yet sorted";
+		}finally{
+			_lock.readLock().unlock();
+		}
+	}
+
+}//end ItineraryPlanner
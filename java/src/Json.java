@@ -0,0 +1,255 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads JSON text, such as the output of EXPLAIN (FORMAT JSON),
+ * into plain Java values: objects become a Map, arrays a List, numbers a
+ * Double, and true, false and null become Boolean and null. write() turns
+ * the same kind of values back into JSON text.
+ *
+ */
+
+public class Json{
+	//objects and arrays nested deeper are rejected before the parser runs out of stack
+	static final int MAX_DEPTH = 256;
+
+	private final String _text;
+	private int _pos = 0;
+	private int _depth = 0;
+
+	private Json(String text) {
+		this._text = text;
+	}
+
+	/**
+	 * Method to parse a JSON document.
+	 *
+	 * @param text the document
+	 * @return the value it holds
+	 * @throws java.lang.IllegalArgumentException when the text is not valid JSON or nested deeper than MAX_DEPTH
+	 */
+	public static Object parse(String text) {
+		Json json = new Json(text);
+		Object value = json.value();
+		json.skipWhitespace();
+		if (json._pos != text.length()) throw json.error("Unexpected trailing characters");
+		return value;
+	}
+
+	/**
+	 * Method to format a value as JSON. Maps, lists, int arrays, strings,
+	 * numbers, booleans and null are supported; other values are written as
+	 * strings.
+	 *
+	 * @param value the value
+	 * @return the JSON text
+	 */
+	public static String write(Object value) {
+		StringBuilder sb = new StringBuilder();
+		write(value, sb);
+		return sb.toString();
+	}
+
+	private static void write(Object value, StringBuilder sb) {
+		if (value == null) {
+			sb.append("null");
+		} else if (value instanceof Map) {
+			sb.append('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+				if (!first) sb.append(',');
+				first = false;
+				quote(String.valueOf(e.getKey()), sb);
+				sb.append(':');
+				write(e.getValue(), sb);
+			}
+			sb.append('}');
+		} else if (value instanceof List) {
+			sb.append('[');
+			boolean first = true;
+			for (Object item : (List<?>) value) {
+				if (!first) sb.append(',');
+				first = false;
+				write(item, sb);
+			}
+			sb.append(']');
+		} else if (value instanceof int[]) {
+			int[] array = (int[]) value;
+			sb.append('[');
+			for (int i = 0; i < array.length; i++) {
+				if (i > 0) sb.append(',');
+				sb.append(array[i]);
+			}
+			sb.append(']');
+		} else if (value instanceof Number || value instanceof Boolean) {
+			sb.append(value);
+		} else {
+			quote(value.toString(), sb);
+		}
+	}//end write
+
+	private static void quote(String text, StringBuilder sb) {
+		sb.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '"': sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default:
+					if (c < 0x20) {
+						sb.append(String.format("\\u%04x", (int) c));
+					} else {
+						sb.append(c);
+					}
+			}
+		}//end for
+		sb.append('"');
+	}
+
+	private Object value() {
+		skipWhitespace();
+		if (_pos >= _text.length()) throw error("Unexpected end of input");
+		char c = _text.charAt(_pos);
+		switch (c) {
+			case '{':
+			case '[':
+				if (++_depth > MAX_DEPTH) throw error("Nested deeper than " + MAX_DEPTH + " levels");
+				Object nested = c == '{' ? object() : array();
+				_depth--;
+				return nested;
+			case '"': return string();
+			case 't': return literal("true", Boolean.TRUE);
+			case 'f': return literal("false", Boolean.FALSE);
+			case 'n': return literal("null", null);
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) return number();
+				throw error("Unexpected character '" + c + "'");
+		}
+	}
+
+	private Map<String, Object> object() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		_pos++;
+		skipWhitespace();
+		if (peek() == '}') {
+			_pos++;
+			return map;
+		}
+		while (true) {
+			skipWhitespace();
+			if (peek() != '"') throw error("Expected a key");
+			String key = string();
+			skipWhitespace();
+			expect(':');
+			map.put(key, value());
+			skipWhitespace();
+			if (peek() == ',') {
+				_pos++;
+			} else {
+				expect('}');
+				return map;
+			}
+		}//end while
+	}
+
+	private List<Object> array() {
+		List<Object> list = new ArrayList<Object>();
+		_pos++;
+		skipWhitespace();
+		if (peek() == ']') {
+			_pos++;
+			return list;
+		}
+		while (true) {
+			list.add(value());
+			skipWhitespace();
+			if (peek() == ',') {
+				_pos++;
+			} else {
+				expect(']');
+				return list;
+			}
+		}//end while
+	}
+
+	private String string() {
+		_pos++;
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			if (_pos >= _text.length()) throw error("Unterminated string");
+			char c = _text.charAt(_pos++);
+			if (c == '"') return sb.toString();
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			if (_pos >= _text.length()) throw error("Unterminated string");
+			char e = _text.charAt(_pos++);
+			switch (e) {
+				case 'b': sb.append('\b'); break;
+				case 'f': sb.append('\f'); break;
+				case 'n': sb.append('\n'); break;
+				case 'r': sb.append('\r'); break;
+				case 't': sb.append('\t'); break;
+				case 'u':
+					if (_pos + 4 > _text.length()) throw error("Bad unicode escape");
+					sb.append((char) Integer.parseInt(_text.substring(_pos, _pos + 4), 16));
+					_pos += 4;
+					break;
+				default: sb.append(e);
+			}
+		}//end while
+	}
+
+	private Double number() {
+		int start = _pos;
+		while (_pos < _text.length() && "+-0123456789.eE".indexOf(_text.charAt(_pos)) >= 0) _pos++;
+		try{
+			return Double.valueOf(_text.substring(start, _pos));
+		}catch(NumberFormatException e){
+			throw error("Bad number");
+		}
+	}
+
+	private Object literal(String word, Object value) {
+		if (!_text.startsWith(word, _pos)) throw error("Unexpected token");
+		_pos += word.length();
+		return value;
+	}
+
+	private void expect(char c) {
+		if (peek() != c) throw error("Expected '" + c + "'");
+		_pos++;
+	}
+
+	private char peek() {
+		return _pos < _text.length() ? _text.charAt(_pos) : '\0';
+	}
+
+	private void skipWhitespace() {
+		while (_pos < _text.length() && Character.isWhitespace(_text.charAt(_pos))) _pos++;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at offset " + _pos);
+	}
+
+}//end Json
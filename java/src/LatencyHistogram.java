@@ -0,0 +1,113 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts durations in log-linear buckets: every power of two is
+ * split into 16 buckets, so a percentile is off by at most 1/16 of its
+ * value. Recording is lock-free and allocates nothing, so it can sit on
+ * every statement; reading a percentile scans the buckets.
+ *
+ */
+
+public class LatencyHistogram{
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder _count = new LongAdder();
+	private final LongAdder _sum = new LongAdder();
+	private final AtomicLong _max = new AtomicLong();
+
+	/**
+	 * Method to count one duration.
+	 *
+	 * @param nanos the duration in nanoseconds, negative values count as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		_counts.incrementAndGet(bucket(nanos));
+		_count.increment();
+		_sum.add(nanos);
+		long max = _max.get();
+		while (nanos > max && !_max.compareAndSet(max, nanos)) {
+			max = _max.get();
+		}
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long lowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+	}
+
+	/**
+	 * @return number of recorded durations
+	 */
+	public long getCount() {
+		return _count.sum();
+	}
+
+	/**
+	 * @return the longest recorded duration in nanoseconds
+	 */
+	public long getMax() {
+		return _max.get();
+	}
+
+	/**
+	 * @return the mean duration in nanoseconds, 0 when nothing was recorded
+	 */
+	public double getMean() {
+		long count = _count.sum();
+		return count == 0 ? 0 : (double) _sum.sum() / count;
+	}
+
+	/**
+	 * Method to estimate a percentile.
+	 *
+	 * @param quantile between 0 and 1, e.g. 0.99
+	 * @return the duration in nanoseconds that this share of the recorded durations does not exceed, 0 when nothing was recorded
+	 */
+	public long percentile(double quantile) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) total += _counts.get(i);
+		if (total == 0) return 0;
+
+		long rank = (long) Math.ceil(quantile * total);
+		if (rank < 1) rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += _counts.get(i);
+			if (seen >= rank) {
+				// middle of the bucket, but never past the largest value seen
+				long middle = (lowerBound(i) + (i + 1 < BUCKETS ? lowerBound(i + 1) : Long.MAX_VALUE)) >>> 1;
+				return Math.min(middle, getMax());
+			}
+		}
+		return getMax();
+	}
+
+}//end LatencyHistogram
@@ -0,0 +1,444 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class drives the DBproject operations from many threads with a
+ * weighted mix: seat lookups, bookings, Add* operations, the repair reports
+ * and status counts. Keys come from a sample of the flights and customers in
+ * the database, optionally skewed towards a hot fraction of them.
+ *
+ * With a target rate each operation has an intended start time and its
+ * latency is measured from that time, so a stalled database shows up in the
+ * percentiles instead of silently lowering the offered load. No operation
+ * starts after the end of the run, even when the clients are behind; the
+ * starts they were late for, and those never made, are reported apart.
+ * Operations finished during the warmup are not counted, and throughput is
+ * the operations finished divided by the time actually measured, until the
+ * last client returned. At the end the run checks that
+ * no flight was sold past its capacity and that no reservation number was
+ * handed out twice.
+ *
+ */
+
+public class LoadGenerator{
+	//upper bound on the flights and customers sampled as keys
+	private static final int SAMPLE_SIZE = 100000;
+	private static final String[] OPERATIONS = {"seats", "book", "add-plane", "add-pilot", "add-technician",
+		"add-flight", "repairs-per-plane", "repairs-per-year", "status-count"};
+
+	private final DBproject _esql;
+	private final int _threads;
+	private final double _rate;	// operations per second, 0 for as fast as possible
+	private final long _durationNanos;
+	private final long _warmupNanos;
+	private final double[] _cumulativeMix = new double[OPERATIONS.length];
+	private final double _hotFlightFraction, _hotFlightShare;
+	private final double _hotCustomerFraction, _hotCustomerShare;
+
+	// sampled keys
+	private int[] _fnums, _pilots, _planes, _customers;
+	private String[] _departures;
+
+	private final Map<String, OperationStats> _stats = new TreeMap<String, OperationStats>();
+	private final Set<Integer> _rnums = ConcurrentHashMap.newKeySet();
+	private final AtomicLong _duplicateRnums = new AtomicLong();
+	private final AtomicLong _lateStarts = new AtomicLong();
+	private final AtomicLong _missedStarts = new AtomicLong();
+
+	/**
+	 * @param esql the database to load
+	 * @param threads number of client threads
+	 * @param rate target operations per second over all threads, 0 for no limit
+	 * @param durationSeconds length of the measured run
+	 * @param warmupSeconds length of the unmeasured run before it
+	 * @param mix relative weight of every operation, by name; missing operations get 0
+	 */
+	public LoadGenerator(DBproject esql, int threads, double rate, int durationSeconds, int warmupSeconds,
+			Map<String, Double> mix, double hotFlightFraction, double hotFlightShare,
+			double hotCustomerFraction, double hotCustomerShare) {
+		this._esql = esql;
+		this._threads = Math.max(1, threads);
+		this._rate = rate;
+		this._durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+		this._warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+		this._hotFlightFraction = hotFlightFraction;
+		this._hotFlightShare = hotFlightShare;
+		this._hotCustomerFraction = hotCustomerFraction;
+		this._hotCustomerShare = hotCustomerShare;
+
+		double total = 0;
+		for (int i = 0; i < OPERATIONS.length; i++) {
+			Double weight = mix.get(OPERATIONS[i]);
+			total += weight == null ? 0 : weight;
+			_cumulativeMix[i] = total;
+		}
+		if (total <= 0) throw new IllegalArgumentException("The operation mix is empty");
+		for (int i = 0; i < OPERATIONS.length; i++) {
+			_cumulativeMix[i] /= total;
+			_stats.put(OPERATIONS[i], new OperationStats());
+		}
+	}
+
+	/**
+	 * The default mix: mostly seat lookups, some bookings, occasional Add*
+	 * operations and reports.
+	 */
+	public static Map<String, Double> defaultMix() {
+		Map<String, Double> mix = new TreeMap<String, Double>();
+		mix.put("seats", 70.0);
+		mix.put("book", 20.0);
+		mix.put("status-count", 5.0);
+		mix.put("add-flight", 1.5);
+		mix.put("add-plane", 0.5);
+		mix.put("add-pilot", 0.5);
+		mix.put("add-technician", 0.5);
+		mix.put("repairs-per-plane", 1.0);
+		mix.put("repairs-per-year", 1.0);
+		return mix;
+	}
+
+	/**
+	 * Counters of one operation over the measured run.
+	 */
+	public static class OperationStats{
+		public final LatencyHistogram latency = new LatencyHistogram();
+		public final AtomicLong errors = new AtomicLong();
+	}
+
+	/**
+	 * The outcome of a run.
+	 */
+	public static class Report{
+		public long operations, errors;
+		public double seconds;
+		public Map<String, OperationStats> perOperation;
+		public List<List<String>> overbookedFlights;	// (fnum, num_sold, seats) sold past capacity during the run
+		public List<List<String>> duplicateRnums;	// (rnum, count) in Reservation
+		public long duplicateRnumsReturned;	// rnums returned to two bookings of this run
+		public long lateStarts;	// operations started after the next one was due, with a target rate
+		public long missedStarts;	// operations due before the end that were never started
+
+		public double operationsPerSecond() {
+			return seconds == 0 ? 0 : operations / seconds;
+		}
+
+		public boolean invariantsHold() {
+			return overbookedFlights.isEmpty() && duplicateRnums.isEmpty() && duplicateRnumsReturned == 0;
+		}
+	}
+
+	/**
+	 * Method to sample keys, run the load and check the invariants.
+	 *
+	 * @return the measured numbers
+	 * @throws java.sql.SQLException when the keys or the invariants cannot be read
+	 * @throws java.lang.InterruptedException when interrupted while waiting for the clients
+	 */
+	public Report run() throws SQLException, InterruptedException {
+		sampleKeys();
+		Set<String> overbookedBefore = new HashSet<String>();
+		for (List<String> row : _esql.getBookingEngine().findOverbookedFlights()) {
+			overbookedBefore.add(row.get(0));
+		}
+
+		final long start = System.nanoTime();
+		final long measureFrom = start + _warmupNanos;
+		final long end = measureFrom + _durationNanos;
+		List<Thread> clients = new ArrayList<Thread>();
+		for (int t = 0; t < _threads; t++) {
+			final int client = t;
+			Thread thread = new Thread(() -> runClient(client, start, measureFrom, end), "load-" + t);
+			thread.start();
+			clients.add(thread);
+		}
+		for (Thread thread : clients) {
+			thread.join();
+		}
+		long finished = System.nanoTime();
+
+		Report report = new Report();
+		report.seconds = Math.max(0, finished - measureFrom) / 1e9;
+		report.perOperation = _stats;
+		report.lateStarts = _lateStarts.get();
+		report.missedStarts = _missedStarts.get();
+		for (OperationStats s : _stats.values()) {
+			report.operations += s.latency.getCount();
+			report.errors += s.errors.get();
+		}
+		report.overbookedFlights = new ArrayList<List<String>>();
+		for (List<String> row : _esql.getBookingEngine().findOverbookedFlights()) {
+			if (!overbookedBefore.contains(row.get(0))) report.overbookedFlights.add(row);
+		}
+		report.duplicateRnums = _esql.executeQueryAndReturnResult(
+			"SELECT rnum, COUNT(*) FROM Reservation GROUP BY rnum HAVING COUNT(*) > 1 ORDER BY rnum LIMIT 100;");
+		report.duplicateRnumsReturned = _duplicateRnums.get();
+		return report;
+	}//end run
+
+	/*
+	 * Takes every k-th flight (with its pilot and plane) and customer, so
+	 * at most SAMPLE_SIZE of each are held in memory.
+	 */
+	private void sampleKeys() throws SQLException {
+		long flights = Long.parseLong(_esql.executeQueryAndReturnResult("SELECT COUNT(*) FROM FlightInfo;").get(0).get(0));
+		long customers = Long.parseLong(_esql.executeQueryAndReturnResult("SELECT COUNT(*) FROM Customer;").get(0).get(0));
+		if (flights == 0 || customers == 0) {
+			throw new SQLException("The load generator needs flights with a plane and customers");
+		}
+
+		List<List<String>> rows = _esql.executeQueryAndReturnResult(
+			"SELECT F.fnum, F.actual_departure_date, FI.pilot_id, FI.plane_id FROM Flight F JOIN FlightInfo FI ON FI.flight_id = F.fnum " +
+			"WHERE F.fnum % ? = 0 ORDER BY F.fnum LIMIT ?;", Math.max(1, (int) (flights / SAMPLE_SIZE)), SAMPLE_SIZE);
+		_fnums = new int[rows.size()];
+		_departures = new String[rows.size()];
+		_pilots = new int[rows.size()];
+		_planes = new int[rows.size()];
+		for (int i = 0; i < rows.size(); i++) {
+			_fnums[i] = Integer.parseInt(rows.get(i).get(0));
+			_departures[i] = rows.get(i).get(1);
+			_pilots[i] = Integer.parseInt(rows.get(i).get(2));
+			_planes[i] = Integer.parseInt(rows.get(i).get(3));
+		}
+
+		rows = _esql.executeQueryAndReturnResult("SELECT id FROM Customer WHERE id % ? = 0 ORDER BY id LIMIT ?;",
+			Math.max(1, (int) (customers / SAMPLE_SIZE)), SAMPLE_SIZE);
+		_customers = new int[rows.size()];
+		for (int i = 0; i < rows.size(); i++) {
+			_customers[i] = Integer.parseInt(rows.get(i).get(0));
+		}
+		if (_fnums.length == 0 || _customers.length == 0) {
+			throw new SQLException("No keys sampled");
+		}
+	}
+
+	private void runClient(int client, long start, long measureFrom, long end) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		// each client issues every threads-th operation of the global schedule
+		long interval = _rate > 0 ? (long) (1e9 * _threads / _rate) : 0;
+		long intended = start + (interval > 0 ? random.nextLong(interval) : 0);
+
+		while (true) {
+			long now = System.nanoTime();
+			if (interval > 0 && intended > now) {
+				LockSupport.parkNanos(intended - now);
+				now = System.nanoTime();
+			}
+			long opStart = interval > 0 ? intended : now;
+			if (opStart >= end) break;
+			if (now >= end) {
+				// behind schedule at the end: the remaining starts are missed, not run late
+				for (long due = intended; due < end; due += interval) {
+					if (due >= measureFrom) _missedStarts.incrementAndGet();
+				}
+				break;
+			}
+			if (interval > 0 && intended >= measureFrom && now - intended > interval) _lateStarts.incrementAndGet();
+
+			int op = pickOperation(random.nextDouble());
+			boolean failed = false;
+			try{
+				execute(op, random);
+			}catch(Exception e){
+				failed = true;
+			}
+			long finished = System.nanoTime();
+			if (finished >= measureFrom) {
+				OperationStats stats = _stats.get(OPERATIONS[op]);
+				stats.latency.record(finished - opStart);
+				if (failed) stats.errors.incrementAndGet();
+			}
+			intended += interval;
+		}//end while
+	}//end runClient
+
+	private int pickOperation(double u) {
+		for (int i = 0; i < _cumulativeMix.length; i++) {
+			if (u < _cumulativeMix[i]) return i;
+		}
+		return _cumulativeMix.length - 1;
+	}
+
+	private void execute(int op, ThreadLocalRandom random) throws SQLException {
+		int flight = skewed(random, _fnums.length, _hotFlightFraction, _hotFlightShare);
+		switch (OPERATIONS[op]) {
+			case "seats":
+				_esql.availableSeats(_fnums[flight], _departures[flight]);
+				break;
+			case "book":
+				int customer = _customers[skewed(random, _customers.length, _hotCustomerFraction, _hotCustomerShare)];
+				BookingEngine.Booking booking = _esql.bookFlight(customer, _fnums[flight]);
+				if (!_rnums.add(booking.rnum)) _duplicateRnums.incrementAndGet();
+				break;
+			case "add-plane":
+				_esql.addPlane("Airbus", "A320", random.nextInt(30), 100 + random.nextInt(300));
+				break;
+			case "add-pilot":
+				_esql.addPilot("Load Test", "Nowhere");
+				break;
+			case "add-technician":
+				_esql.addTechnician("Load Test");
+				break;
+			case "add-flight":
+				LocalDate departure = LocalDate.parse(_departures[flight]);
+				_esql.addFlights(Collections.singletonList(new DBproject.FlightSpec(300, 0, 1,
+					departure.toString(), "08:30", departure.plusDays(1).toString(), "11:45", "LOADA", "LOADB",
+					_pilots[flight], _planes[flight])));
+				break;
+			case "repairs-per-plane":
+				_esql.repairsPerPlane();
+				break;
+			case "repairs-per-year":
+				_esql.repairsPerYear();
+				break;
+			case "status-count":
+				_esql.passengersWithStatus(_fnums[flight], "R");
+				break;
+			default:
+				throw new IllegalStateException(OPERATIONS[op]);
+		}
+	}//end execute
+
+	/*
+	 * Picks an index in [0, n); with probability share it comes from the hot
+	 * first fraction of the range.
+	 */
+	private static int skewed(ThreadLocalRandom random, int n, double fraction, double share) {
+		int hot = (int) (n * fraction);
+		if (hot > 0 && random.nextDouble() < share) {
+			return random.nextInt(hot);
+		}
+		return random.nextInt(n);
+	}
+
+	/**
+	 * Method to format a report as a table followed by the invariant checks.
+	 *
+	 * @param report the outcome of run()
+	 * @return the text
+	 */
+	public static String format(Report report) {
+		StringBuilder out = new StringBuilder();
+		String format = "%-18s %10s %8s %7s %10s %9s %9s %9s %9s%n";
+		out.append(String.format(format, "operation", "ops", "errors", "error%", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+		for (Map.Entry<String, OperationStats> e : report.perOperation.entrySet()) {
+			LatencyHistogram h = e.getValue().latency;
+			long ops = h.getCount(), errors = e.getValue().errors.get();
+			if (ops == 0) continue;
+			out.append(String.format(format, e.getKey(), ops, errors, String.format("%.2f", errors * 100.0 / ops),
+				String.format("%.1f", ops / report.seconds),
+				String.format("%.3f", h.percentile(0.5) / 1e6), String.format("%.3f", h.percentile(0.99) / 1e6),
+				String.format("%.3f", h.percentile(0.999) / 1e6), String.format("%.3f", h.getMax() / 1e6)));
+		}
+		out.append(String.format("%nRan %d operations in %.1f s, %.1f ops/s, %d errors (%.2f%%).%n",
+			report.operations, report.seconds, report.operationsPerSecond(), report.errors,
+			report.operations == 0 ? 0 : report.errors * 100.0 / report.operations));
+		if (report.lateStarts > 0 || report.missedStarts > 0) {
+			out.append(String.format("Behind the target rate: %d operations started late, %d never started.%n",
+				report.lateStarts, report.missedStarts));
+		}
+
+		out.append(report.overbookedFlights.isEmpty() ? "OK   no flight was sold past its capacity\n"
+			: "FAIL " + report.overbookedFlights.size() + " flights sold past capacity, e.g. (fnum, num_sold, seats) "
+				+ report.overbookedFlights.get(0) + "\n");
+		out.append(report.duplicateRnums.isEmpty() && report.duplicateRnumsReturned == 0 ? "OK   no duplicate rnum\n"
+			: "FAIL duplicate rnums: " + report.duplicateRnums.size() + " in Reservation, "
+				+ report.duplicateRnumsReturned + " returned twice during the run\n");
+		return out.toString();
+	}
+
+	/**
+	 * Usage: java LoadGenerator <dbname> <port> <user> [options]
+	 *   --threads N              client threads and pool connections (default 8)
+	 *   --rate R                 target operations per second, 0 for no limit (default 0)
+	 *   --duration S             measured seconds (default 60)
+	 *   --warmup S               unmeasured seconds before that (default 10)
+	 *   --mix op=w,op=w,...      operation weights, see defaultMix()
+	 *   --hot-flights F:S        share S of the operations use the first fraction F of the sampled flights
+	 *   --hot-customers F:S      same for the customers making bookings
+	 * The exit status is 1 when an invariant check failed.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("Usage: java LoadGenerator <dbname> <port> <user> [--threads N] [--rate ops/s] [--duration s]"
+				+ " [--warmup s] [--mix op=weight,...] [--hot-flights fraction:share] [--hot-customers fraction:share]");
+			return;
+		}
+		DBproject esql = null;
+		boolean ok = false;
+		try{
+			int threads = 8, duration = 60, warmup = 10;
+			double rate = 0;
+			Map<String, Double> mix = defaultMix();
+			double[] hotFlights = {0, 0}, hotCustomers = {0, 0};
+			for (int i = 3; i + 1 < args.length; i += 2) {
+				switch (args[i]) {
+					case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+					case "--rate": rate = Double.parseDouble(args[i + 1]); break;
+					case "--duration": duration = Integer.parseInt(args[i + 1]); break;
+					case "--warmup": warmup = Integer.parseInt(args[i + 1]); break;
+					case "--mix": mix = parseMix(args[i + 1]); break;
+					case "--hot-flights": hotFlights = fractionAndShare(args[i + 1]); break;
+					case "--hot-customers": hotCustomers = fractionAndShare(args[i + 1]); break;
+					default: throw new IllegalArgumentException("Unknown option " + args[i]);
+				}
+			}//end for
+
+			esql = new DBproject(args[0], args[1], args[2], "", Math.min(threads, 4), threads);
+			LoadGenerator generator = new LoadGenerator(esql, threads, rate, duration, warmup, mix,
+				hotFlights[0], hotFlights[1], hotCustomers[0], hotCustomers[1]);
+			System.out.println("Running " + threads + " threads for " + warmup + " s warmup and " + duration + " s...");
+			Report report = generator.run();
+			System.out.print(format(report));
+			ok = report.invariantsHold();
+		}catch(Exception e){
+			System.err.println(e.getMessage());
+		}finally{
+			if (esql != null) esql.cleanup();
+		}
+		if (!ok) System.exit(1);
+	}//end main
+
+	private static Map<String, Double> parseMix(String value) {
+		Map<String, Double> mix = new TreeMap<String, Double>();
+		for (String part : value.split(",")) {
+			String[] pair = part.split("=");
+			if (pair.length != 2 || !Arrays.asList(OPERATIONS).contains(pair[0])) {
+				throw new IllegalArgumentException("Invalid mix entry " + part + ", operations are " + String.join(", ", OPERATIONS));
+			}
+			mix.put(pair[0], Double.parseDouble(pair[1]));
+		}
+		return mix;
+	}
+
+	private static double[] fractionAndShare(String value) {
+		String[] parts = value.split(":");
+		return new double[] {Double.parseDouble(parts[0]), Double.parseDouble(parts[1])};
+	}
+
+}//end LoadGenerator
@@ -0,0 +1,278 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class collects call counts, error counts, rows and latency
+ * histograms per operation (addPlane, bookFlight, ...) and per SQL shape,
+ * i.e. per SQL string with ? placeholders. Recording only touches counters
+ * and allocates nothing once a name has been seen. Every entry and the
+ * connection pool are also published as MXBeans in the "DBproject" JMX
+ * domain, so they can be watched with jconsole or any JMX client. Each
+ * instance numbers its MXBeans with an instance key of its own, so clients
+ * sharing a JVM neither replace nor drop each other's.
+ *
+ */
+
+public class Metrics{
+	//distinct SQL shapes tracked, further ones are counted under OTHER
+	private static final int MAX_STATEMENTS = 500;
+	private static final String OTHER = "(other)";
+	private static final String DOMAIN = "DBproject";
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	private final Map<String, Stats> _operations = new ConcurrentHashMap<String, Stats>();
+	private final Map<String, Stats> _statements = new ConcurrentHashMap<String, Stats>();
+	private final boolean _jmx;
+	private final int _instance = INSTANCES.incrementAndGet();
+	private final Set<ObjectName> _registered = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param jmx true to publish the entries as MXBeans
+	 */
+	public Metrics(boolean jmx) {
+		this._jmx = jmx;
+	}
+
+	/**
+	 * The numbers published over JMX for an operation or SQL shape.
+	 */
+	public interface StatsMXBean{
+		String getName();
+		long getCalls();
+		long getErrors();
+		long getRows();
+		double getMeanMillis();
+		double getP50Millis();
+		double getP99Millis();
+		double getP999Millis();
+		double getMaxMillis();
+	}
+
+	/**
+	 * The numbers published over JMX for the connection pool.
+	 */
+	public interface PoolMXBean{
+		int getTotalConnections();
+		int getIdleConnections();
+		int getMaxConnections();
+		long getBorrows();
+		long getTimeouts();
+		double getWaitMeanMillis();
+		double getWaitP50Millis();
+		double getWaitP99Millis();
+		double getWaitP999Millis();
+		double getWaitMaxMillis();
+	}
+
+	/**
+	 * Counters of one operation or SQL shape.
+	 */
+	public static class Stats implements StatsMXBean{
+		private final String _name;
+		private final LongAdder _calls = new LongAdder();
+		private final LongAdder _errors = new LongAdder();
+		private final LongAdder _rows = new LongAdder();
+		private final LatencyHistogram _latency = new LatencyHistogram();
+
+		Stats(String name) {
+			this._name = name;
+		}
+
+		/**
+		 * Method to count one call.
+		 *
+		 * @param nanos how long the call took
+		 * @param rows rows returned or affected
+		 * @param failed true when the call threw
+		 */
+		public void record(long nanos, long rows, boolean failed) {
+			_calls.increment();
+			if (failed) _errors.increment();
+			if (rows > 0) _rows.add(rows);
+			_latency.record(nanos);
+		}
+
+		public String getName() { return _name; }
+		public long getCalls() { return _calls.sum(); }
+		public long getErrors() { return _errors.sum(); }
+		public long getRows() { return _rows.sum(); }
+		public double getMeanMillis() { return _latency.getMean() / 1e6; }
+		public double getP50Millis() { return _latency.percentile(0.5) / 1e6; }
+		public double getP99Millis() { return _latency.percentile(0.99) / 1e6; }
+		public double getP999Millis() { return _latency.percentile(0.999) / 1e6; }
+		public double getMaxMillis() { return _latency.getMax() / 1e6; }
+
+		public LatencyHistogram getLatency() {
+			return _latency;
+		}
+	}//end Stats
+
+	/*
+	 * Publishes the wait time and size of a connection pool.
+	 */
+	private static class PoolStats implements PoolMXBean{
+		private final ConnectionPool _pool;
+
+		PoolStats(ConnectionPool pool) {
+			this._pool = pool;
+		}
+
+		public int getTotalConnections() { return _pool.getTotalConnections(); }
+		public int getIdleConnections() { return _pool.getIdleConnections(); }
+		public int getMaxConnections() { return _pool.getMaxSize(); }
+		public long getBorrows() { return _pool.getWaitTime().getCount(); }
+		public long getTimeouts() { return _pool.getTimeouts(); }
+		public double getWaitMeanMillis() { return _pool.getWaitTime().getMean() / 1e6; }
+		public double getWaitP50Millis() { return _pool.getWaitTime().percentile(0.5) / 1e6; }
+		public double getWaitP99Millis() { return _pool.getWaitTime().percentile(0.99) / 1e6; }
+		public double getWaitP999Millis() { return _pool.getWaitTime().percentile(0.999) / 1e6; }
+		public double getWaitMaxMillis() { return _pool.getWaitTime().getMax() / 1e6; }
+	}
+
+	/**
+	 * @param name name of the operation, e.g. "book-flight"
+	 * @return the counters of the operation
+	 */
+	public Stats operation(String name) {
+		Stats stats = _operations.get(name);
+		return stats != null ? stats : create(_operations, "Operation", name);
+	}
+
+	/**
+	 * @param sql the SQL string with ? placeholders
+	 * @return the counters of the SQL shape
+	 */
+	public Stats statement(String sql) {
+		Stats stats = _statements.get(sql);
+		if (stats != null) return stats;
+		if (_statements.size() >= MAX_STATEMENTS) {
+			stats = _statements.get(OTHER);
+			return stats != null ? stats : create(_statements, "Statement", OTHER);
+		}
+		return create(_statements, "Statement", sql);
+	}
+
+	private synchronized Stats create(Map<String, Stats> map, String type, String name) {
+		Stats stats = map.get(name);
+		if (stats == null) {
+			stats = new Stats(name);
+			map.put(name, stats);
+			register(type, name, stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * Method to publish the wait time and size of a connection pool.
+	 *
+	 * @param pool the pool
+	 */
+	public void registerPool(ConnectionPool pool) {
+		register("ConnectionPool", "pool", new PoolStats(pool));
+	}
+
+	private void register(String type, String name, Object bean) {
+		if (!_jmx) return;
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",instance=" + _instance
+				+ ",name=" + ObjectName.quote(name));
+			if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+			server.registerMBean(bean, objectName);
+			_registered.add(objectName);
+		}catch(Exception e){
+			// metrics stay available through dump() without JMX
+		}
+	}
+
+	/**
+	 * Method to drop the MXBeans published by this instance.
+	 */
+	public void unregister() {
+		if (!_jmx) return;
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (ObjectName name : _registered) {
+				_registered.remove(name);
+				if (server.isRegistered(name)) server.unregisterMBean(name);
+			}
+		}catch(Exception e){
+			// ignored.
+		}
+	}
+
+	/**
+	 * @return every operation, by name
+	 */
+	public List<Stats> getOperations() {
+		return new ArrayList<Stats>(new TreeMap<String, Stats>(_operations).values());
+	}
+
+	/**
+	 * @return every SQL shape, by SQL text
+	 */
+	public List<Stats> getStatements() {
+		return new ArrayList<Stats>(new TreeMap<String, Stats>(_statements).values());
+	}
+
+	/**
+	 * Method to format all counters as text tables.
+	 *
+	 * @param pool the pool whose wait time is included, may be null
+	 * @return the tables
+	 */
+	public String dump(ConnectionPool pool) {
+		StringBuilder out = new StringBuilder();
+		appendTable(out, "Operation", getOperations(), 24);
+		out.append('\n');
+		appendTable(out, "SQL", getStatements(), 60);
+		if (pool != null) {
+			PoolStats p = new PoolStats(pool);
+			out.append('\n').append(String.format(
+				"Connection pool: %d open, %d idle, max %d; %d borrows, %d timeouts; wait mean %.3f p50 %.3f p99 %.3f p999 %.3f max %.3f ms%n",
+				p.getTotalConnections(), p.getIdleConnections(), p.getMaxConnections(), p.getBorrows(), p.getTimeouts(),
+				p.getWaitMeanMillis(), p.getWaitP50Millis(), p.getWaitP99Millis(), p.getWaitP999Millis(), p.getWaitMaxMillis()));
+		}
+		return out.toString();
+	}
+
+	private static void appendTable(StringBuilder out, String title, List<Stats> rows, int width) {
+		String format = "%-" + width + "s %9s %7s %10s %9s %9s %9s %9s %9s%n";
+		out.append(String.format(format, title, "calls", "errors", "rows", "mean ms", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+		for (Stats s : rows) {
+			String name = s.getName().replaceAll("\\s+", " ");
+			if (name.length() > width) name = name.substring(0, width - 3) + "...";
+			out.append(String.format(format, name, s.getCalls(), s.getErrors(), s.getRows(),
+				millis(s.getMeanMillis()), millis(s.getP50Millis()), millis(s.getP99Millis()),
+				millis(s.getP999Millis()), millis(s.getMaxMillis())));
+		}
+	}
+
+	private static String millis(double value) {
+		return String.format("%.3f", value);
+	}
+
+}//end Metrics
@@ -0,0 +1,206 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class guards the query plans of the statements the client issues.
+ * Every SQL shape is run through EXPLAIN (FORMAT JSON) with sample values
+ * taken from the database, and a shape fails when its plan reads a table
+ * with a sequential scan or its estimated total cost is over budget. Only the
+ * reports and the reads of every flight or reservation, which read a whole
+ * table by design, may scan it; they are listed with the tables they may
+ * scan and no cost budget.
+ *
+ * Not checked: BookingEngine.BOOK_FLIGHT calls a PL/pgSQL function, whose
+ * statements EXPLAIN does not show, so they are checked one by one as the
+ * "book:" shapes. Schema changes and maintenance (BulkLoader, IdAllocator's
+ * sequences, RepairAggregates), offline exports (ColumnarSnapshot), the
+ * invariant checks of LoadGenerator and EXPLAIN itself (SlowQueryLog) are
+ * not run per request.
+ *
+ * Plans depend on table sizes and statistics, so run the check against a
+ * scaled data set (see DataGenerator) that was loaded with --load, which
+ * analyzes every table. On the small fixtures in data/ the planner
+ * rightly prefers sequential scans.
+ *
+ */
+
+public class PlanCheck{
+	public static final double DEFAULT_MAX_COST = 1000;
+
+	private final DBproject _esql;
+	private final double _maxCost;
+
+	/**
+	 * @param esql the database holding a scaled data set
+	 * @param maxCost highest estimated total cost allowed for a point query or write
+	 */
+	public PlanCheck(DBproject esql, double maxCost) {
+		this._esql = esql;
+		this._maxCost = maxCost;
+	}
+
+	/*
+	 * A statement checked with sample values.
+	 */
+	private static class Shape{
+		final String name;
+		final String sql;
+		final Object[] params;
+		final double maxCost;
+		final List<String> scanned;	// tables the plan may read sequentially
+
+		Shape(String name, String sql, Object[] params, double maxCost, String... scanned) {
+			this.name = name;
+			this.sql = sql;
+			this.params = params;
+			this.maxCost = maxCost;
+			this.scanned = Arrays.asList(scanned);
+		}
+	}
+
+	/**
+	 * The plan of one statement and what is wrong with it.
+	 */
+	public static class Result{
+		public final String name;
+		public final double totalCost;
+		public final double maxCost;
+		public final List<String> seqScans = new ArrayList<String>();
+		public final List<String> problems = new ArrayList<String>();
+		public String plan;
+
+		Result(String name, double totalCost, double maxCost) {
+			this.name = name;
+			this.totalCost = totalCost;
+			this.maxCost = maxCost;
+		}
+
+		public boolean passed() {
+			return problems.isEmpty();
+		}
+	}
+
+	/**
+	 * Method to check the plan of every SQL shape.
+	 *
+	 * @return one result per shape, in a fixed order
+	 * @throws java.sql.SQLException when the sample values cannot be read or a statement cannot be explained
+	 */
+	public List<Result> run() throws SQLException {
+		List<Result> results = new ArrayList<Result>();
+		for (Shape shape : shapes()) {
+			results.add(check(shape));
+		}
+		return results;
+	}
+
+	private List<Shape> shapes() throws SQLException {
+		List<List<String>> sample = _esql.executeQueryAndReturnResult(
+			"SELECT F.fnum, F.actual_departure_date, FI.pilot_id, FI.plane_id, " +
+			"(SELECT R.cid FROM Reservation R WHERE R.fid = F.fnum LIMIT 1) " +
+			"FROM Flight F JOIN FlightInfo FI ON FI.flight_id = F.fnum ORDER BY F.fnum DESC LIMIT 1;");
+		if (sample.isEmpty()) {
+			throw new SQLException("PlanCheck needs at least one flight with a plane assigned");
+		}
+		int fnum = Integer.parseInt(sample.get(0).get(0));
+		String departure = sample.get(0).get(1);
+		int pilot = Integer.parseInt(sample.get(0).get(2));
+		int plane = Integer.parseInt(sample.get(0).get(3));
+		int cid = sample.get(0).get(4) == null ? 0 : Integer.parseInt(sample.get(0).get(4));
+		int newID = Integer.MAX_VALUE;	// writes are only explained, never run
+		double max = _maxCost, any = Double.POSITIVE_INFINITY;
+		// the flight log as a reader that refreshed just now reads it
+		long floor = Long.parseLong(_esql.executeQueryAndReturnResult(FlightLog.SNAPSHOT_XMIN).get(0).get(0));
+
+		List<Shape> shapes = new ArrayList<Shape>();
+		shapes.add(new Shape("add-plane", DBproject.INSERT_PLANE, new Object[] {newID, "Airbus", "A320", 3, 180}, max));
+		shapes.add(new Shape("add-pilot", DBproject.INSERT_PILOT, new Object[] {newID, "Jane Doe", "Canada"}, max));
+		shapes.add(new Shape("add-technician", DBproject.INSERT_TECHNICIAN, new Object[] {newID, "Jane Doe"}, max));
+		shapes.add(new Shape("add-flight: pilot exists", "SELECT 1 FROM Pilot WHERE id = ? LIMIT 1;", new Object[] {pilot}, max));
+		shapes.add(new Shape("add-flight: plane exists", "SELECT 1 FROM Plane WHERE id = ? LIMIT 1;", new Object[] {plane}, max));
+		shapes.add(new Shape("add-flight: pilots exist", String.format(DBproject.EXISTING_IDS, "Pilot", "id"),
+			new Object[] {"{" + pilot + "," + newID + "}"}, max));
+		shapes.add(new Shape("add-flight: planes exist", String.format(DBproject.EXISTING_IDS, "Plane", "id"),
+			new Object[] {"{" + plane + "," + newID + "}"}, max));
+		shapes.add(new Shape("add-flight: flight", DBproject.INSERT_FLIGHT,
+			new Object[] {newID, 450, 0, 1, departure, departure, "LAXAP", "JFKAP"}, max));
+		shapes.add(new Shape("add-flight: flightinfo", DBproject.INSERT_FLIGHTINFO, new Object[] {newID, newID, pilot, plane}, max));
+		shapes.add(new Shape("add-flight: schedule", DBproject.INSERT_SCHEDULE, new Object[] {newID, newID, departure, departure}, max));
+		shapes.add(new Shape("book: reserve seat", BookingEngine.RESERVE_SEAT, new Object[] {fnum}, max));
+		shapes.add(new Shape("book: reservation", BookingEngine.INSERT_RESERVATION, new Object[] {newID, cid, fnum, "R"}, max));
+		// the lookups of book_flight(), see sql/create.sql; the other two are the shapes above
+		shapes.add(new Shape("book: customer exists", "SELECT 1 FROM Customer WHERE id = ?;", new Object[] {cid}, max));
+		shapes.add(new Shape("book: flight exists", "SELECT 1 FROM Flight WHERE fnum = ?;", new Object[] {fnum}, max));
+		shapes.add(new Shape("seats: sold", DBproject.SEATS_SOLD, new Object[] {fnum, departure}, max));
+		shapes.add(new Shape("seats: plane", DBproject.PLANE_SEATS, new Object[] {fnum}, max));
+		shapes.add(new Shape("seats: cache load", SeatCache.FLIGHT_SEATS, new Object[] {fnum}, max));
+		shapes.add(new Shape("seats: cache refresh", SeatCache.SEATS_SOLD, new Object[] {fnum}, max));
+		shapes.add(new Shape("status-count", DBproject.PASSENGERS_WITH_STATUS, new Object[] {fnum, "R"}, max));
+		shapes.add(new Shape("search: flight details", RouteIndex.FLIGHT_DETAILS, new Object[] {"{" + fnum + "," + (fnum - 1) + "}"}, max));
+		shapes.add(new Shape("search: all flights", RouteIndex.ALL_FLIGHTS, new Object[0], any, "flight"));
+		shapes.add(new Shape("search: changed flights", RouteIndex.CHANGED_FLIGHTS, new Object[] {floor}, max));
+		shapes.add(new Shape("itinerary: all flights", ItineraryPlanner.ALL_FLIGHTS, new Object[0], any,
+			"flight", "schedule", "flightinfo", "plane"));
+		shapes.add(new Shape("itinerary: changed flights", ItineraryPlanner.CHANGED_FLIGHTS, new Object[] {floor}, max));
+		shapes.add(new Shape("refresh: prune log", FlightLog.PRUNE, new Object[] {floor}, any));
+		shapes.add(new Shape("status-matrix: all flights", StatusMatrix.ALL_FLIGHTS, new Object[0], any, "flight"));
+		shapes.add(new Shape("status-matrix: all reservations", StatusMatrix.ALL_RESERVATIONS, new Object[0], any, "reservation"));
+		shapes.add(new Shape("status-matrix: flights of a day", StatusMatrix.FLIGHTS_BETWEEN, new Object[] {departure, departure}, any));
+		shapes.add(new Shape("status-matrix: reservations of a day", StatusMatrix.RESERVATIONS_BETWEEN,
+			new Object[] {departure, departure}, any));
+		shapes.add(new Shape("promote: freed flights", WaitlistPromoter.FREED_FLIGHTS, new Object[0], any, "flight", "flightinfo", "plane"));
+		shapes.add(new Shape("promote: lock flights", WaitlistPromoter.LOCK_FLIGHTS, new Object[] {"{" + fnum + "}"}, max));
+		shapes.add(new Shape("promote: waitlist", WaitlistPromoter.PROMOTE, new Object[] {"{" + fnum + "}", "{1}"}, max));
+		shapes.add(new Shape("repairs-per-plane", DBproject.REPAIRS_PER_PLANE, new Object[0], any, "plane", "repairsperplane"));
+		shapes.add(new Shape("repairs-per-year", DBproject.REPAIRS_PER_YEAR, new Object[0], any, "repairsperyear"));
+		return shapes;
+	}//end shapes
+
+	private Result check(Shape shape) throws SQLException {
+		List<List<String>> rows = _esql.executeQueryAndReturnResult("EXPLAIN (FORMAT JSON) " + shape.sql, shape.params);
+		String text = rows.get(0).get(0);
+		Map<?, ?> plan = (Map<?, ?>) ((Map<?, ?>) ((List<?>) Json.parse(text)).get(0)).get("Plan");
+
+		Result result = new Result(shape.name, ((Number) plan.get("Total Cost")).doubleValue(), shape.maxCost);
+		result.plan = text;
+		collectSeqScans(plan, result.seqScans);
+		for (String table : result.seqScans) {
+			if (!shape.scanned.contains(table)) {
+				result.problems.add("sequential scan on " + table);
+			}
+		}
+		if (result.totalCost > shape.maxCost) {
+			result.problems.add(String.format("cost %.2f over budget %.2f", result.totalCost, shape.maxCost));
+		}
+		return result;
+	}
+
+	private static void collectSeqScans(Map<?, ?> node, List<String> tables) {
+		if ("Seq Scan".equals(node.get("Node Type"))) {
+			tables.add(String.valueOf(node.get("Relation Name")).toLowerCase());
+		}
+		Object children = node.get("Plans");
+		if (children instanceof List) {
+			for (Object child : (List<?>) children) {
+				collectSeqScans((Map<?, ?>) child, tables);
+			}
+		}
+	}
+
+}//end PlanCheck
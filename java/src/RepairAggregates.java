@@ -0,0 +1,105 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This class maintains the repair counters behind reports 7 and 8. The
+ * tables RepairsPerPlane, RepairsPerYear and RepairsPerCode hold the number
+ * of repairs per plane, year and repair code, and the repairs_count trigger
+ * defined in sql/create.sql updates them with every insert, update or
+ * delete on Repairs. This class recomputes them from scratch, for example
+ * after a bulk load with the trigger disabled, and compares them with the
+ * live aggregates over Repairs.
+ *
+ */
+
+public class RepairAggregates{
+	private static final String[] REBUILD = {
+		"LOCK TABLE Repairs IN SHARE MODE;",
+		"DELETE FROM RepairsPerPlane;",
+		"DELETE FROM RepairsPerYear;",
+		"DELETE FROM RepairsPerCode;",
+		"INSERT INTO RepairsPerPlane SELECT plane_id, COUNT(*) FROM Repairs GROUP BY plane_id;",
+		"INSERT INTO RepairsPerYear SELECT date_part('year', repair_date), COUNT(*) FROM Repairs GROUP BY date_part('year', repair_date);",
+		"INSERT INTO RepairsPerCode SELECT repair_code, COUNT(*) FROM Repairs WHERE repair_code IS NOT NULL GROUP BY repair_code;",
+	};
+
+	// (counter, key, live count, stored count) for every key where they differ
+	private static final String VERIFY =
+		"SELECT 'plane', CAST(COALESCE(L.k, S.k) AS TEXT), COALESCE(L.n, 0), COALESCE(S.n, 0) " +
+		"FROM (SELECT plane_id AS k, COUNT(*) AS n FROM Repairs GROUP BY plane_id) L " +
+		"FULL JOIN (SELECT plane_id AS k, repairs AS n FROM RepairsPerPlane WHERE repairs <> 0) S ON L.k = S.k " +
+		"WHERE L.n IS DISTINCT FROM S.n " +
+		"UNION ALL " +
+		"SELECT 'year', CAST(COALESCE(L.k, S.k) AS TEXT), COALESCE(L.n, 0), COALESCE(S.n, 0) " +
+		"FROM (SELECT CAST(date_part('year', repair_date) AS INTEGER) AS k, COUNT(*) AS n FROM Repairs GROUP BY 1) L " +
+		"FULL JOIN (SELECT year AS k, repairs AS n FROM RepairsPerYear WHERE repairs <> 0) S ON L.k = S.k " +
+		"WHERE L.n IS DISTINCT FROM S.n " +
+		"UNION ALL " +
+		"SELECT 'code', CAST(COALESCE(L.k, S.k) AS TEXT), COALESCE(L.n, 0), COALESCE(S.n, 0) " +
+		"FROM (SELECT CAST(repair_code AS TEXT) AS k, COUNT(*) AS n FROM Repairs WHERE repair_code IS NOT NULL GROUP BY 1) L " +
+		"FULL JOIN (SELECT CAST(repair_code AS TEXT) AS k, repairs AS n FROM RepairsPerCode WHERE repairs <> 0) S ON L.k = S.k " +
+		"WHERE L.n IS DISTINCT FROM S.n " +
+		"ORDER BY 1, 2;";
+
+	static final String TRIGGER = "repairs_count";
+
+	private final DBproject _esql;
+
+	public RepairAggregates(DBproject esql) {
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to recompute all repair counters from Repairs in one
+	 * transaction. Writes to Repairs wait until the rebuild commits.
+	 *
+	 * @throws java.sql.SQLException when a statement failed, the counters are unchanged in that case
+	 */
+	public void rebuild() throws SQLException {
+		_esql.executeInTransaction(esql -> {
+			for (String sql : REBUILD) {
+				esql.executeUpdate(sql);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Method to compare the repair counters with the live aggregates.
+	 *
+	 * @return (counter, key, live count, stored count) for every mismatch, empty when they agree
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public List<List<String>> verify() throws SQLException {
+		return _esql.executeQueryAndReturnResult(VERIFY);
+	}
+
+	/**
+	 * Method to switch the trigger maintaining the counters on or off, e.g.
+	 * around a bulk load followed by rebuild().
+	 *
+	 * @param enabled true to maintain the counters on every write
+	 * @throws java.sql.SQLException when the trigger cannot be altered
+	 */
+	public void setTriggerEnabled(boolean enabled) throws SQLException {
+		_esql.executeUpdate(triggerDdl(enabled));
+	}
+
+	static String triggerDdl(boolean enabled) {
+		return "ALTER TABLE Repairs " + (enabled ? "ENABLE" : "DISABLE") + " TRIGGER " + TRIGGER + ";";
+	}
+
+}//end RepairAggregates
@@ -0,0 +1,282 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class writes the rows of a cursor to the console or to a file
+ * through a buffer, in one of these formats:
+ *   table  columns padded to the widest value of the first rows
+ *   tsv    tab separated, with tabs, newlines and backslashes escaped (default)
+ *   csv    comma separated, quoted as in RFC 4180
+ *   jsonl  one JSON object per row, keyed by column name
+ *
+ * Rows are written as they are read, so a result larger than memory can be
+ * exported; only the table format holds its first rows back to size the
+ * columns. Files are written through a FileChannel.
+ *
+ */
+
+public class ResultPrinter implements AutoCloseable{
+	public static final String TABLE = "table";
+	public static final String TSV = "tsv";
+	public static final String CSV = "csv";
+	public static final String JSONL = "jsonl";
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	//rows read before the table format fixes the column widths
+	private static final int TABLE_SAMPLE = 1000;
+
+	private final Writer _out;
+	private final String _format;
+	private final boolean _console;
+	private long _rows = 0;
+	private long _nanos = 0;
+
+	private ResultPrinter(Writer out, String format, boolean console) {
+		if (!validFormat(format)) throw new IllegalArgumentException("Invalid output format: " + format);
+		this._out = out;
+		this._format = format;
+		this._console = console;
+	}
+
+	/**
+	 * @return true for table, tsv, csv and jsonl
+	 */
+	public static boolean validFormat(String format) {
+		return format.equals(TABLE) || format.equals(TSV) || format.equals(CSV) || format.equals(JSONL);
+	}
+
+	/**
+	 * Method to write to standard out. Closing the printer flushes it but
+	 * leaves standard out open.
+	 */
+	public static ResultPrinter toConsole(String format) {
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), BUFFER_SIZE);
+		return new ResultPrinter(out, format, true);
+	}
+
+	/**
+	 * Method to write to a file, which is created or truncated. The file is
+	 * not touched when the format is invalid.
+	 *
+	 * @throws java.io.IOException when the file cannot be opened
+	 */
+	public static ResultPrinter toFile(Path file, String format) throws IOException {
+		if (!validFormat(format)) throw new IllegalArgumentException("Invalid output format: " + format);
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING);
+		try{
+			Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+			return new ResultPrinter(out, format, false);
+		}catch(RuntimeException | Error e){
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Method to write the remaining rows of a cursor. A header is written
+	 * first, except in the jsonl format.
+	 *
+	 * @param cursor the rows, closed when done
+	 * @return number of rows written
+	 * @throws java.sql.SQLException when reading the cursor failed
+	 * @throws java.io.IOException when writing failed
+	 */
+	public long print(RowCursor cursor) throws SQLException, IOException {
+		long start = System.nanoTime();
+		long rows = 0;
+		try{
+			String[] names = null;
+			boolean[] numeric = null;
+			int[] widths = null;
+			List<String[]> held = _format.equals(TABLE) ? new ArrayList<String[]>() : null;
+
+			while (cursor.hasNext()) {
+				RowCursor.Row row = cursor.next();
+				if (names == null) {
+					names = new String[row.getColumnCount()];
+					numeric = new boolean[names.length];
+					for (int i = 0; i < names.length; i++) {
+						names[i] = row.getColumnName(i + 1);
+						numeric[i] = row.isNumeric(i + 1);
+					}
+					if (!_format.equals(TABLE)) writeHeader(names);
+				}
+				String[] values = new String[names.length];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = row.getString(i + 1);
+				}
+				rows++;
+
+				if (held != null) {
+					held.add(values);
+					if (held.size() < TABLE_SAMPLE) continue;
+					widths = flushTable(names, held);
+					held = null;
+				} else if (widths != null) {
+					writeTableRow(values, widths);
+				} else {
+					writeRow(names, numeric, values);
+				}
+			}//end while
+
+			if (held != null && names != null) {
+				flushTable(names, held);
+			}
+			_out.flush();
+		}catch(RowCursor.CursorException e){
+			throw e.getCause();
+		}finally{
+			cursor.close();
+			_rows += rows;
+			_nanos += System.nanoTime() - start;
+		}
+		return rows;
+	}//end print
+
+	private void writeHeader(String[] names) throws IOException {
+		if (_format.equals(JSONL)) return;
+		writeRow(null, null, names);
+	}
+
+	private void writeRow(String[] names, boolean[] numeric, String[] values) throws IOException {
+		switch (_format) {
+			case TSV:
+				for (int i = 0; i < values.length; i++) {
+					if (i > 0) _out.write('\t');
+					_out.write(values[i] == null ? "\\N" : escapeTsv(values[i]));
+				}
+				break;
+			case CSV:
+				for (int i = 0; i < values.length; i++) {
+					if (i > 0) _out.write(',');
+					if (values[i] != null) _out.write(quoteCsv(values[i]));
+				}
+				break;
+			case JSONL:
+				StringBuilder sb = new StringBuilder("{");
+				for (int i = 0; i < values.length; i++) {
+					if (i > 0) sb.append(',');
+					sb.append(Json.write(names[i])).append(':');
+					if (values[i] == null) {
+						sb.append("null");
+					} else if (numeric[i]) {
+						sb.append(values[i].trim());
+					} else {
+						sb.append(Json.write(values[i]));
+					}
+				}
+				_out.write(sb.append('}').toString());
+				break;
+			default:
+				throw new IllegalStateException(_format);
+		}
+		_out.write('\n');
+	}
+
+	/*
+	 * Sizes the columns to the held rows, writes them with a header and
+	 * returns the widths used for the rest of the result.
+	 */
+	private int[] flushTable(String[] names, List<String[]> held) throws IOException {
+		int[] widths = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			widths[i] = names[i].length();
+		}
+		for (String[] values : held) {
+			for (int i = 0; i < values.length; i++) {
+				widths[i] = Math.max(widths[i], display(values[i]).length());
+			}
+		}
+		writeTableRow(names, widths);
+		for (int i = 0; i < widths.length; i++) {
+			if (i > 0) _out.write("-+-");
+			for (int j = 0; j < widths[i]; j++) _out.write('-');
+		}
+		_out.write('\n');
+		for (String[] values : held) {
+			writeTableRow(values, widths);
+		}
+		return widths;
+	}
+
+	private void writeTableRow(String[] values, int[] widths) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) _out.write(" | ");
+			String value = display(values[i]);
+			_out.write(value);
+			if (i < values.length - 1) {
+				for (int j = value.length(); j < widths[i]; j++) _out.write(' ');
+			}
+		}
+		_out.write('\n');
+	}
+
+	//CHAR columns are blank padded, the table pads on its own
+	private static String display(String value) {
+		return value == null ? "" : value.trim();
+	}
+
+	private static String escapeTsv(String value) {
+		if (value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0 && value.indexOf('\\') < 0) {
+			return value;
+		}
+		return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	private static String quoteCsv(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	/**
+	 * @return rows written by all print() calls
+	 */
+	public long getRows() {
+		return _rows;
+	}
+
+	/**
+	 * @return time spent in print() calls, in nanoseconds
+	 */
+	public long getNanos() {
+		return _nanos;
+	}
+
+	/**
+	 * Method to flush the output and close it, unless it is standard out.
+	 */
+	public void close() throws IOException {
+		if (_console) {
+			_out.flush();
+		} else {
+			_out.close();
+		}
+	}
+
+}//end ResultPrinter
@@ -0,0 +1,352 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class finds flights by departure airport, arrival airport and a
+ * range of departure dates. It keeps every route (airport pair) in memory as
+ * one sorted long array, each entry holding the departure day in the high
+ * 32 bits and the fnum in the low 32 bits, so a search is a binary search
+ * whose cost does not grow with the number of flights.
+ *
+ * The index is read from Flight on first use. Flights added by this process
+ * are put into it by addFlights() as they are written; flights added by
+ * other clients are picked up by refresh(), which reads the flights logged
+ * in FlightLog since the last read and runs at most every refreshMillis. One
+ * search refreshes the index while the others go on with what has been
+ * read, and the rows are read without holding the lock, so no search waits
+ * for the log. Seats and cost change with every booking, so they are read
+ * for the matching flights only, with one query per search. Flights whose insert was rolled back
+ * stay in the index but are never returned, since that query finds no row.
+ *
+ */
+
+public class RouteIndex{
+	static final String ALL_FLIGHTS =
+		"SELECT F.fnum, F.departure_airport, F.arrival_airport, F.actual_departure_date FROM Flight F;";
+	static final String CHANGED_FLIGHTS =
+		"SELECT F.fnum, F.departure_airport, F.arrival_airport, F.actual_departure_date FROM Flight F " +
+		"WHERE " + FlightLog.CHANGED_SINCE + ";";
+	//cost and available seats of a set of flights, seats are NULL when no plane is assigned
+	static final String FLIGHT_DETAILS =
+		"SELECT DISTINCT ON (F.fnum) F.fnum, F.actual_departure_date, F.actual_arrival_date, F.cost, P.seats - F.num_sold " +
+		"FROM Flight F LEFT JOIN FlightInfo FI ON FI.flight_id = F.fnum LEFT JOIN Plane P ON P.id = FI.plane_id " +
+		"WHERE F.fnum = ANY(CAST(? AS INTEGER[])) ORDER BY F.fnum;";
+
+	private final DBproject _esql;
+	private final long _refreshMillis;
+	private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+	private final ReentrantLock _reading = new ReentrantLock();	// held by the one thread reading from the database
+	private final Map<String, Route> _routes = new HashMap<String, Route>();
+	private final FlightLog _log;
+	private volatile boolean _loaded = false;
+	private volatile long _refreshedAt = 0;
+
+	/**
+	 * @param esql the database flights are read from
+	 * @param refreshMillis how often a search reads flights added by other clients, negative for never
+	 */
+	public RouteIndex(DBproject esql, long refreshMillis) {
+		this._esql = esql;
+		this._refreshMillis = refreshMillis;
+		this._log = new FlightLog(esql, DBproject.FLIGHT_LOG_RETENTION_MILLIS);
+	}
+
+	/*
+	 * The flights of one airport pair, sorted by departure day and fnum.
+	 */
+	private static class Route{
+		long[] keys = new long[4];
+		int size = 0;
+
+		void add(long key) {
+			int pos = Arrays.binarySearch(keys, 0, size, key);
+			if (pos >= 0) return;
+			pos = -pos - 1;
+			if (size == keys.length) keys = Arrays.copyOf(keys, size * 2);
+			System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+			keys[pos] = key;
+			size++;
+		}
+
+		/*
+		 * Adds without keeping the order, for loading; sort() restores it.
+		 */
+		void append(long key) {
+			if (size == keys.length) keys = Arrays.copyOf(keys, size * 2);
+			keys[size++] = key;
+		}
+
+		void sort() {
+			Arrays.sort(keys, 0, size);
+			int distinct = 0;
+			for (int i = 0; i < size; i++) {
+				if (distinct == 0 || keys[i] != keys[distinct - 1]) keys[distinct++] = keys[i];
+			}
+			size = distinct;
+		}
+
+		/*
+		 * Index of the first key at or after the given one.
+		 */
+		int lowerBound(long key) {
+			int pos = Arrays.binarySearch(keys, 0, size, key);
+			return pos >= 0 ? pos : -pos - 1;
+		}
+	}//end Route
+
+	/**
+	 * A flight found by a search.
+	 */
+	public static class FlightMatch{
+		public final int fnum;
+		public final String departureDate;
+		public final String arrivalDate;
+		public final int cost;
+		public final int seatsAvailable;	// 0 when no plane is assigned
+
+		FlightMatch(int fnum, String departureDate, String arrivalDate, int cost, int seatsAvailable) {
+			this.fnum = fnum;
+			this.departureDate = departureDate;
+			this.arrivalDate = arrivalDate;
+			this.cost = cost;
+			this.seatsAvailable = seatsAvailable;
+		}
+
+		public String toString() {
+			return fnum + "\t" + departureDate + "\t" + arrivalDate + "\t" + cost + "\t" + seatsAvailable;
+		}
+	}
+
+	private static String routeKey(String departureAirport, String arrivalAirport) {
+		return departureAirport.trim() + '>' + arrivalAirport.trim();
+	}
+
+	private static long key(long day, int fnum) {
+		return (day << 32) | (fnum & 0xffffffffL);
+	}
+
+	/**
+	 * Method to find the flights of a route departing between two dates.
+	 *
+	 * @param departureAirport code of the departure airport
+	 * @param arrivalAirport code of the arrival airport
+	 * @param fromDate first departure date, YYYY-MM-DD
+	 * @param toDate last departure date, YYYY-MM-DD
+	 * @param limit most flights returned
+	 * @param availableOnly true to skip flights with no seat left
+	 * @return the flights ordered by departure date and fnum
+	 * @throws java.sql.SQLException when the flights cannot be read
+	 */
+	public List<FlightMatch> search(String departureAirport, String arrivalAirport, String fromDate, String toDate,
+			int limit, boolean availableOnly) throws SQLException {
+		long fromDay = LocalDate.parse(fromDate).toEpochDay();
+		long toDay = LocalDate.parse(toDate).toEpochDay();
+		ensureFresh();
+
+		List<FlightMatch> matches = new ArrayList<FlightMatch>();
+		// a key rather than a position, since flights may be added between rounds
+		long from = key(fromDay, 0);
+		while (matches.size() < limit) {
+			// candidates are read under the lock, their details without it
+			int[] candidates;
+			_lock.readLock().lock();
+			try{
+				Route route = _routes.get(routeKey(departureAirport, arrivalAirport));
+				if (route == null) break;
+				int next = route.lowerBound(from);
+				int end = route.lowerBound(key(toDay + 1, 0));
+				// flights without seats are skipped, so read ahead of the limit
+				int count = Math.min(end - next, Math.max(16, 2 * (limit - matches.size())));
+				if (count <= 0) break;
+				candidates = new int[count];
+				for (int i = 0; i < count; i++) {
+					candidates[i] = (int) route.keys[next + i];
+				}
+				from = route.keys[next + count - 1] + 1;
+			}finally{
+				_lock.readLock().unlock();
+			}
+			addDetails(candidates, availableOnly, limit, matches);
+		}//end while
+		return matches;
+	}//end search
+
+	private void addDetails(int[] fnums, boolean availableOnly, int limit, List<FlightMatch> matches) throws SQLException {
+		StringBuilder array = new StringBuilder("{");
+		for (int i = 0; i < fnums.length; i++) {
+			if (i > 0) array.append(',');
+			array.append(fnums[i]);
+		}
+		Map<Integer, List<String>> rows = new HashMap<Integer, List<String>>();
+		for (List<String> row : _esql.executeQueryAndReturnResult(FLIGHT_DETAILS, array.append('}').toString())) {
+			rows.put(Integer.parseInt(row.get(0)), row);
+		}
+		// keeps the order of the index
+		for (int fnum : fnums) {
+			List<String> row = rows.get(fnum);
+			if (row == null) continue;
+			int seats = row.get(4) == null ? 0 : Math.max(0, Integer.parseInt(row.get(4)));
+			if (availableOnly && seats == 0) continue;
+			matches.add(new FlightMatch(fnum, row.get(1), row.get(2), Integer.parseInt(row.get(3)), seats));
+			if (matches.size() >= limit) return;
+		}
+	}
+
+	/**
+	 * Method to put a flight written by this process into the index.
+	 * Nothing is done until the index has been read.
+	 */
+	public void add(int fnum, String departureAirport, String arrivalAirport, String departureDate) {
+		if (!_loaded) return;
+		long day = LocalDate.parse(departureDate.trim().substring(0, 10)).toEpochDay();
+		_lock.writeLock().lock();
+		try{
+			_routes.computeIfAbsent(routeKey(departureAirport, arrivalAirport), k -> new Route()).add(key(day, fnum));
+		}finally{
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Reads everything on first use, which every caller waits for. Later, the
+	 * caller that finds the data stale refreshes it, while the others go on
+	 * with what has been read rather than wait for the refresh.
+	 */
+	private void ensureFresh() throws SQLException {
+		if (!_loaded) {
+			_reading.lock();
+			try{
+				if (!_loaded) {
+					read(true);
+					_loaded = true;
+				}
+			}finally{
+				_reading.unlock();
+			}
+		} else if (_refreshMillis >= 0 && isStale() && _reading.tryLock()) {
+			try{
+				// another thread may have refreshed since the check
+				if (_loaded && isStale()) read(false);
+			}finally{
+				_reading.unlock();
+			}
+		}
+	}
+
+	private boolean isStale() {
+		return System.currentTimeMillis() - _refreshedAt > _refreshMillis;
+	}
+
+	/**
+	 * Method to read the flights added since the index was last read.
+	 *
+	 * @throws java.sql.SQLException when the flights cannot be read
+	 */
+	public void refresh() throws SQLException {
+		_reading.lock();
+		try{
+			if (_loaded) read(false);
+		}finally{
+			_reading.unlock();
+		}
+	}
+
+	/*
+	 * Reads every flight, or those logged since the last read, into routes of
+	 * its own, then merges them under the write lock. Each route touched is
+	 * sorted once, which also drops the flights read twice. Called holding
+	 * _reading.
+	 */
+	private void read(boolean full) throws SQLException {
+		_refreshedAt = System.currentTimeMillis();
+		final Map<String, Route> read = new HashMap<String, Route>();
+		RowCursor.Handler handler = row -> {
+			long key = key(row.getEpochDay(4), row.getInt(1));
+			read.computeIfAbsent(routeKey(row.getString(2), row.getString(3)), k -> new Route()).append(key);
+		};
+		long mark = _log.mark();
+		if (full || !_log.isAvailable()) {
+			_esql.streamQuery(ALL_FLIGHTS, DBproject.DEFAULT_FETCH_SIZE * 10, handler);
+		} else {
+			try{
+				_esql.streamQuery(CHANGED_FLIGHTS, DBproject.DEFAULT_FETCH_SIZE * 10, handler, _log.getFloor());
+			}catch(SQLException e){
+				if (!_log.isMissing(e)) throw e;
+				read.clear();
+				_esql.streamQuery(ALL_FLIGHTS, DBproject.DEFAULT_FETCH_SIZE * 10, handler);
+			}
+		}
+
+		_lock.writeLock().lock();
+		try{
+			for (Map.Entry<String, Route> e : read.entrySet()) {
+				Route route = _routes.get(e.getKey());
+				if (route == null) {
+					e.getValue().sort();
+					_routes.put(e.getKey(), e.getValue());
+				} else {
+					for (int i = 0; i < e.getValue().size; i++) {
+						route.append(e.getValue().keys[i]);
+					}
+					route.sort();
+				}
+			}
+		}finally{
+			_lock.writeLock().unlock();
+		}
+		_log.advance(mark);
+		_log.prune(mark);
+	}//end read
+
+	/**
+	 * Method to drop the index, for example after a bulk load. It is read
+	 * again on the next search.
+	 */
+	public void clear() {
+		_reading.lock();
+		_lock.writeLock().lock();
+		try{
+			_routes.clear();
+			_loaded = false;
+		}finally{
+			_lock.writeLock().unlock();
+			_reading.unlock();
+		}
+	}
+
+	public String toString() {
+		_lock.readLock().lock();
+		try{
+			if (!_loaded) return "Route index: not loaded";
+			long flights = 0;
+			for (Route route : _routes.values()) {
+				flights += route.size;
+			}
+			return "Route index: " + _routes.size() + " routes, " + flights + " flights";
+		}finally{
+			_lock.readLock().unlock();
+		}
+	}
+
+}//end RouteIndex
@@ -0,0 +1,182 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class iterates over a query result that is read from a server-side
+ * cursor in batches of fetchSize rows, so only one batch is held in memory
+ * regardless of the size of the result. Cursors are opened with
+ * DBproject.openCursor() and keep their connection until closed.
+ *
+ * The same Row object is returned for every record; its values change when
+ * the cursor advances.
+ *
+ */
+
+public class RowCursor implements Iterator<RowCursor.Row>, AutoCloseable{
+	private final ResultSet _rs;
+	private final Row _row;
+	private final Runnable _onClose;
+	private boolean _advanced = false;
+	private boolean _hasRow = false;
+	private boolean _closed = false;
+
+	RowCursor(ResultSet rs, Runnable onClose) throws SQLException {
+		this._rs = rs;
+		this._row = new Row(rs);
+		this._onClose = onClose;
+	}
+
+	/**
+	 * Receives the rows of DBproject.streamQuery() one at a time.
+	 */
+	public interface Handler{
+		void handle(Row row) throws SQLException;
+	}
+
+	/**
+	 * Thrown by the Iterator methods, which cannot throw SQLException.
+	 */
+	public static class CursorException extends RuntimeException{
+		private static final long serialVersionUID = 1L;
+
+		CursorException(SQLException cause) {
+			super(cause.getMessage(), cause);
+		}
+
+		public SQLException getCause() {
+			return (SQLException) super.getCause();
+		}
+	}
+
+	public boolean hasNext() {
+		if (!_advanced) {
+			if (_closed) return false;
+			try{
+				_hasRow = _rs.next();
+			}catch(SQLException e){
+				throw new CursorException(e);
+			}
+			_advanced = true;
+			if (!_hasRow) close();
+		}
+		return _hasRow;
+	}
+
+	public Row next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		_advanced = false;
+		return _row;
+	}
+
+	/**
+	 * @return the remaining rows as a sequential stream which closes the cursor when closed
+	 */
+	public Stream<Row> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+			.onClose(this::close);
+	}
+
+	/**
+	 * Method to close the cursor and hand the connection back.
+	 */
+	public void close() {
+		if (_closed) return;
+		_closed = true;
+		_hasRow = false;
+		_onClose.run();
+	}
+
+	/**
+	 * The current record of a cursor, with typed getters. Columns are
+	 * numbered from 1 as in JDBC.
+	 */
+	public static class Row{
+		private final ResultSet _rs;
+		private final ResultSetMetaData _rsmd;
+
+		Row(ResultSet rs) throws SQLException {
+			this._rs = rs;
+			this._rsmd = rs.getMetaData();
+		}
+
+		public int getColumnCount() throws SQLException {
+			return _rsmd.getColumnCount();
+		}
+
+		public String getColumnName(int column) throws SQLException {
+			return _rsmd.getColumnName(column);
+		}
+
+		/**
+		 * @return whether the column holds integers or decimals
+		 */
+		public boolean isNumeric(int column) throws SQLException {
+			switch (_rsmd.getColumnType(column)) {
+				case Types.SMALLINT: case Types.INTEGER: case Types.BIGINT:
+				case Types.NUMERIC: case Types.DECIMAL: case Types.REAL: case Types.DOUBLE:
+					return true;
+				default:
+					return false;
+			}
+		}
+
+		public String getString(int column) throws SQLException {
+			return _rs.getString(column);
+		}
+
+		/**
+		 * @return the value, or 0 for NULL; check wasNull() when it matters
+		 */
+		public int getInt(int column) throws SQLException {
+			return _rs.getInt(column);
+		}
+
+		public long getLong(int column) throws SQLException {
+			return _rs.getLong(column);
+		}
+
+		public LocalDate getDate(int column) throws SQLException {
+			Date date = _rs.getDate(column);
+			return date == null ? null : date.toLocalDate();
+		}
+
+		/**
+		 * @return the date as days since 1970-01-01, or Long.MIN_VALUE for NULL
+		 */
+		public long getEpochDay(int column) throws SQLException {
+			Date date = _rs.getDate(column);
+			return date == null ? Long.MIN_VALUE : date.toLocalDate().toEpochDay();
+		}
+
+		/**
+		 * @return whether the last column read was NULL
+		 */
+		public boolean wasNull() throws SQLException {
+			return _rs.wasNull();
+		}
+	}//end Row
+
+}//end RowCursor
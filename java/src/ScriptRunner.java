@@ -0,0 +1,350 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class runs the menu operations from a command file without prompts.
+ * Every line holds one command followed by its arguments; arguments with
+ * spaces are written in double quotes, and blank lines and lines starting
+ * with # are skipped.
+ *
+ *   add-plane <make> <model> <age> <seats>
+ *   add-pilot <fullname> <nationality>
+ *   add-flight <cost> <num_sold> <num_stops> <departure date> <departure time>
+ *              <arrival date> <arrival time> <departure airport> <arrival airport> <pilot id> <plane id>
+ *   add-technician <fullname>
+ *   book <customer id> <flight number>
+ *   seats <flight number> <departure date>
+ *   repairs-per-plane
+ *   repairs-per-year
+ *   status-count <flight number> <W|R|C>
+ *   search <departure airport> <arrival airport> <first date> <last date>
+ *   itinerary <from> <to> <date> <max connections> <min layover days> <fastest|cheapest>
+ *   status-matrix <first date|-> <last date|-> <min waitlisted> <fnum|waitlisted|reserved|confirmed> <limit>
+ *   promote-waitlist
+ *   metrics
+ *   export <table|tsv|csv|jsonl> <file> <repairs-per-plane|repairs-per-year>
+ *
+ * Commands are committed in groups of commitEvery, and runs of add-flight
+ * commands within a group are written with one batch. When a group fails
+ * it is rolled back and its commands are retried one at a time, so only the
+ * failing commands are reported and skipped. promote-waitlist commits
+ * batches of its own, so it ends the group before it and runs outside any
+ * group.
+ *
+ */
+
+public class ScriptRunner{
+	private final DBproject _esql;
+	private final int _commitEvery;
+
+	public ScriptRunner(DBproject esql, int commitEvery) {
+		this._esql = esql;
+		this._commitEvery = Math.max(1, commitEvery);
+	}
+
+	/**
+	 * Totals of a script run.
+	 */
+	public static class Summary{
+		public long commands = 0;
+		public long errors = 0;
+		public long nanos = 0;
+		public final Map<String, Long> perCommand = new TreeMap<String, Long>();
+
+		public double commandsPerSecond() {
+			return nanos == 0 ? 0 : commands * 1e9 / nanos;
+		}
+	}
+
+	/*
+	 * A parsed line of the script.
+	 */
+	private static class Command{
+		final int line;
+		final String name;
+		final String[] args;
+
+		Command(int line, String name, String[] args) {
+			this.line = line;
+			this.name = name;
+			this.args = args;
+		}
+	}
+
+	/**
+	 * Method to run every command of a script.
+	 *
+	 * @param script the commands, one per line
+	 * @param out receives the output of the commands and error reports
+	 * @return the totals of the run
+	 * @throws java.io.IOException when the script cannot be read
+	 */
+	public Summary run(BufferedReader script, PrintWriter out) throws IOException {
+		Summary summary = new Summary();
+		long start = System.nanoTime();
+
+		List<Command> group = new ArrayList<Command>();
+		String line;
+		int lineNumber = 0;
+		while ((line = script.readLine()) != null) {
+			lineNumber++;
+			List<String> tokens = tokenize(line);
+			if (tokens.isEmpty() || tokens.get(0).startsWith("#")) continue;
+
+			String[] args = tokens.subList(1, tokens.size()).toArray(new String[0]);
+			Command command = new Command(lineNumber, tokens.get(0), args);
+			if (command.name.equals("promote-waitlist")) {
+				runGroup(group, out, summary);
+				group.clear();
+				runAlone(command, out, summary);
+				continue;
+			}
+			group.add(command);
+			if (group.size() >= _commitEvery) {
+				runGroup(group, out, summary);
+				group.clear();
+			}
+		}//end while
+		runGroup(group, out, summary);
+
+		summary.nanos = System.nanoTime() - start;
+		out.flush();
+		return summary;
+	}//end run
+
+	/*
+	 * Runs a group in one transaction, or command by command if that fails.
+	 */
+	private void runGroup(final List<Command> group, PrintWriter out, Summary summary) {
+		if (group.isEmpty()) return;
+
+		// output is held back until the group commits
+		final StringBuilder buffer = new StringBuilder();
+		try{
+			_esql.executeInTransaction(esql -> {
+				execute(group, buffer);
+				return null;
+			});
+			out.print(buffer);
+		}catch(Exception groupFailure){
+			for (final Command command : group) {
+				buffer.setLength(0);
+				try{
+					_esql.executeInTransaction(esql -> {
+						execute(Collections.singletonList(command), buffer);
+						return null;
+					});
+					out.print(buffer);
+				}catch(Exception e){
+					out.println("line " + command.line + ": " + command.name + " failed: " + e.getMessage());
+					summary.errors++;
+				}//end try
+			}//end for
+		}//end try
+
+		for (Command command : group) {
+			summary.commands++;
+			summary.perCommand.merge(command.name, 1L, Long::sum);
+		}
+	}//end runGroup
+
+	/*
+	 * Runs a command without a transaction, for commands that commit on
+	 * their own.
+	 */
+	private void runAlone(Command command, PrintWriter out, Summary summary) {
+		StringBuilder buffer = new StringBuilder();
+		try{
+			execute(Collections.singletonList(command), buffer);
+			out.print(buffer);
+		}catch(Exception e){
+			out.println("line " + command.line + ": " + command.name + " failed: " + e.getMessage());
+			summary.errors++;
+		}
+		summary.commands++;
+		summary.perCommand.merge(command.name, 1L, Long::sum);
+	}
+
+	/*
+	 * Executes commands on the transaction of the calling thread.
+	 */
+	private void execute(List<Command> commands, StringBuilder out) throws SQLException {
+		List<DBproject.FlightSpec> flights = new ArrayList<DBproject.FlightSpec>();
+		for (Command command : commands) {
+			if (!command.name.equals("add-flight")) {
+				flushFlights(flights, out);
+			}
+			String[] a = command.args;
+			switch (command.name) {
+				case "add-plane":
+					expect(command, 4);
+					out.append("plane ").append(_esql.addPlane(a[0], a[1], Integer.parseInt(a[2]), Integer.parseInt(a[3]))).append('\n');
+					break;
+				case "add-pilot":
+					expect(command, 2);
+					out.append("pilot ").append(_esql.addPilot(a[0], a[1])).append('\n');
+					break;
+				case "add-flight":
+					expect(command, 11);
+					flights.add(new DBproject.FlightSpec(Integer.parseInt(a[0]), Integer.parseInt(a[1]), Integer.parseInt(a[2]),
+						a[3], a[4], a[5], a[6], a[8], a[7], Integer.parseInt(a[9]), Integer.parseInt(a[10])));
+					break;
+				case "add-technician":
+					expect(command, 1);
+					out.append("technician ").append(_esql.addTechnician(a[0])).append('\n');
+					break;
+				case "book":
+					expect(command, 2);
+					BookingEngine.Booking booking = _esql.bookFlight(Integer.parseInt(a[0]), Integer.parseInt(a[1]));
+					out.append("reservation ").append(booking.rnum).append(' ').append(booking.status)
+						.append(' ').append(booking.seatsRemaining).append('\n');
+					break;
+				case "seats":
+					expect(command, 2);
+					out.append("seats ").append(_esql.availableSeats(Integer.parseInt(a[0]), a[1])).append('\n');
+					break;
+				case "repairs-per-plane":
+					expect(command, 0);
+					appendRows(_esql.repairsPerPlane(), out);
+					break;
+				case "repairs-per-year":
+					expect(command, 0);
+					appendRows(_esql.repairsPerYear(), out);
+					break;
+				case "status-count":
+					expect(command, 2);
+					out.append("count ").append(_esql.passengersWithStatus(Integer.parseInt(a[0]), a[1].toUpperCase())).append('\n');
+					break;
+				case "search":
+					expect(command, 4);
+					for (RouteIndex.FlightMatch flight : _esql.searchFlights(a[0], a[1], a[2], a[3], 50)) {
+						out.append("flight ").append(flight).append('\n');
+					}
+					break;
+				case "itinerary":
+					expect(command, 6);
+					ItineraryPlanner.Itinerary itinerary = _esql.planItinerary(a[0], a[1], a[2],
+						Integer.parseInt(a[3]), Integer.parseInt(a[4]), a[5]);
+					if (itinerary == null) {
+						out.append("itinerary none\n");
+						break;
+					}
+					out.append("itinerary ").append(itinerary.legs.size()).append(' ').append(itinerary.cost).append('\n');
+					for (ItineraryPlanner.Leg leg : itinerary.legs) {
+						out.append("leg ").append(leg).append('\n');
+					}
+					break;
+				case "status-matrix":
+					expect(command, 5);
+					StatusMatrix.Matrix matrix = _esql.statusOfAllFlights(a[0].equals("-") ? null : a[0], a[1]);
+					int[] selected = matrix.select(Integer.parseInt(a[2]), a[3], Integer.parseInt(a[4]));
+					out.append("status ").append(matrix.totalWaitlisted).append(' ').append(matrix.totalReserved)
+						.append(' ').append(matrix.totalConfirmed).append('\n');
+					for (int row : selected) {
+						out.append("flight ").append(matrix.toString(row)).append('\n');
+					}
+					break;
+				case "promote-waitlist":
+					expect(command, 0);
+					WaitlistPromoter.Promotion promotion = _esql.promoteWaitlists();
+					out.append("promoted ").append(promotion.promoted).append(' ').append(promotion.flights).append('\n');
+					break;
+				case "metrics":
+					expect(command, 0);
+					out.append(_esql.dumpMetrics());
+					break;
+				case "export":
+					expect(command, 3);
+					export(a[0], a[1], a[2], out);
+					break;
+				default:
+					throw new IllegalArgumentException("unknown command");
+			}//end switch
+		}//end for
+		flushFlights(flights, out);
+	}//end execute
+
+	private void flushFlights(List<DBproject.FlightSpec> flights, StringBuilder out) throws SQLException {
+		if (flights.isEmpty()) return;
+		for (int fnum : _esql.addFlights(flights)) {
+			out.append("flight ").append(fnum).append('\n');
+		}
+		flights.clear();
+	}
+
+	private void export(String format, String file, String report, StringBuilder out) throws SQLException {
+		String query;
+		switch (report) {
+			case "repairs-per-plane": query = DBproject.REPAIRS_PER_PLANE; break;
+			case "repairs-per-year": query = DBproject.REPAIRS_PER_YEAR; break;
+			default: throw new IllegalArgumentException("unknown report " + report);
+		}
+		try{
+			ResultPrinter printer = _esql.executeQueryAndWriteResult(query, format, Paths.get(file));
+			out.append(String.format("exported %d rows to %s in %.1f ms%n", printer.getRows(), file, printer.getNanos() / 1e6));
+		}catch(IOException e){
+			throw new SQLException("Failed to write " + file + ": " + e.getMessage(), "58030", e);
+		}
+	}
+
+	private static void appendRows(List<List<String>> rows, StringBuilder out) {
+		for (List<String> row : rows) {
+			out.append(String.join("\t", row)).append('\n');
+		}
+	}
+
+	private static void expect(Command command, int count) {
+		if (command.args.length != count) {
+			throw new IllegalArgumentException("takes " + count + " arguments, got " + command.args.length);
+		}
+	}
+
+	/*
+	 * Splits a line on whitespace, keeping double quoted arguments together.
+	 */
+	static List<String> tokenize(String line) {
+		List<String> tokens = new ArrayList<String>();
+		StringBuilder token = new StringBuilder();
+		boolean quoted = false, inToken = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+				inToken = true;
+			} else if (Character.isWhitespace(c) && !quoted) {
+				if (inToken) {
+					tokens.add(token.toString());
+					token.setLength(0);
+					inToken = false;
+				}
+			} else {
+				token.append(c);
+				inToken = true;
+			}
+		}//end for
+		if (inToken) tokens.add(token.toString());
+		return tokens;
+	}//end tokenize
+
+}//end ScriptRunner
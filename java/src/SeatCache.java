@@ -0,0 +1,306 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches, per flight, the departure date, the plane and its
+ * capacity together with the number of seats sold, so the number of
+ * available seats is answered from memory. Capacities only change with the
+ * plane, while num_sold is re-read once it is older than the sold TTL to pick
+ * up bookings made by other processes. The cache holds a bounded number of
+ * flights and evicts the least recently used one.
+ *
+ * Writes made by this process invalidate the flights they touch, once when
+ * they happen and again when their transaction ends, so a value read while
+ * the write was uncommitted never stays in the cache. Lookups made inside a
+ * transaction bypass the cache for the flights and planes the transaction
+ * wrote, since they have to see its uncommitted rows; other flights are
+ * answered from the cache as usual.
+ *
+ */
+
+public class SeatCache{
+	static final String FLIGHT_SEATS =
+		"SELECT F.actual_departure_date, F.num_sold, FI.plane_id, P.seats " +
+		"FROM Flight F LEFT JOIN FlightInfo FI ON FI.flight_id = F.fnum LEFT JOIN Plane P ON P.id = FI.plane_id " +
+		"WHERE F.fnum = ? LIMIT 1;";
+	static final String SEATS_SOLD = "SELECT num_sold FROM Flight WHERE fnum = ?;";
+
+	private final DBproject _esql;
+	private final int _maxSize;
+	private final long _soldTtlNanos;
+	private final LinkedHashMap<Integer, Entry> _entries;
+
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _misses = new AtomicLong();
+	private final AtomicLong _refreshes = new AtomicLong();
+	private final AtomicLong _evictions = new AtomicLong();
+	private final AtomicLong _invalidations = new AtomicLong();
+	//bumped by every invalidation, a load that raced with one is not kept
+	private final AtomicLong _epoch = new AtomicLong();
+	//flights and planes written by the transaction running on the thread
+	private final ThreadLocal<Written> _written = new ThreadLocal<Written>();
+
+	/**
+	 * @param esql the database the flights are read from
+	 * @param maxSize number of flights kept, 0 disables the cache
+	 * @param soldTtlMillis how long a num_sold value is used before it is re-read
+	 */
+	public SeatCache(DBproject esql, final int maxSize, long soldTtlMillis) {
+		this._esql = esql;
+		this._maxSize = Math.max(0, maxSize);
+		this._soldTtlNanos = soldTtlMillis * 1000000L;
+		this._entries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+				if (size() > _maxSize) {
+					_evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/*
+	 * What is known about one flight.
+	 */
+	private static class Entry{
+		final LocalDate departure;
+		final int planeID;	// -1 when the flight has no plane
+		final int capacity;
+		volatile int sold;
+		volatile long soldReadAt;
+
+		Entry(LocalDate departure, int planeID, int capacity, int sold, long soldReadAt) {
+			this.departure = departure;
+			this.planeID = planeID;
+			this.capacity = capacity;
+			this.sold = sold;
+			this.soldReadAt = soldReadAt;
+		}
+	}
+
+	private static class Written{
+		final Set<Integer> flights = new HashSet<Integer>();
+		final Set<Integer> planes = new HashSet<Integer>();
+	}
+
+	/**
+	 * Method to find the number of available seats on a flight, i.e. the
+	 * capacity of its plane minus the seats sold.
+	 *
+	 * @param flightNumber fnum of the flight
+	 * @param departure departure date of the flight, a time of day may follow
+	 * @return the number of available seats
+	 * @throws java.sql.SQLException when no such flight departs on that date
+	 */
+	public int availableSeats(int flightNumber, String departure) throws SQLException {
+		LocalDate date = parseDate(departure);
+		Written written = _esql.inTransaction() ? _written.get() : null;
+		if (date == null || _maxSize == 0 || (written != null && written.flights.contains(flightNumber))) {
+			// let the database interpret the date, or see the rows of the transaction
+			return _esql.queryAvailableSeats(flightNumber, departure);
+		}
+
+		Entry entry;
+		synchronized (_entries) {
+			entry = _entries.get(flightNumber);
+		}
+		if (entry == null) {
+			_misses.incrementAndGet();
+			entry = load(flightNumber);
+			if (entry == null) {
+				throw new SQLException("Flight " + flightNumber + " does not depart on " + departure, "02000");
+			}
+		} else if (System.nanoTime() - entry.soldReadAt > _soldTtlNanos) {
+			_refreshes.incrementAndGet();
+			refreshSold(flightNumber, entry);
+		} else {
+			_hits.incrementAndGet();
+		}
+
+		if (written != null && written.planes.contains(entry.planeID)) {
+			return _esql.queryAvailableSeats(flightNumber, departure);
+		}
+		if (!entry.departure.equals(date)) {
+			throw new SQLException("Flight " + flightNumber + " does not depart on " + departure, "02000");
+		}
+		if (entry.planeID < 0) {
+			throw new SQLException("Flight " + flightNumber + " has no plane assigned", "02000");
+		}
+		return entry.capacity - entry.sold;
+	}//end availableSeats
+
+	private Entry load(int flightNumber) throws SQLException {
+		long epoch = _epoch.get();
+		long readAt = System.nanoTime();
+		List<List<String>> rows = _esql.executeQueryAndReturnResult(FLIGHT_SEATS, flightNumber);
+		if (rows.isEmpty()) return null;
+
+		List<String> row = rows.get(0);
+		boolean hasPlane = row.get(2) != null && row.get(3) != null;
+		Entry entry = new Entry(LocalDate.parse(row.get(0)),
+			hasPlane ? Integer.parseInt(row.get(2)) : -1,
+			hasPlane ? Integer.parseInt(row.get(3)) : 0,
+			Integer.parseInt(row.get(1)), readAt);
+		synchronized (_entries) {
+			if (_epoch.get() == epoch) {
+				_entries.put(flightNumber, entry);
+			}
+		}
+		return entry;
+	}
+
+	private void refreshSold(int flightNumber, Entry entry) throws SQLException {
+		long readAt = System.nanoTime();
+		List<List<String>> rows = _esql.executeQueryAndReturnResult(SEATS_SOLD, flightNumber);
+		if (rows.isEmpty()) {
+			invalidate(flightNumber);
+			throw new SQLException("Flight " + flightNumber + " does not exist", "02000");
+		}
+		entry.sold = Integer.parseInt(rows.get(0).get(0));
+		entry.soldReadAt = readAt;
+	}
+
+	/*
+	 * Reads the leading YYYY-MM-DD of the departure, or returns null when the
+	 * value is written some other way.
+	 */
+	private static LocalDate parseDate(String departure) {
+		String trimmed = departure.trim();
+		if (trimmed.length() < 10) return null;
+		if (trimmed.length() > 10 && trimmed.charAt(10) != ' ' && trimmed.charAt(10) != 'T') return null;
+		try{
+			return LocalDate.parse(trimmed.substring(0, 10));
+		}catch(DateTimeParseException e){
+			return null;
+		}
+	}
+
+	/**
+	 * Method to drop a flight whose Flight or FlightInfo row was written.
+	 *
+	 * @param flightNumber fnum of the flight
+	 */
+	public void invalidate(final int flightNumber) {
+		remove(flightNumber);
+		if (_esql.inTransaction()) written().flights.add(flightNumber);
+		_esql.afterTransaction(() -> {
+			_written.remove();
+			remove(flightNumber);
+		});
+	}
+
+	/**
+	 * Method to drop every flight flown by a plane whose row was written.
+	 *
+	 * @param planeID id of the plane
+	 */
+	public void invalidatePlane(final int planeID) {
+		removePlane(planeID);
+		if (_esql.inTransaction()) written().planes.add(planeID);
+		_esql.afterTransaction(() -> {
+			_written.remove();
+			removePlane(planeID);
+		});
+	}
+
+	private Written written() {
+		Written written = _written.get();
+		if (written == null) {
+			written = new Written();
+			_written.set(written);
+		}
+		return written;
+	}
+
+	/**
+	 * Method to drop every cached flight, for example after a bulk load.
+	 */
+	public void clear() {
+		synchronized (_entries) {
+			_epoch.incrementAndGet();
+			_invalidations.addAndGet(_entries.size());
+			_entries.clear();
+		}
+	}
+
+	private void remove(int flightNumber) {
+		synchronized (_entries) {
+			_epoch.incrementAndGet();
+			if (_entries.remove(flightNumber) != null) {
+				_invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	private void removePlane(int planeID) {
+		synchronized (_entries) {
+			_epoch.incrementAndGet();
+			Iterator<Entry> it = _entries.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().planeID == planeID) {
+					it.remove();
+					_invalidations.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	public long getHits() {
+		return _hits.get();
+	}
+
+	public long getMisses() {
+		return _misses.get();
+	}
+
+	public long getRefreshes() {
+		return _refreshes.get();
+	}
+
+	public long getEvictions() {
+		return _evictions.get();
+	}
+
+	public long getInvalidations() {
+		return _invalidations.get();
+	}
+
+	public int size() {
+		synchronized (_entries) {
+			return _entries.size();
+		}
+	}
+
+	/**
+	 * @return the counters on one line
+	 */
+	public String toString() {
+		long lookups = getHits() + getMisses() + getRefreshes();
+		return String.format("seat cache: %d flights, %d hits, %d misses, %d refreshes (%.1f%% hit rate), %d evictions, %d invalidations",
+			size(), getHits(), getMisses(), getRefreshes(), lookups == 0 ? 0 : getHits() * 100.0 / lookups,
+			getEvictions(), getInvalidations());
+	}
+
+}//end SeatCache
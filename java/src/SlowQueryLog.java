@@ -0,0 +1,322 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class logs statements that took longer than a threshold, with their
+ * SQL shape, bind values, row count and elapsed time. For the first few slow
+ * calls of every shape the plan is captured and logged with it. Reads are
+ * run again under EXPLAIN (ANALYZE, BUFFERS) in a read-only transaction
+ * that is rolled back. Writes, and reads calling a function that writes
+ * (nextval() for IdAllocator, book_flight()), are only planned with EXPLAIN,
+ * so sequences are not advanced and no rows are locked by the capture.
+ *
+ * Callers only put an entry on a bounded queue; a background thread
+ * captures the plans and writes the log, rotating the file once it reaches
+ * its size limit. Entries are dropped and counted when the queue is full,
+ * so a slow disk or database never blocks the caller.
+ *
+ * Bind values are redacted according to the redaction mode:
+ *   none     values are logged as they are
+ *   strings  numbers are logged, strings and other values are masked (default)
+ *   all      only the type of each value is logged
+ *
+ */
+
+public class SlowQueryLog{
+	private static final int QUEUE_SIZE = 10000;
+	//statements that may be explained, utility commands are only logged
+	private static final String EXPLAINABLE = "(?is)\\s*(SELECT|INSERT|UPDATE|DELETE|WITH|VALUES)\\b.*";
+	//statements that write, including through a WITH clause, are not run to capture their plan
+	private static final String WRITES = "(?is).*\\b(INSERT\\s+INTO|UPDATE\\s+\\w+(\\s+\\w+)?\\s+SET|DELETE\\s+FROM)\\b.*";
+	//SQLSTATE of read_only_sql_transaction, raised by reads calling a function that writes
+	private static final String READ_ONLY_TRANSACTION = "25006";
+
+	private final DBproject _esql;
+	private final long _thresholdNanos;
+	private final String _redact;
+	private final int _explainsPerShape;
+	private final File _file;
+	private final long _maxBytes;
+	private final int _maxFiles;
+
+	private final BlockingQueue<Entry> _queue = new ArrayBlockingQueue<Entry>(QUEUE_SIZE);
+	private final Map<String, AtomicInteger> _explained = new ConcurrentHashMap<String, AtomicInteger>();
+	private final AtomicLong _logged = new AtomicLong();
+	private final AtomicLong _dropped = new AtomicLong();
+	private final Thread _writer;
+	private volatile boolean _closed = false;
+
+	/**
+	 * @param esql the database plans are captured on
+	 * @param thresholdMillis statements taking longer are logged, negative disables the log
+	 * @param redact none, strings or all
+	 * @param explainsPerShape slow calls per SQL shape whose plan is captured
+	 * @param file the log file
+	 * @param maxBytes size at which the file is rotated
+	 * @param maxFiles rotated files kept, as file.1 to file.maxFiles
+	 */
+	public SlowQueryLog(DBproject esql, long thresholdMillis, String redact, int explainsPerShape,
+			File file, long maxBytes, int maxFiles) {
+		if (!redact.equals("none") && !redact.equals("strings") && !redact.equals("all")) {
+			throw new IllegalArgumentException("Invalid redaction mode: " + redact);
+		}
+		this._esql = esql;
+		this._thresholdNanos = thresholdMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this._redact = redact;
+		this._explainsPerShape = explainsPerShape;
+		this._file = file;
+		this._maxBytes = maxBytes;
+		this._maxFiles = Math.max(1, maxFiles);
+
+		_writer = new Thread(this::drain, "slow-query-log");
+		_writer.setDaemon(true);
+		if (thresholdMillis >= 0) {
+			_writer.start();
+		}
+	}
+
+	/*
+	 * A slow statement waiting to be written.
+	 */
+	private static class Entry{
+		final LocalDateTime at;
+		final String sql;
+		final Object[] params;	// null unless the plan is captured
+		final String values;
+		final long rows;
+		final long nanos;
+		final boolean failed;
+
+		Entry(LocalDateTime at, String sql, Object[] params, String values, long rows, long nanos, boolean failed) {
+			this.at = at;
+			this.sql = sql;
+			this.params = params;
+			this.values = values;
+			this.rows = rows;
+			this.nanos = nanos;
+			this.failed = failed;
+		}
+	}
+
+	/**
+	 * Method to report a finished statement. Only a comparison is made when
+	 * the statement was fast.
+	 *
+	 * @param sql the SQL string with ? placeholders
+	 * @param params the bound values
+	 * @param rows rows returned or affected
+	 * @param nanos how long the statement took
+	 * @param failed true when the statement threw
+	 */
+	public void record(String sql, Object[] params, long rows, long nanos, boolean failed) {
+		if (nanos < _thresholdNanos || _closed) return;
+
+		Object[] explain = null;
+		if (!failed && sql.matches(EXPLAINABLE)) {
+			AtomicInteger count = _explained.computeIfAbsent(sql, s -> new AtomicInteger());
+			if (count.getAndIncrement() < _explainsPerShape) {
+				explain = params.clone();
+			}
+		}
+		Entry entry = new Entry(LocalDateTime.now(), sql, explain, redact(params), rows, nanos, failed);
+		if (!_queue.offer(entry)) {
+			_dropped.incrementAndGet();
+		}
+	}
+
+	private String redact(Object[] params) {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < params.length; i++) {
+			if (i > 0) sb.append(", ");
+			Object value = params[i];
+			if (value == null) {
+				sb.append("null");
+			} else if (_redact.equals("all")) {
+				sb.append('<').append(value.getClass().getSimpleName()).append('>');
+			} else if (value instanceof Number || value instanceof Boolean) {
+				sb.append(value);
+			} else if (_redact.equals("none")) {
+				sb.append('\'').append(value).append('\'');
+			} else {
+				sb.append("'***'");
+			}
+		}//end for
+		return sb.append(']').toString();
+	}
+
+	/*
+	 * Writes queued entries until the log is closed and the queue is empty.
+	 */
+	private void drain() {
+		Writer out = null;
+		long size = _file.length();
+		try{
+			while (!_closed || !_queue.isEmpty()) {
+				Entry entry = _queue.poll(200, TimeUnit.MILLISECONDS);
+				if (entry == null) {
+					if (out != null) out.flush();
+					continue;
+				}
+				if (out == null || size >= _maxBytes) {
+					if (out != null) {
+						out.close();
+						rotate();
+					}
+					out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(_file, true), StandardCharsets.UTF_8));
+					size = _file.length();
+				}
+				String text = format(entry);
+				out.write(text);
+				size += text.getBytes(StandardCharsets.UTF_8).length;
+				_logged.incrementAndGet();
+			}//end while
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}catch(IOException e){
+			System.err.println("Slow query log stopped: " + e.getMessage());
+		}finally{
+			try{
+				if (out != null) out.close();
+			}catch(IOException e){
+				// ignored.
+			}
+		}
+	}//end drain
+
+	private void rotate() {
+		new File(_file.getPath() + "." + _maxFiles).delete();
+		for (int i = _maxFiles - 1; i >= 1; i--) {
+			File from = new File(_file.getPath() + "." + i);
+			if (from.exists()) from.renameTo(new File(_file.getPath() + "." + (i + 1)));
+		}
+		_file.renameTo(new File(_file.getPath() + ".1"));
+	}
+
+	private String format(Entry entry) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(entry.at).append(String.format(" %.3f ms", entry.nanos / 1e6))
+			.append(" rows=").append(entry.rows)
+			.append(entry.failed ? " FAILED" : "")
+			.append(" sql=").append(entry.sql.replaceAll("\\s+", " "))
+			.append(" params=").append(entry.values).append('\n');
+		if (entry.params != null) {
+			sb.append(explain(entry.sql, entry.params));
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Captures the plan on a connection of its own and rolls back. A read
+	 * runs under EXPLAIN (ANALYZE, BUFFERS) in a read-only transaction, and
+	 * falls back to EXPLAIN when it turns out to write; a write is only
+	 * planned. Time and lock waits are bounded so a capture never holds
+	 * rows for long.
+	 */
+	private String explain(String sql, Object[] params) {
+		StringBuilder plan = new StringBuilder();
+		ConnectionPool.PooledConnection pc = null;
+		try{
+			pc = _esql.borrowConnection();
+			Connection connection = pc.getConnection();
+			connection.setAutoCommit(false);
+			boolean analyze = !sql.matches(WRITES);
+			begin(connection, analyze);
+			try{
+				plan(connection, analyze ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ", sql, params, plan);
+			}catch(SQLException e){
+				if (!analyze || !READ_ONLY_TRANSACTION.equals(e.getSQLState())) throw e;
+				connection.rollback();
+				plan.setLength(0);
+				begin(connection, false);
+				plan(connection, "EXPLAIN ", sql, params, plan);
+			}
+		}catch(SQLException e){
+			plan.append("    plan not captured: ").append(e.getMessage()).append('\n');
+			if (pc != null) pc.checkBroken(e);
+		}finally{
+			if (pc != null) _esql.releaseConnection(pc);	// rolls the capture back
+		}
+		return plan.toString();
+	}//end explain
+
+	private void begin(Connection connection, boolean readOnly) throws SQLException {
+		try (Statement settings = connection.createStatement()) {
+			if (readOnly) settings.execute("SET TRANSACTION READ ONLY");
+			long timeout = Math.max(1000, 10 * TimeUnit.NANOSECONDS.toMillis(_thresholdNanos));
+			settings.execute("SET LOCAL statement_timeout = " + timeout);
+			settings.execute("SET LOCAL lock_timeout = 1000");
+		}
+	}
+
+	private static void plan(Connection connection, String explain, String sql, Object[] params, StringBuilder plan)
+			throws SQLException {
+		try (PreparedStatement stmt = connection.prepareStatement(explain + sql)) {
+			DBproject.bind(stmt, params);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					plan.append("    ").append(rs.getString(1)).append('\n');
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of entries written
+	 */
+	public long getLogged() {
+		return _logged.get();
+	}
+
+	/**
+	 * @return number of entries dropped because the queue was full
+	 */
+	public long getDropped() {
+		return _dropped.get();
+	}
+
+	/**
+	 * Method to write the queued entries and stop the writer thread.
+	 */
+	public void close() {
+		_closed = true;
+		if (_writer.isAlive()) {
+			try{
+				_writer.join(TimeUnit.SECONDS.toMillis(10));
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}//end SlowQueryLog
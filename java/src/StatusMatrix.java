@@ -0,0 +1,324 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+/**
+ * This class counts the waitlisted, reserved and confirmed passengers of
+ * every flight, or of the flights departing between two dates, with one
+ * read of Reservation instead of one COUNT(*) per flight and status.
+ *
+ * The rows are read by one cursor into blocks of primitive arrays. Each
+ * full block is counted on a ForkJoinPool while the next one is read, into
+ * per-flight counters indexed by fnum; there is one set of counters per
+ * worker busy at a time, so no counter is shared. When the read is done
+ * the counters are summed in parallel over ranges of flight numbers.
+ * The flights themselves are read first, so a flight without reservations
+ * is reported with zero passengers.
+ *
+ */
+
+public class StatusMatrix{
+	static final String ALL_RESERVATIONS = "SELECT fid, status FROM Reservation;";
+	static final String RESERVATIONS_BETWEEN =
+		"SELECT R.fid, R.status FROM Reservation R JOIN Flight F ON F.fnum = R.fid " +
+		"WHERE F.actual_departure_date BETWEEN CAST(? AS DATE) AND CAST(? AS DATE);";
+	static final String ALL_FLIGHTS = "SELECT fnum FROM Flight;";
+	static final String FLIGHTS_BETWEEN =
+		"SELECT fnum FROM Flight WHERE actual_departure_date BETWEEN CAST(? AS DATE) AND CAST(? AS DATE);";
+
+	public static final String BY_FNUM = "fnum";
+	public static final String BY_WAITLISTED = "waitlisted";
+	public static final String BY_RESERVED = "reserved";
+	public static final String BY_CONFIRMED = "confirmed";
+
+	private static final int WAITLISTED = 0;
+	private static final int RESERVED = 1;
+	private static final int CONFIRMED = 2;
+	private static final int BLOCK_SIZE = 1 << 16;
+	//rows counted, or flight numbers summed, by one task before it splits
+	private static final int LEAF_SIZE = 1 << 14;
+
+	private final DBproject _esql;
+	private final ForkJoinPool _pool;
+
+	/**
+	 * @param esql the database reservations are read from
+	 * @param pool the pool counting the blocks
+	 */
+	public StatusMatrix(DBproject esql, ForkJoinPool pool) {
+		this._esql = esql;
+		this._pool = pool;
+	}
+
+	/*
+	 * Reservations read by the cursor and not counted yet.
+	 */
+	private static class Block{
+		final int[] fids = new int[BLOCK_SIZE];
+		final byte[] statuses = new byte[BLOCK_SIZE];
+		int size = 0;
+	}
+
+	/*
+	 * Passengers per flight and status, grown to the largest fnum seen.
+	 */
+	private static class Counters{
+		int[][] counts = {new int[1024], new int[1024], new int[1024]};
+
+		void add(int fid, byte status) {
+			if (fid >= counts[0].length) {
+				int length = Math.max(fid + 1, counts[0].length * 2);
+				for (int s = 0; s < 3; s++) counts[s] = Arrays.copyOf(counts[s], length);
+			}
+			counts[status][fid]++;
+		}
+	}
+
+	/*
+	 * Counts a range of a block, splitting it while it is large. A leaf
+	 * takes counters from the free list and gives them back when done.
+	 */
+	private static class CountTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+
+		final Block block;
+		final int from, to;
+		final Queue<Counters> free;
+		final Semaphore inFlight;	// released by the task covering the whole block
+
+		CountTask(Block block, int from, int to, Queue<Counters> free, Semaphore inFlight) {
+			this.block = block;
+			this.from = from;
+			this.to = to;
+			this.free = free;
+			this.inFlight = inFlight;
+		}
+
+		protected void compute() {
+			try{
+				if (to - from > LEAF_SIZE) {
+					int mid = (from + to) >>> 1;
+					invokeAll(new CountTask(block, from, mid, free, null), new CountTask(block, mid, to, free, null));
+					return;
+				}
+				Counters counters = free.poll();
+				if (counters == null) counters = new Counters();
+				try{
+					for (int i = from; i < to; i++) {
+						if (block.statuses[i] >= 0) counters.add(block.fids[i], block.statuses[i]);
+					}
+				}finally{
+					free.offer(counters);
+				}
+			}finally{
+				if (inFlight != null) inFlight.release();
+			}
+		}
+	}//end CountTask
+
+	/*
+	 * Sums the counters of every worker over a range of flight numbers.
+	 */
+	private static class SumTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+
+		final List<Counters> parts;
+		final int[][] total;
+		final int from, to;
+
+		SumTask(List<Counters> parts, int[][] total, int from, int to) {
+			this.parts = parts;
+			this.total = total;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > LEAF_SIZE) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new SumTask(parts, total, from, mid), new SumTask(parts, total, mid, to));
+				return;
+			}
+			for (Counters part : parts) {
+				for (int s = 0; s < 3; s++) {
+					int[] counts = part.counts[s];
+					for (int f = from; f < Math.min(to, counts.length); f++) {
+						total[s][f] += counts[f];
+					}
+				}
+			}
+		}
+	}//end SumTask
+
+	/**
+	 * The passengers per status of every flight counted, in parallel arrays
+	 * ordered by fnum.
+	 */
+	public static class Matrix{
+		public final int[] fnum;
+		public final int[] waitlisted;
+		public final int[] reserved;
+		public final int[] confirmed;
+		public final long totalWaitlisted;
+		public final long totalReserved;
+		public final long totalConfirmed;
+
+		/*
+		 * Takes the counters indexed by fnum, each as long as the largest
+		 * fnum counted, and the flights to report even without passengers.
+		 */
+		Matrix(int[][] counts, BitSet flights) {
+			BitSet rows = (BitSet) flights.clone();
+			for (int f = 0; f < counts[0].length; f++) {
+				if (counts[WAITLISTED][f] + counts[RESERVED][f] + counts[CONFIRMED][f] > 0) rows.set(f);
+			}
+			int size = rows.cardinality();
+			fnum = new int[size];
+			waitlisted = new int[size];
+			reserved = new int[size];
+			confirmed = new int[size];
+			long w = 0, r = 0, c = 0;
+			for (int f = rows.nextSetBit(0), i = 0; f >= 0; f = rows.nextSetBit(f + 1), i++) {
+				fnum[i] = f;
+				if (f >= counts[0].length) continue;
+				w += waitlisted[i] = counts[WAITLISTED][f];
+				r += reserved[i] = counts[RESERVED][f];
+				c += confirmed[i] = counts[CONFIRMED][f];
+			}
+			totalWaitlisted = w;
+			totalReserved = r;
+			totalConfirmed = c;
+		}
+
+		public int size() {
+			return fnum.length;
+		}
+
+		/**
+		 * Method to pick the flights with at least minWaitlisted waitlisted
+		 * passengers, ordered by fnum or by one status in descending order
+		 * with ties by fnum.
+		 *
+		 * @param orderBy fnum, waitlisted, reserved or confirmed
+		 * @param limit most flights returned
+		 * @return indexes into the arrays
+		 */
+		public int[] select(int minWaitlisted, String orderBy, int limit) {
+			int[] column;
+			switch (orderBy) {
+				case BY_FNUM: column = null; break;
+				case BY_WAITLISTED: column = waitlisted; break;
+				case BY_RESERVED: column = reserved; break;
+				case BY_CONFIRMED: column = confirmed; break;
+				default: throw new IllegalArgumentException("Order by fnum, waitlisted, reserved or confirmed. ");
+			}
+			// the count in the high bits, inverted to sort descending, and the index in the low bits
+			long[] keys = new long[size()];
+			int n = 0;
+			for (int i = 0; i < size(); i++) {
+				if (waitlisted[i] < minWaitlisted) continue;
+				keys[n++] = column == null ? i : ((long) (Integer.MAX_VALUE - column[i]) << 32) | i;
+			}
+			if (column != null) Arrays.parallelSort(keys, 0, n);
+			int[] rows = new int[Math.min(n, limit)];
+			for (int i = 0; i < rows.length; i++) rows[i] = (int) keys[i];
+			return rows;
+		}
+
+		public String toString(int row) {
+			return fnum[row] + "\t" + waitlisted[row] + "\t" + reserved[row] + "\t" + confirmed[row];
+		}
+	}//end Matrix
+
+	/**
+	 * Method to count the passengers per status of every flight.
+	 *
+	 * @param fromDate first departure date, YYYY-MM-DD, or null for all flights
+	 * @param toDate last departure date, YYYY-MM-DD
+	 * @return the counts of every flight, zero for those without reservations
+	 * @throws java.sql.SQLException when the flights or reservations cannot be read
+	 */
+	public Matrix compute(String fromDate, String toDate) throws SQLException {
+		final Object[] params = fromDate == null ? new Object[0] : new Object[] {fromDate, toDate};
+		final BitSet listed = new BitSet();
+		_esql.streamQuery(fromDate == null ? ALL_FLIGHTS : FLIGHTS_BETWEEN, DBproject.DEFAULT_FETCH_SIZE * 10, row -> {
+			int fnum = row.getInt(1);
+			if (fnum >= 0) listed.set(fnum);
+		}, params);
+
+		final Queue<Counters> free = new ConcurrentLinkedQueue<Counters>();
+		final List<ForkJoinTask<Void>> tasks = new ArrayList<ForkJoinTask<Void>>();
+		// at most two blocks per worker wait to be counted, so the reader cannot run ahead
+		final Semaphore inFlight = new Semaphore(2 * _pool.getParallelism());
+		final Block[] current = {new Block()};
+		try{
+			_esql.streamQuery(fromDate == null ? ALL_RESERVATIONS : RESERVATIONS_BETWEEN, DBproject.DEFAULT_FETCH_SIZE * 10, row -> {
+				int fid = row.getInt(1);
+				// the counters are indexed by fnum
+				if (fid < 0) throw new SQLException("Reservation of negative flight number " + fid, "22003");
+				Block block = current[0];
+				block.fids[block.size] = fid;
+				block.statuses[block.size++] = status(row.getString(2));
+				if (block.size == BLOCK_SIZE) {
+					submit(block, free, inFlight, tasks);
+					current[0] = new Block();
+				}
+			}, params);
+			submit(current[0], free, inFlight, tasks);
+		}finally{
+			// a failed read still waits for the blocks already submitted
+			for (ForkJoinTask<Void> task : tasks) task.quietlyJoin();
+		}
+		for (ForkJoinTask<Void> task : tasks) task.join();
+
+		List<Counters> parts = new ArrayList<Counters>(free);
+		int flights = 0;
+		for (Counters part : parts) flights = Math.max(flights, part.counts[0].length);
+		int[][] total = new int[3][flights];
+		_pool.invoke(new SumTask(parts, total, 0, flights));
+		return new Matrix(total, listed);
+	}//end compute
+
+	private void submit(Block block, Queue<Counters> free, Semaphore inFlight, List<ForkJoinTask<Void>> tasks) throws SQLException {
+		if (block.size == 0) return;
+		try{
+			inFlight.acquire();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while counting reservations", "57014", e);
+		}
+		tasks.add(_pool.submit(new CountTask(block, 0, block.size, free, inFlight)));
+	}
+
+	private static byte status(String status) {
+		if (status == null || status.isEmpty()) return -1;
+		switch (status.charAt(0)) {
+			case 'W': return WAITLISTED;
+			case 'R': return RESERVED;
+			case 'C': return CONFIRMED;
+			default: return -1;
+		}
+	}
+
+}//end StatusMatrix
@@ -0,0 +1,226 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class moves waitlisted reservations to reserved when their flight
+ * has seats again, for example after a larger plane was assigned in
+ * FlightInfo, Plane.seats was raised or num_sold went down. The waitlist of
+ * a flight is first come, first served: its reservations are promoted in
+ * rnum order, read through the partial index reservation_waitlist_idx.
+ *
+ * A run finds the flights with a waitlist and a seat left with one query,
+ * then promotes them in batches of about batchSize reservations. Each batch
+ * is one transaction that locks the rows of its flights in fnum order,
+ * reads their seats left again, and promotes and counts the seats with one
+ * statement. Only the Flight rows of the batch are locked, so bookings of
+ * other flights are not held up, and a booking of a flight in the batch
+ * waits for the batch and then sees the seats it took. Flights with more
+ * waitlisted reservations than a batch are finished by the next rounds of
+ * the same run.
+ *
+ * Runs happen on demand through promote() or every few seconds on a
+ * background thread started by start().
+ *
+ */
+
+public class WaitlistPromoter{
+	//flights with waitlisted reservations and a seat left, as (fnum, seats left, waitlisted)
+	static final String FREED_FLIGHTS =
+		"SELECT F.fnum, MIN(P.seats) - F.num_sold, W.waiting " +
+		"FROM (SELECT fid, COUNT(*) AS waiting FROM Reservation WHERE status = 'W' GROUP BY fid) W " +
+		"JOIN Flight F ON F.fnum = W.fid JOIN FlightInfo FI ON FI.flight_id = F.fnum JOIN Plane P ON P.id = FI.plane_id " +
+		"GROUP BY F.fnum, F.num_sold, W.waiting HAVING F.num_sold < MIN(P.seats) ORDER BY F.fnum;";
+	//locks the flights of a batch and returns (fnum, seats left) for every plane assigned
+	static final String LOCK_FLIGHTS =
+		"SELECT F.fnum, P.seats - F.num_sold FROM Flight F JOIN FlightInfo FI ON FI.flight_id = F.fnum " +
+		"JOIN Plane P ON P.id = FI.plane_id WHERE F.fnum = ANY(CAST(? AS INTEGER[])) ORDER BY F.fnum FOR UPDATE OF F;";
+	//promotes the first n waitlisted reservations of each flight and takes their seats, returns (fnum, promoted)
+	static final String PROMOTE =
+		"WITH promoted AS (" +
+		"UPDATE Reservation R SET status = 'R' FROM (" +
+		"SELECT W.rnum FROM unnest(CAST(? AS INTEGER[]), CAST(? AS INTEGER[])) AS S(fnum, n) CROSS JOIN LATERAL " +
+		"(SELECT rnum FROM Reservation WHERE fid = S.fnum AND status = 'W' ORDER BY rnum LIMIT S.n) W) P " +
+		"WHERE R.rnum = P.rnum AND R.status = 'W' RETURNING R.fid) " +
+		"UPDATE Flight F SET num_sold = F.num_sold + C.promoted " +
+		"FROM (SELECT fid, COUNT(*) AS promoted FROM promoted GROUP BY fid) C WHERE F.fnum = C.fid " +
+		"RETURNING F.fnum, C.promoted;";
+
+	private final DBproject _esql;
+	private final int _batchSize;
+	private ScheduledExecutorService _scheduler = null;
+
+	/**
+	 * @param esql the database reservations are promoted in
+	 * @param batchSize reservations promoted per transaction
+	 */
+	public WaitlistPromoter(DBproject esql, int batchSize) {
+		this._esql = esql;
+		this._batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * What a run did.
+	 */
+	public static class Promotion{
+		public final int flights;
+		public final long promoted;
+		public final int batches;
+
+		Promotion(int flights, long promoted, int batches) {
+			this.flights = flights;
+			this.promoted = promoted;
+			this.batches = batches;
+		}
+
+		public String toString() {
+			return promoted + " reservations promoted on " + flights + " flights in " + batches + " batches";
+		}
+	}
+
+	/**
+	 * Method to promote the waitlisted reservations of every flight with
+	 * seats left, until no such flight remains.
+	 *
+	 * @return the number of flights and reservations promoted
+	 * @throws java.sql.SQLException when a batch failed; the batches before it stay committed
+	 */
+	public synchronized Promotion promote() throws SQLException {
+		Set<Integer> flights = new HashSet<Integer>();
+		long promoted = 0;
+		int batches = 0;
+		while (true) {
+			List<List<String>> freed = _esql.executeQueryAndReturnResult(FREED_FLIGHTS);
+			if (freed.isEmpty()) break;
+
+			long round = 0;
+			List<int[]> batch = new ArrayList<int[]>();
+			int reservations = 0;
+			for (List<String> row : freed) {
+				int fnum = Integer.parseInt(row.get(0));
+				long wanted = Math.min(Long.parseLong(row.get(1)), Long.parseLong(row.get(2)));
+				// a long waitlist is split over rounds, so no batch grows past batchSize
+				int n = (int) Math.min(wanted, _batchSize);
+				batch.add(new int[] {fnum, n});
+				reservations += n;
+				if (reservations >= _batchSize) {
+					round += promoteBatch(batch, flights);
+					batches++;
+					batch.clear();
+					reservations = 0;
+				}
+			}
+			if (!batch.isEmpty()) {
+				round += promoteBatch(batch, flights);
+				batches++;
+			}
+			promoted += round;
+			// the flights found were filled by bookings in the meantime
+			if (round == 0) break;
+		}//end while
+		return new Promotion(flights.size(), promoted, batches);
+	}//end promote
+
+	/*
+	 * Promotes up to n reservations of each (fnum, n) in one transaction,
+	 * limited to the seats left once the flights are locked.
+	 */
+	private long promoteBatch(final List<int[]> batch, Set<Integer> flights) throws SQLException {
+		final StringBuilder fnums = new StringBuilder("{");
+		for (int i = 0; i < batch.size(); i++) {
+			if (i > 0) fnums.append(',');
+			fnums.append(batch.get(i)[0]);
+		}
+		fnums.append('}');
+
+		List<List<String>> result = _esql.executeInTransaction(esql -> {
+			// the smallest plane when several are assigned, as in FREED_FLIGHTS
+			Map<Integer, Integer> seatsLeft = new HashMap<Integer, Integer>();
+			for (List<String> row : esql.executeQueryAndReturnResult(LOCK_FLIGHTS, fnums.toString())) {
+				seatsLeft.merge(Integer.parseInt(row.get(0)), Integer.parseInt(row.get(1)), Math::min);
+			}
+			StringBuilder promote = new StringBuilder("{"), counts = new StringBuilder("{");
+			for (int[] flight : batch) {
+				int n = Math.min(flight[1], seatsLeft.getOrDefault(flight[0], 0));
+				if (n <= 0) continue;
+				if (promote.length() > 1) {
+					promote.append(',');
+					counts.append(',');
+				}
+				promote.append(flight[0]);
+				counts.append(n);
+			}
+			if (promote.length() == 1) return new ArrayList<List<String>>();
+			return esql.executeQueryAndReturnResult(PROMOTE, promote.append('}').toString(), counts.append('}').toString());
+		});
+
+		long promoted = 0;
+		for (List<String> row : result) {
+			int fnum = Integer.parseInt(row.get(0));
+			_esql.getSeatCache().invalidate(fnum);
+			flights.add(fnum);
+			promoted += Long.parseLong(row.get(1));
+		}
+		return promoted;
+	}//end promoteBatch
+
+	/**
+	 * Method to run promote() on a background thread every periodMillis.
+	 * Failed runs are reported on standard error and retried on the next
+	 * period.
+	 */
+	public synchronized void start(long periodMillis) {
+		if (_scheduler != null) return;
+		_scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "waitlist-promoter");
+			t.setDaemon(true);
+			return t;
+		});
+		_scheduler.scheduleWithFixedDelay(() -> {
+			try{
+				_esql.promoteWaitlists();
+			}catch(SQLException | RuntimeException e){
+				System.err.println("Waitlist promotion failed: " + e.getMessage());
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Method to stop the background thread, waiting for a run in progress.
+	 */
+	public void stop() {
+		ScheduledExecutorService scheduler;
+		synchronized (this) {
+			scheduler = _scheduler;
+			_scheduler = null;
+		}
+		if (scheduler == null) return;
+		scheduler.shutdown();
+		try{
+			scheduler.awaitTermination(30, TimeUnit.SECONDS);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}//end WaitlistPromoter
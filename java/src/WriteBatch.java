@@ -0,0 +1,83 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class queues write statements and executes them together in one
+ * transaction. Consecutive statements with the same SQL text are sent as a
+ * single JDBC batch, so a batch of N inserts into a few tables costs a few
+ * round trips instead of N. Either every statement is applied or none is.
+ *
+ */
+
+public class WriteBatch{
+	private final DBproject _esql;
+	private final List<String> _sql = new ArrayList<String>();
+	private final List<Object[]> _params = new ArrayList<Object[]>();
+
+	public WriteBatch(DBproject esql) {
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to queue a statement.
+	 *
+	 * @param sql the SQL string with ? placeholders
+	 * @param params the values bound to the placeholders, in order
+	 * @return this batch
+	 */
+	public WriteBatch add(String sql, Object... params) {
+		_sql.add(sql);
+		_params.add(params);
+		return this;
+	}
+
+	/**
+	 * @return number of queued statements
+	 */
+	public int size() {
+		return _sql.size();
+	}
+
+	/**
+	 * Method to execute the queued statements in queue order and clear the
+	 * queue.
+	 *
+	 * @return the update count of every statement, in queue order, or
+	 *         Statement.SUCCESS_NO_INFO where the driver does not report one
+	 * @throws java.sql.SQLException when a statement failed, nothing is applied in that case
+	 */
+	public int[] execute() throws SQLException {
+		final int[] counts = new int[_sql.size()];
+		_esql.executeInTransaction(esql -> {
+			int start = 0;
+			while (start < _sql.size()) {
+				// group the run of statements sharing this SQL text
+				int end = start + 1;
+				while (end < _sql.size() && _sql.get(end).equals(_sql.get(start))) end++;
+
+				int[] run = esql.executeBatch(_sql.get(start), _params.subList(start, end));
+				System.arraycopy(run, 0, counts, start, run.length);
+				start = end;
+			}//end while
+			return null;
+		});
+		_sql.clear();
+		_params.clear();
+		return counts;
+	}//end execute
+
+}//end WriteBatch
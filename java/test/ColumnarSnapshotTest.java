@@ -0,0 +1,165 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of the snapshot file round trip, written through the same column
+ * writers and assemble() that export() uses.
+ */
+
+public class ColumnarSnapshotTest{
+	@TempDir
+	File _dir;
+
+	private static final Object[][] FLIGHTS = {
+		{1, 100, 2, 0, day("2014-05-01"), day("2014-05-02"), "LAX", "JFK"},
+		{2, 50, 1, 1, day("2014-05-03"), null, "LAX", "JFK"},
+		{3, 200, 0, 0, day("2014-05-04"), day("2014-05-04"), "JFK", "SFO"},
+	};
+	private static final Object[][] RESERVATIONS = {
+		{1, 10, 1, "R"}, {2, 11, 1, "W"}, {3, 12, 2, "W"}, {4, 13, 2, "W"}, {5, 14, 3, "C"},
+	};
+	private static final Object[][] FLIGHT_INFO = {
+		{1, 1, 1, 7}, {2, 2, 1, 8}, {3, 3, 1, 7},
+	};
+	private static final Object[][] PLANES = {
+		{7, "Boeing", "737", 3, 100}, {8, "Airbus", "A320", 5, 150},
+	};
+	private static final Object[][] REPAIRS = {
+		{1, day("2010-03-01"), "MJ", 1, 7, 1}, {2, day("2010-06-01"), "MJ", 1, 7, 1}, {3, day("2011-01-01"), null, 1, 8, 1},
+	};
+
+	private static Integer day(String date) {
+		return Math.toIntExact(LocalDate.parse(date).toEpochDay());
+	}
+
+	/*
+	 * Writes one list of rows per table of ColumnarSnapshot.TABLES, in that
+	 * order; null stands for SQL NULL.
+	 */
+	private File write(Object[][]... tables) throws IOException {
+		List<List<ColumnarSnapshot.ColumnWriter>> writers = new ArrayList<List<ColumnarSnapshot.ColumnWriter>>();
+		long[] rows = new long[tables.length];
+		for (int t = 0; t < tables.length; t++) {
+			String[] names = (String[]) ColumnarSnapshot.TABLES[t][2];
+			byte[] types = (byte[]) ColumnarSnapshot.TABLES[t][3];
+			List<ColumnarSnapshot.ColumnWriter> columns = new ArrayList<ColumnarSnapshot.ColumnWriter>();
+			for (int c = 0; c < names.length; c++) {
+				columns.add(new ColumnarSnapshot.ColumnWriter(names[c], types[c], _dir));
+			}
+			for (Object[] row : tables[t]) {
+				for (int c = 0; c < types.length; c++) {
+					if (types[c] == ColumnarSnapshot.DICT) {
+						columns.get(c).writeText((String) row[c]);
+					} else {
+						columns.get(c).write(row[c] == null ? ColumnarSnapshot.NULL : (Integer) row[c]);
+					}
+				}
+			}
+			for (ColumnarSnapshot.ColumnWriter column : columns) column.close();
+			writers.add(columns);
+			rows[t] = tables[t].length;
+		}//end for
+
+		File file = new File(_dir, "snapshot.bin");
+		ColumnarSnapshot.assemble(file, writers, rows);
+		return file;
+	}
+
+	@Test
+	public void readsBackEveryValue() throws IOException {
+		try (ColumnarSnapshot snapshot = ColumnarSnapshot.open(write(FLIGHTS, RESERVATIONS, FLIGHT_INFO, PLANES, REPAIRS))) {
+			ColumnarSnapshot.Table flights = snapshot.table("Flight");
+			assertEquals(3, flights.rows);
+			ColumnarSnapshot.Column arrival = flights.column("arrival_date");
+			ColumnarSnapshot.Column from = flights.column("departure_airport");
+			for (int r = 0; r < FLIGHTS.length; r++) {
+				assertEquals(FLIGHTS[r][0], flights.column("fnum").get(r));
+				assertEquals(FLIGHTS[r][1], flights.column("cost").get(r));
+				assertEquals(FLIGHTS[r][4], flights.column("departure_date").get(r));
+				assertEquals(FLIGHTS[r][5] == null ? ColumnarSnapshot.NULL : FLIGHTS[r][5], arrival.get(r));
+				assertEquals(FLIGHTS[r][6], from.decode(from.get(r)));
+			}
+			assertEquals(2, from.getDictionarySize());
+			assertEquals(-1, from.code("SFO"));
+
+			ColumnarSnapshot.Column code = snapshot.table("Repairs").column("repair_code");
+			assertEquals("MJ", code.decode(code.get(0)));
+			assertEquals(-1, code.get(2));
+			assertNull(code.decode(code.get(2)));
+			assertEquals(ColumnarSnapshot.DICT, code.type);
+		}
+	}
+
+	@Test
+	public void runsTheReports() throws IOException {
+		try (ColumnarSnapshot snapshot = ColumnarSnapshot.open(write(FLIGHTS, RESERVATIONS, FLIGHT_INFO, PLANES, REPAIRS))) {
+			assertEquals(Arrays.asList(
+				Arrays.asList("LAX>JFK", "2", "3", "250", "1.2", "250"),
+				Arrays.asList("JFK>SFO", "1", "0", "100", "0.0", "0")), snapshot.routes(10));
+			assertEquals(Arrays.asList(
+				Arrays.asList("ALL", "3", "1", "1"),
+				Arrays.asList("2", "2", "0", "0"),
+				Arrays.asList("1", "1", "1", "0")), snapshot.statusMix(10));
+			assertEquals(Arrays.asList(
+				Arrays.asList("2010", "MJ", "2"),
+				Arrays.asList("2011", "-", "1")), snapshot.repairs());
+		}
+	}
+
+	@Test
+	public void readsColumnsLargerThanTheWriteBuffer() throws IOException {
+		Object[][] reservations = new Object[100000][];
+		for (int r = 0; r < reservations.length; r++) {
+			reservations[r] = new Object[] {r, r % 97, 1 + r % 3, r % 2 == 0 ? "R" : "C"};
+		}
+		try (ColumnarSnapshot snapshot = ColumnarSnapshot.open(write(FLIGHTS, reservations, FLIGHT_INFO, PLANES, REPAIRS))) {
+			ColumnarSnapshot.Table table = snapshot.table("Reservation");
+			assertEquals(reservations.length, table.rows);
+			for (int r = 0; r < reservations.length; r++) {
+				assertEquals(r, table.column("rnum").get(r));
+				assertEquals(r % 97, table.column("cid").get(r));
+			}
+			assertEquals(Arrays.asList("ALL", "0", "50000", "50000"), snapshot.statusMix(0).get(0));
+			// the tables after it are still found
+			assertEquals(2, snapshot.table("Plane").rows);
+		}
+	}
+
+	@Test
+	public void rejectsOtherFiles() throws IOException {
+		File file = new File(_dir, "other.bin");
+		Files.write(file.toPath(), "not a snapshot at all".getBytes(StandardCharsets.US_ASCII));
+		assertThrows(IOException.class, () -> ColumnarSnapshot.open(file));
+		try (ColumnarSnapshot snapshot = ColumnarSnapshot.open(write(FLIGHTS, RESERVATIONS, FLIGHT_INFO, PLANES, REPAIRS))) {
+			assertThrows(IllegalArgumentException.class, () -> snapshot.table("Customer"));
+			assertThrows(IllegalArgumentException.class, () -> snapshot.table("Flight").column("fid"));
+		}
+	}
+
+}//end ColumnarSnapshotTest
@@ -0,0 +1,134 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the itinerary search on a hand-built flight network, merged as
+ * read() would merge the rows of the database.
+ */
+
+public class ItineraryPlannerTest{
+	private static final LocalDate DAY = LocalDate.parse("2014-05-01");
+
+	/*
+	 * LAX to JFK: direct flight 1 arrives first, 2 then 3 or 4 via ORD and
+	 * 5, 6, 7 via DEN and SFO cost less; 8 would beat them all but is full.
+	 */
+	private static ItineraryPlanner planner() {
+		ItineraryPlanner planner = new ItineraryPlanner(null, -1, 2);
+		planner.merge(Arrays.asList(
+			flight(1, "LAX", "JFK", 0, 8, 13, 500, 10),
+			flight(2, "LAX", "ORD", 0, 7, 9, 100, 10),
+			flight(3, "ORD", "JFK", 0, 10, 15, 100, 10),
+			flight(4, "ORD", "JFK", 1, 10, 14, 50, 10),
+			flight(5, "LAX", "DEN", 0, 6, 7, 10, 10),
+			flight(6, "DEN", "SFO", 0, 8, 9, 10, 10),
+			flight(7, "SFO", "JFK", 0, 10, 20, 10, 10),
+			flight(8, "LAX", "JFK", 0, 7, 8, 1, 0)));
+		return planner;
+	}
+
+	/*
+	 * A flight leaving days after DAY at the given hours, arriving the same day.
+	 */
+	private static ItineraryPlanner.FlightRow flight(int fnum, String from, String to, int days, int departs,
+			int arrives, int cost, int seatsLeft) {
+		int day = Math.toIntExact(DAY.plusDays(days).toEpochDay()) * 24 * 60;
+		return new ItineraryPlanner.FlightRow(fnum, from, to, day + departs * 60, day + arrives * 60, cost, seatsLeft);
+	}
+
+	private static List<Integer> route(ItineraryPlanner planner, int maxConnections, int minLayoverDays,
+			boolean cheapest, int... full) {
+		BitSet excluded = new BitSet();
+		for (int fnum : full) excluded.set(fnum);
+		List<ItineraryPlanner.Leg> legs = planner.route("LAX", "JFK", Math.toIntExact(DAY.toEpochDay()), maxConnections,
+			minLayoverDays, cheapest, excluded);
+		if (legs == null) return null;
+		List<Integer> fnums = new ArrayList<Integer>();
+		for (ItineraryPlanner.Leg leg : legs) fnums.add(leg.fnum);
+		return fnums;
+	}
+
+	@Test
+	public void findsTheFastestItinerary() {
+		ItineraryPlanner planner = planner();
+		assertEquals(Arrays.asList(1), route(planner, 2, 0, false));
+		// of two arriving together, the cheaper one
+		assertEquals(Arrays.asList(2, 3), route(planner, 1, 0, false, 1));
+	}
+
+	@Test
+	public void findsTheCheapestItinerary() {
+		ItineraryPlanner planner = planner();
+		assertEquals(Arrays.asList(5, 6, 7), route(planner, 2, 0, true));
+		assertEquals(Arrays.asList(2, 4), route(planner, 1, 0, true));
+		assertEquals(Arrays.asList(1), route(planner, 0, 0, true));
+	}
+
+	@Test
+	public void keepsTheLayover() {
+		ItineraryPlanner planner = planner();
+		// 3 leaves ORD the day 2 lands, 4 the day after
+		assertEquals(Arrays.asList(2, 3), route(planner, 1, 0, true, 4));
+		assertEquals(Arrays.asList(1), route(planner, 1, 1, true, 4));
+		assertEquals(Arrays.asList(2, 4), route(planner, 1, 1, true));
+	}
+
+	@Test
+	public void skipsFullFlights() {
+		ItineraryPlanner planner = planner();
+		assertEquals(Arrays.asList(2, 3), route(planner, 1, 0, false, 1, 4));
+		assertNull(route(planner, 0, 0, false, 1));
+
+		// seats reported again by a later read
+		planner.merge(Arrays.asList(flight(8, "LAX", "JFK", 0, 7, 8, 1, 3)));
+		assertEquals(Arrays.asList(8), route(planner, 2, 0, false));
+		assertEquals(Arrays.asList(8), route(planner, 2, 0, true));
+	}
+
+	@Test
+	public void returnsTheLegs() {
+		List<ItineraryPlanner.Leg> legs = planner().route(" LAX ", "JFK", Math.toIntExact(DAY.toEpochDay()), 1, 0, true,
+			new BitSet());
+		assertEquals(2, legs.size());
+		ItineraryPlanner.Leg leg = legs.get(1);
+		assertEquals("ORD", leg.from);
+		assertEquals("JFK", leg.to);
+		assertEquals(LocalDateTime.parse("2014-05-02T10:00"), leg.departure);
+		assertEquals(LocalDateTime.parse("2014-05-02T14:00"), leg.arrival);
+		assertEquals(150, new ItineraryPlanner.Itinerary(legs).cost);
+	}
+
+	@Test
+	public void findsNothingElsewhere() {
+		ItineraryPlanner planner = planner();
+		int day = Math.toIntExact(DAY.toEpochDay());
+		assertNull(planner.route("LAX", "BOS", day, 2, 0, false, new BitSet()));
+		assertNull(planner.route("LAX", "LAX", day, 2, 0, false, new BitSet()));
+		// the first flight must leave on the given day
+		assertNull(planner.route("LAX", "JFK", day + 1, 2, 0, false, new BitSet()));
+		assertNull(planner.route("JFK", "LAX", day, 2, 0, false, new BitSet()));
+	}
+
+}//end ItineraryPlannerTest
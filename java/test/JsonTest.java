@@ -0,0 +1,90 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the JSON reader and writer used by PlanCheck and HttpService.
+ */
+
+public class JsonTest{
+
+	@Test
+	public void parsesEveryKindOfValue() {
+		Map<?, ?> value = (Map<?, ?>) Json.parse(" {\"fnum\": 1999, \"cost\": -12.5e1, \"codes\": [\"LAX\", \"JFK\"],"
+			+ " \"full\": false, \"plane\": null, \"text\": \"a\\\"b\\\\c\\n\\u0041\"} ");
+		assertEquals(1999.0, value.get("fnum"));
+		assertEquals(-125.0, value.get("cost"));
+		assertEquals(Arrays.asList("LAX", "JFK"), value.get("codes"));
+		assertEquals(Boolean.FALSE, value.get("full"));
+		assertNull(value.get("plane"));
+		assertEquals("a\"b\\c\nA", value.get("text"));
+	}
+
+	@Test
+	public void writesWhatItParses() {
+		Map<String, Object> value = new LinkedHashMap<String, Object>();
+		value.put("name", "tab\there \"quoted\"");
+		value.put("legs", Arrays.asList(1.0, 2.0));
+		value.put("empty", new LinkedHashMap<String, Object>());
+		value.put("none", null);
+		String text = Json.write(value);
+		assertEquals("{\"name\":\"tab\\there \\\"quoted\\\"\",\"legs\":[1.0,2.0],\"empty\":{},\"none\":null}", text);
+		assertEquals(value, Json.parse(text));
+	}
+
+	@Test
+	public void writesIntArrays() {
+		assertEquals("[3,1,2]", Json.write(new int[] {3, 1, 2}));
+	}
+
+	@Test
+	public void rejectsInvalidText() {
+		for (String text : new String[] {"", "{", "[1,]", "{\"a\" 1}", "tru", "\"open", "1 2"}) {
+			assertThrows(IllegalArgumentException.class, () -> Json.parse(text), text);
+		}
+	}
+
+	@Test
+	public void acceptsNestingUpToTheCap() {
+		Object value = Json.parse(nested(Json.MAX_DEPTH));
+		for (int depth = 1; depth < Json.MAX_DEPTH; depth++) {
+			value = ((List<?>) value).get(0);
+		}
+		assertEquals(0, ((List<?>) value).size());
+	}
+
+	@Test
+	public void rejectsNestingPastTheCap() {
+		assertThrows(IllegalArgumentException.class, () -> Json.parse(nested(Json.MAX_DEPTH + 1)));
+		// deep enough to overflow the stack without the cap
+		assertThrows(IllegalArgumentException.class, () -> Json.parse(nested(100000)));
+	}
+
+	private static String nested(int depth) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < depth; i++) sb.append('[');
+		for (int i = 0; i < depth; i++) sb.append(']');
+		return sb.toString();
+	}
+
+}//end JsonTest
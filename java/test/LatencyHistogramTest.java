@@ -0,0 +1,89 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the bucket bounds and percentiles of LatencyHistogram.
+ */
+
+public class LatencyHistogramTest{
+
+	@Test
+	public void smallValuesHaveABucketEach() {
+		for (long value = 0; value < 16; value++) {
+			assertEquals(value, LatencyHistogram.bucket(value));
+			assertEquals(value, LatencyHistogram.lowerBound((int) value));
+		}
+	}
+
+	@Test
+	public void bucketsAreContiguousAndIncreasing() {
+		for (int bucket = 1; bucket < LatencyHistogram.BUCKETS; bucket++) {
+			long lower = LatencyHistogram.lowerBound(bucket);
+			assertTrue(lower > LatencyHistogram.lowerBound(bucket - 1), "bucket " + bucket);
+			assertEquals(bucket, LatencyHistogram.bucket(lower), "lower bound of bucket " + bucket);
+			assertEquals(bucket - 1, LatencyHistogram.bucket(lower - 1), "below bucket " + bucket);
+		}
+		assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void bucketsAreAtMostASixteenthWide() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			long value = random.nextLong() >>> (1 + random.nextInt(63));
+			int bucket = LatencyHistogram.bucket(value);
+			long lower = LatencyHistogram.lowerBound(bucket);
+			assertTrue(lower <= value, "value " + value);
+			if (bucket + 1 < LatencyHistogram.BUCKETS) {
+				long upper = LatencyHistogram.lowerBound(bucket + 1);
+				assertTrue(value < upper, "value " + value);
+				assertTrue(upper - lower <= Math.max(1, lower / 16), "value " + value);
+			}
+		}
+	}
+
+	@Test
+	public void percentilesStayWithinTheirBucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long micros = 1; micros <= 1000; micros++) {
+			histogram.record(micros * 1000);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000, histogram.getMax());
+		assertEquals(500500.0, histogram.getMean(), 1e-6);
+		for (double quantile : new double[] {0.5, 0.9, 0.99, 1.0}) {
+			long exact = Math.round(quantile * 1000) * 1000;
+			long estimate = histogram.percentile(quantile);
+			assertTrue(Math.abs(estimate - exact) <= exact / 16, quantile + ": " + estimate);
+			assertTrue(estimate <= histogram.getMax(), quantile + ": " + estimate);
+		}
+	}
+
+	@Test
+	public void negativeAndNoDurations() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.percentile(0.99));
+		assertEquals(0.0, histogram.getMean());
+		histogram.record(-5);
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.percentile(0.5));
+	}
+
+}//end LatencyHistogramTest
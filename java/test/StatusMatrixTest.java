@@ -0,0 +1,97 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.BitSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the rows and ordering of the flight status matrix, built from
+ * counters as compute() leaves them.
+ */
+
+public class StatusMatrixTest{
+
+	/*
+	 * Flights 1, 2, 3 and 5 have passengers; 4 and 7 are listed without,
+	 * 7 past the end of the counters.
+	 */
+	private static StatusMatrix.Matrix matrix() {
+		int[][] counts = {
+			{0, 2, 0, 2, 0, 1},
+			{0, 1, 3, 0, 0, 1},
+			{0, 0, 1, 5, 0, 1},
+		};
+		BitSet flights = new BitSet();
+		for (int fnum : new int[] {1, 2, 3, 4, 7}) flights.set(fnum);
+		return new StatusMatrix.Matrix(counts, flights);
+	}
+
+	@Test
+	public void listsFlightsWithoutPassengers() {
+		StatusMatrix.Matrix matrix = matrix();
+		assertArrayEquals(new int[] {1, 2, 3, 4, 5, 7}, matrix.fnum);
+		assertArrayEquals(new int[] {2, 0, 2, 0, 1, 0}, matrix.waitlisted);
+		assertArrayEquals(new int[] {1, 3, 0, 0, 1, 0}, matrix.reserved);
+		assertArrayEquals(new int[] {0, 1, 5, 0, 1, 0}, matrix.confirmed);
+		assertEquals("7\t0\t0\t0", matrix.toString(5));
+	}
+
+	@Test
+	public void sumsTheTotals() {
+		StatusMatrix.Matrix matrix = matrix();
+		assertEquals(5, matrix.totalWaitlisted);
+		assertEquals(5, matrix.totalReserved);
+		assertEquals(7, matrix.totalConfirmed);
+	}
+
+	@Test
+	public void ordersByFnum() {
+		assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5}, matrix().select(0, StatusMatrix.BY_FNUM, 10));
+	}
+
+	@Test
+	public void ordersByStatusDescendingWithTiesByFnum() {
+		StatusMatrix.Matrix matrix = matrix();
+		assertArrayEquals(new int[] {0, 2, 4, 1, 3, 5}, matrix.select(0, StatusMatrix.BY_WAITLISTED, 10));
+		assertArrayEquals(new int[] {1, 0, 4, 2, 3, 5}, matrix.select(0, StatusMatrix.BY_RESERVED, 10));
+		assertArrayEquals(new int[] {2, 1, 4, 0, 3, 5}, matrix.select(0, StatusMatrix.BY_CONFIRMED, 10));
+	}
+
+	@Test
+	public void filtersAndLimits() {
+		StatusMatrix.Matrix matrix = matrix();
+		assertArrayEquals(new int[] {0, 2, 4}, matrix.select(1, StatusMatrix.BY_FNUM, 10));
+		assertArrayEquals(new int[] {2, 0}, matrix.select(2, StatusMatrix.BY_CONFIRMED, 10));
+		assertArrayEquals(new int[] {2}, matrix.select(1, StatusMatrix.BY_CONFIRMED, 1));
+		assertArrayEquals(new int[0], matrix.select(3, StatusMatrix.BY_WAITLISTED, 10));
+		assertArrayEquals(new int[0], matrix.select(0, StatusMatrix.BY_FNUM, 0));
+	}
+
+	@Test
+	public void rejectsOtherOrders() {
+		assertThrows(IllegalArgumentException.class, () -> matrix().select(0, "cost", 10));
+	}
+
+	@Test
+	public void acceptsNoFlights() {
+		StatusMatrix.Matrix matrix = new StatusMatrix.Matrix(new int[3][0], new BitSet());
+		assertEquals(0, matrix.size());
+		assertArrayEquals(new int[0], matrix.select(0, StatusMatrix.BY_WAITLISTED, 10));
+	}
+
+}//end StatusMatrixTest
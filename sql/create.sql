@@ -8,6 +8,23 @@ DROP TABLE IF EXISTS Reservation CASCADE;--OK
 DROP TABLE IF EXISTS FlightInfo CASCADE;--OK
 DROP TABLE IF EXISTS Repairs CASCADE;--OK
 DROP TABLE IF EXISTS Schedule CASCADE;--OK
+DROP TABLE IF EXISTS RepairsPerPlane CASCADE;--OK
+DROP TABLE IF EXISTS RepairsPerYear CASCADE;--OK
+DROP TABLE IF EXISTS RepairsPerCode CASCADE;--OK
+DROP FUNCTION IF EXISTS repairs_count() CASCADE;--OK
+DROP FUNCTION IF EXISTS repairs_clear() CASCADE;--OK
+DROP FUNCTION IF EXISTS book_flight(INTEGER, INTEGER, INTEGER) CASCADE;--OK
+DROP FUNCTION IF EXISTS flight_log() CASCADE;--OK
+DROP TABLE IF EXISTS FlightLog CASCADE;--OK
+DROP TABLE IF EXISTS BulkLoadRestore CASCADE;--OK
+
+DROP SEQUENCE IF EXISTS plane_id_seq;--OK
+DROP SEQUENCE IF EXISTS pilot_id_seq;--OK
+DROP SEQUENCE IF EXISTS technician_id_seq;--OK
+DROP SEQUENCE IF EXISTS flight_fnum_seq;--OK
+DROP SEQUENCE IF EXISTS flightinfo_fiid_seq;--OK
+DROP SEQUENCE IF EXISTS schedule_id_seq;--OK
+DROP SEQUENCE IF EXISTS reservation_rnum_seq;--OK
 
 -------------
 ---DOMAINS---
@@ -217,4 +234,199 @@ COPY Schedule (
 	arrival_time
 )
 FROM 'schedule.csv'
-WITH DELIMITER ',';
\ No newline at end of file
+WITH DELIMITER ',';
+
+-------------
+---INDEXES---
+-------------
+-- Secondary indexes on the columns the client looks rows up by. They are
+-- built after the data is loaded; java/src/PlanCheck.java checks that the
+-- client's statements use them (./run.sh <dbname> <port> <user> --plans).
+CREATE INDEX reservation_fid_status_idx ON Reservation (fid, status);
+-- the waitlist of each flight in booking order, for WaitlistPromoter
+CREATE INDEX reservation_waitlist_idx ON Reservation (fid, rnum) WHERE status = 'W';
+CREATE INDEX flightinfo_flight_id_idx ON FlightInfo (flight_id);
+CREATE INDEX repairs_plane_id_idx ON Repairs (plane_id);
+CREATE INDEX repairs_repair_date_idx ON Repairs (repair_date);
+CREATE INDEX schedule_flightnum_idx ON Schedule (flightNum);
+-- the flights of a range of days, for the status matrix of StatusMatrix.java
+CREATE INDEX flight_departure_date_idx ON Flight (actual_departure_date);
+
+ANALYZE;
+
+---------------
+---SEQUENCES---
+---------------
+-- Primary key generators used by the client. Each nextval() reserves a
+-- block of 50 keys that the client hands out from memory (IdAllocator.java).
+CREATE SEQUENCE plane_id_seq INCREMENT BY 50;
+CREATE SEQUENCE pilot_id_seq INCREMENT BY 50;
+CREATE SEQUENCE technician_id_seq INCREMENT BY 50;
+CREATE SEQUENCE flight_fnum_seq INCREMENT BY 50;
+CREATE SEQUENCE flightinfo_fiid_seq INCREMENT BY 50;
+CREATE SEQUENCE schedule_id_seq INCREMENT BY 50;
+CREATE SEQUENCE reservation_rnum_seq INCREMENT BY 50;
+
+SELECT setval('plane_id_seq', (SELECT COALESCE(max(id), 0) + 1 FROM Plane), false);
+SELECT setval('pilot_id_seq', (SELECT COALESCE(max(id), 0) + 1 FROM Pilot), false);
+SELECT setval('technician_id_seq', (SELECT COALESCE(max(id), 0) + 1 FROM Technician), false);
+SELECT setval('flight_fnum_seq', (SELECT COALESCE(max(fnum), 0) + 1 FROM Flight), false);
+SELECT setval('flightinfo_fiid_seq', (SELECT COALESCE(max(fiid), 0) + 1 FROM FlightInfo), false);
+SELECT setval('schedule_id_seq', (SELECT COALESCE(max(id), 0) + 1 FROM Schedule), false);
+SELECT setval('reservation_rnum_seq', (SELECT COALESCE(max(rnum), 0) + 1 FROM Reservation), false);
+
+---------------
+---FUNCTIONS---
+---------------
+-- Books a seat in one round trip: checks the customer and the flight, takes
+-- a seat if the plane has one left and nobody is waitlisted, and writes the
+-- reservation as R or W. Waitlisted passengers are served first, by
+-- WaitlistPromoter.java.
+-- The rnum comes from the client (IdAllocator.java). BookingEngine.java
+-- calls it and falls back to the same statements in a client transaction
+-- on databases created without it.
+CREATE FUNCTION book_flight(p_rnum INTEGER, p_cid INTEGER, p_fid INTEGER,
+	OUT rnum INTEGER, OUT status CHAR(1), OUT seats_remaining INTEGER) AS $$
+DECLARE
+	sold INTEGER;
+	capacity INTEGER;
+BEGIN
+	PERFORM 1 FROM Customer WHERE id = p_cid;
+	IF NOT FOUND THEN
+		RAISE EXCEPTION 'Customer % does not exist', p_cid USING ERRCODE = 'foreign_key_violation';
+	END IF;
+
+	UPDATE Flight F SET num_sold = F.num_sold + 1 FROM FlightInfo FI, Plane P
+		WHERE F.fnum = p_fid AND FI.flight_id = F.fnum AND FI.plane_id = P.id AND F.num_sold < P.seats
+		AND NOT EXISTS (SELECT 1 FROM Reservation W WHERE W.fid = F.fnum AND W.status = 'W')
+		RETURNING F.num_sold, P.seats INTO sold, capacity;
+	IF FOUND THEN
+		status := 'R';
+		seats_remaining := capacity - sold;
+	ELSE
+		PERFORM 1 FROM Flight WHERE fnum = p_fid;
+		IF NOT FOUND THEN
+			RAISE EXCEPTION 'Flight % does not exist', p_fid USING ERRCODE = 'foreign_key_violation';
+		END IF;
+		status := 'W';
+		seats_remaining := 0;
+	END IF;
+
+	rnum := p_rnum;
+	INSERT INTO Reservation VALUES (p_rnum, p_cid, p_fid, status);
+END;
+$$ LANGUAGE plpgsql;
+
+----------------
+---AGGREGATES---
+----------------
+-- Repair counts per plane, year and code, kept up to date by triggers on
+-- Repairs so reports 7 and 8 do not scan Repairs. RepairAggregates.java
+-- rebuilds them from scratch and checks them against Repairs.
+CREATE TABLE RepairsPerPlane
+(
+	plane_id INTEGER NOT NULL,
+	repairs INTEGER NOT NULL,
+	PRIMARY KEY (plane_id)
+);
+
+CREATE TABLE RepairsPerYear
+(
+	year INTEGER NOT NULL,
+	repairs INTEGER NOT NULL,
+	PRIMARY KEY (year)
+);
+
+CREATE TABLE RepairsPerCode
+(
+	repair_code _CODE NOT NULL,
+	repairs INTEGER NOT NULL,
+	PRIMARY KEY (repair_code)
+);
+
+CREATE FUNCTION repairs_count() RETURNS trigger AS $$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		UPDATE RepairsPerPlane SET repairs = repairs - 1 WHERE plane_id = OLD.plane_id;
+		UPDATE RepairsPerYear SET repairs = repairs - 1 WHERE year = date_part('year', OLD.repair_date);
+		UPDATE RepairsPerCode SET repairs = repairs - 1 WHERE repair_code = OLD.repair_code;
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		INSERT INTO RepairsPerPlane VALUES (NEW.plane_id, 1)
+			ON CONFLICT (plane_id) DO UPDATE SET repairs = RepairsPerPlane.repairs + 1;
+		INSERT INTO RepairsPerYear VALUES (date_part('year', NEW.repair_date), 1)
+			ON CONFLICT (year) DO UPDATE SET repairs = RepairsPerYear.repairs + 1;
+		IF NEW.repair_code IS NOT NULL THEN
+			INSERT INTO RepairsPerCode VALUES (NEW.repair_code, 1)
+				ON CONFLICT (repair_code) DO UPDATE SET repairs = RepairsPerCode.repairs + 1;
+		END IF;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION repairs_clear() RETURNS trigger AS $$
+BEGIN
+	DELETE FROM RepairsPerPlane;
+	DELETE FROM RepairsPerYear;
+	DELETE FROM RepairsPerCode;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+INSERT INTO RepairsPerPlane SELECT plane_id, COUNT(*) FROM Repairs GROUP BY plane_id;
+INSERT INTO RepairsPerYear SELECT date_part('year', repair_date), COUNT(*) FROM Repairs GROUP BY date_part('year', repair_date);
+INSERT INTO RepairsPerCode SELECT repair_code, COUNT(*) FROM Repairs WHERE repair_code IS NOT NULL GROUP BY repair_code;
+
+CREATE TRIGGER repairs_count AFTER INSERT OR UPDATE OR DELETE ON Repairs
+	FOR EACH ROW EXECUTE PROCEDURE repairs_count();
+CREATE TRIGGER repairs_clear AFTER TRUNCATE ON Repairs
+	FOR EACH STATEMENT EXECUTE PROCEDURE repairs_clear();
+
+-------------
+---CHANGES---
+-------------
+-- Flights inserted, or whose seats left may have gone up, with the
+-- transaction that logged them. RouteIndex.java and ItineraryPlanner.java
+-- read it to find the flights of other clients, whatever their fnums and
+-- commit order, and the flights that have seats again (see FlightLog.java).
+-- The readers delete rows older than their retention.
+CREATE TABLE FlightLog
+(
+	seq BIGSERIAL NOT NULL,
+	txid BIGINT NOT NULL DEFAULT txid_current(),
+	fnum INTEGER NOT NULL,
+	PRIMARY KEY (seq)
+);
+CREATE INDEX flightlog_txid_idx ON FlightLog (txid);
+
+CREATE FUNCTION flight_log() RETURNS trigger AS $$
+BEGIN
+	IF TG_TABLE_NAME = 'flight' THEN
+		INSERT INTO FlightLog (fnum) VALUES (NEW.fnum);
+	ELSIF TG_TABLE_NAME = 'flightinfo' THEN
+		INSERT INTO FlightLog (fnum) VALUES (NEW.flight_id);
+	ELSE
+		INSERT INTO FlightLog (fnum) SELECT flight_id FROM FlightInfo WHERE plane_id = NEW.id;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER flight_log AFTER INSERT ON Flight
+	FOR EACH ROW EXECUTE PROCEDURE flight_log();
+CREATE TRIGGER flight_log_seats AFTER UPDATE OF num_sold ON Flight
+	FOR EACH ROW WHEN (NEW.num_sold < OLD.num_sold) EXECUTE PROCEDURE flight_log();
+CREATE TRIGGER flight_log AFTER INSERT OR UPDATE OF plane_id ON FlightInfo
+	FOR EACH ROW EXECUTE PROCEDURE flight_log();
+CREATE TRIGGER flight_log AFTER UPDATE OF seats ON Plane
+	FOR EACH ROW WHEN (NEW.seats > OLD.seats) EXECUTE PROCEDURE flight_log();
+
+-- DDL undoing the changes of a bulk load, kept until it has run so that a
+-- load that failed or crashed is undone later (see BulkLoader.java).
+CREATE TABLE BulkLoadRestore
+(
+	seq SERIAL NOT NULL,
+	ddl TEXT NOT NULL,
+	PRIMARY KEY (seq)
+);